@@ -3,43 +3,94 @@ package com.mcp.RayenMalouche.pdf.PDFExtractor;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ParserWorker;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.PreExtractionPipeline;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.SearchIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ServerMetrics;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.tools.McpToolsProvider;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.web.TestServlet;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.web.HealthServlet;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.MetricsServlet;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.SseStreamFilter;
 
 import io.modelcontextprotocol.spec.McpSchema;
 import io.modelcontextprotocol.server.McpServer;
 import io.modelcontextprotocol.server.McpServerFeatures;
-import io.modelcontextprotocol.server.McpSyncServer;
+import io.modelcontextprotocol.spec.McpServerTransportProvider;
 import io.modelcontextprotocol.server.transport.HttpServletSseServerTransportProvider;
 import io.modelcontextprotocol.server.transport.StdioServerTransportProvider;
+import jakarta.servlet.DispatcherType;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.ee10.servlet.FilterHolder;
 import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
 import org.eclipse.jetty.ee10.servlet.ServletHolder;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PdfExtractorApplication{
     private static final String VERSION = "1.0.0";
     private static final String SERVER_NAME = "tika-extractor-server";
+    private static final String CDS_TRAINING_ARGUMENT = "--cds-training";
     private static int HTTP_PORT;
+    private static boolean ASYNC_MODE;
 
     public static void main(String[] args) throws Exception {
+        // Child JVM started by ForkedParserPool
+        if (args.length > 0 && ParserWorker.ARGUMENT.equals(args[0])) {
+            ParserWorker.run();
+            return;
+        }
+
         // Load configuration
         loadConfiguration();
 
         // Ensure files-to-extract directory exists
         ensureDirectoryExists();
 
+        if (args.length > 0 && CDS_TRAINING_ARGUMENT.equals(args[0])) {
+            runCdsTraining();
+            return;
+        }
+
+        // Load parsers, fonts and format libraries ahead of the first request: in the background by default,
+        // or before the server starts listening when engine.warmup.blocking is set
+        if (ConfigLoader.getBooleanProperty("engine.warmup.enabled", true)) {
+            if (ConfigLoader.getBooleanProperty("engine.warmup.blocking", false)) {
+                warmUpEngine();
+            } else {
+                Thread.ofPlatform().name("engine-warmup").daemon(true).start(PdfExtractorApplication::warmUpEngine);
+            }
+        }
+
+        // Build the full-text search index of the files directory in the background (see search.*)
+        if (SearchIndex.isEnabled()) {
+            SearchIndex.getShared();
+        }
+
+        // Extract new and changed files into the cache ahead of the first request (see preextract.*)
+        if (PreExtractionPipeline.isEnabled()) {
+            PreExtractionPipeline.getShared();
+        }
+
         // Check transport mode
         boolean useStdio = args.length > 0 && "--stdio".equals(args[0]);
         boolean useStreamableHttp = args.length > 0 && "--streamable-http".equals(args[0]);
+        ASYNC_MODE = ASYNC_MODE || Arrays.asList(args).contains("--async");
 
         if (useStdio) {
             System.err.println("Starting Tika MCP server with STDIO transport...");
@@ -52,6 +103,7 @@ public class PdfExtractorApplication{
 
     private static void loadConfiguration() {
         HTTP_PORT = ConfigLoader.getIntProperty("server.port", 45451);
+        ASYNC_MODE = ConfigLoader.getBooleanProperty("mcp.async.enabled", false);
         System.err.println("Configuration loaded. Server port: " + HTTP_PORT);
     }
 
@@ -75,22 +127,11 @@ public class PdfExtractorApplication{
             // Create transport provider
             StdioServerTransportProvider transportProvider = new StdioServerTransportProvider(new ObjectMapper());
 
-            // Get all tools
-            McpToolsProvider toolsProvider = new McpToolsProvider();
-            List<McpServerFeatures.SyncToolSpecification> tools = toolsProvider.getAllTools();
-
-            // Build MCP server
-            McpSyncServer syncServer = McpServer.sync(transportProvider)
-                    .serverInfo(SERVER_NAME, VERSION)
-                    .capabilities(McpSchema.ServerCapabilities.builder()
-                            .tools(true)
-                            .logging()
-                            .build())
-                    .tools(tools.toArray(new McpServerFeatures.SyncToolSpecification[0]))
-                    .build();
+            // Build MCP server with all tools
+            List<String> toolNames = buildMcpServer(transportProvider);
 
             System.err.println("STDIO Tika MCP server started. Awaiting requests...");
-            System.err.println("Available tools: extract-to-html, extract-text, list-files, get-file-metadata");
+            System.err.println("Available tools: " + String.join(", ", toolNames));
 
         } catch (Exception e) {
             System.err.println("Fatal error in STDIO server: " + e.getMessage());
@@ -99,7 +140,67 @@ public class PdfExtractorApplication{
         }
     }
 
+    private static void warmUpEngine() {
+        System.err.println("Warming up extraction engine...");
+        long elapsed = TikaExtractorService.getShared().warmUp();
+        System.err.println("Extraction engine warmed up in " + elapsed + " ms");
+    }
+
+    /**
+     * Training run for an AppCDS archive (see the appcds Maven profile): warms up the engine, starts the
+     * HTTP server on a free port, calls a few endpoints and exits, so the classes a real start and its
+     * first requests load end up in the archive written by -XX:ArchiveClassesAtExit
+     */
+    private static void runCdsTraining() throws Exception {
+        warmUpEngine();
+        Server server = createHttpServer(false, 0);
+        server.start();
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+        HttpClient client = HttpClient.newHttpClient();
+        for (String path : List.of("/api/health", "/api/test/list")) {
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            System.err.println("Training request " + path + ": HTTP " + response.statusCode());
+        }
+
+        server.stop();
+        System.err.println("CDS training run complete");
+        // Non-daemon threads (HTTP client, Reactor) would keep the JVM alive and delay the archive dump
+        System.exit(0);
+    }
+
     private static void startHttpServer(boolean streamableHttp) throws Exception {
+        Server server = createHttpServer(streamableHttp, HTTP_PORT);
+
+        // Start server
+        server.start();
+
+        System.err.println("=================================");
+        System.err.println("Tika MCP Extractor Server started on port " + HTTP_PORT);
+        if (streamableHttp) {
+            System.err.println("Mode: Streamable HTTP (for MCP Inspector)");
+            System.err.println("MCP endpoint: http://localhost:" + HTTP_PORT + "/message");
+        } else {
+            System.err.println("Mode: Standard HTTP/SSE");
+            System.err.println("MCP endpoint: http://localhost:" + HTTP_PORT + "/");
+        }
+        System.err.println("SSE endpoint: http://localhost:" + HTTP_PORT + "/sse");
+        System.err.println("Test endpoints:");
+        System.err.println("  - List files: GET http://localhost:" + HTTP_PORT + "/api/test/list");
+        System.err.println("  - Extract HTML: POST http://localhost:" + HTTP_PORT + "/api/test/extract-html");
+        System.err.println("  - Extract text: POST http://localhost:" + HTTP_PORT + "/api/test/extract-text");
+        System.err.println("  - Extract RAW HTML: POST http://localhost:" + HTTP_PORT + "/api/test/raw-html");
+        System.err.println("Health check: http://localhost:" + HTTP_PORT + "/api/health");
+        System.err.println("Files directory: ./files-to-extract/");
+        System.err.println("MCP server mode: " + (ASYNC_MODE ? "async" : "sync"));
+        System.err.println("=================================");
+
+        server.join();
+    }
+
+    private static Server createHttpServer(boolean streamableHttp, int port) {
         // Create ObjectMapper
         ObjectMapper objectMapper = new ObjectMapper();
 
@@ -112,27 +213,20 @@ public class PdfExtractorApplication{
             transportProvider = new HttpServletSseServerTransportProvider(objectMapper, "/", "/sse");
         }
 
-        // Get all tools
-        McpToolsProvider toolsProvider = new McpToolsProvider();
-        List<McpServerFeatures.SyncToolSpecification> tools = toolsProvider.getAllTools();
-
-        // Build MCP server
-        McpSyncServer syncServer = McpServer.sync(transportProvider)
-                .serverInfo(SERVER_NAME, VERSION)
-                .capabilities(McpSchema.ServerCapabilities.builder()
-                        .tools(true)
-                        .logging()
-                        .build())
-                .tools(tools.toArray(new McpServerFeatures.SyncToolSpecification[0]))
-                .build();
+        // Build MCP server with all tools
+        buildMcpServer(transportProvider);
 
         // Configure Jetty server
         QueuedThreadPool threadPool = new QueuedThreadPool();
         threadPool.setName("tika-mcp-server");
+        if (ConfigLoader.getBooleanProperty("jetty.virtual.threads", false)) {
+            // Requests are handled on virtual threads; the platform pool only runs selectors and acceptors
+            threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        }
 
         Server server = new Server(threadPool);
         ServerConnector connector = new ServerConnector(server);
-        connector.setPort(HTTP_PORT);
+        connector.setPort(port);
         server.addConnector(connector);
 
         ServletContextHandler context = new ServletContextHandler();
@@ -141,36 +235,82 @@ public class PdfExtractorApplication{
         // Add MCP transport servlet
         context.addServlet(new ServletHolder(transportProvider), "/*");
 
-        // Add test and health servlets
-        TikaExtractorService extractorService = new TikaExtractorService();
-        context.addServlet(new ServletHolder(new TestServlet(extractorService)), "/api/test/*");
+        // Add test and health servlets, sharing the MCP tools' extraction engine
+        ServletHolder testServlet = new ServletHolder(new TestServlet(TikaExtractorService.getShared()));
+        testServlet.getRegistration().setMultipartConfig(TestServlet.multipartConfig());
+        context.addServlet(testServlet, "/api/test/*");
         context.addServlet(new ServletHolder(new HealthServlet()), "/api/health");
 
-        server.setHandler(context);
+        // Prometheus metrics, with the Jetty pool and open SSE streams alongside the extraction metrics
+        ServerMetrics metrics = ServerMetrics.getShared();
+        if (metrics.isEnabled()) {
+            metrics.bindThreadPool(threadPool);
+            context.addFilter(new FilterHolder(new SseStreamFilter(metrics)), "/*", EnumSet.of(DispatcherType.REQUEST));
+            context.addServlet(new ServletHolder(new MetricsServlet(metrics)), "/api/metrics");
+        }
 
-        // Start server
-        server.start();
+        if (ConfigLoader.getBooleanProperty("compression.enabled", true)) {
+            // Extracted text and HTML compress several times over. Stored renderings that are already
+            // gzip-encoded pass through, and SSE events are never held back in the deflater.
+            GzipHandler gzip = new GzipHandler();
+            gzip.setMinGzipSize(ConfigLoader.getIntProperty("compression.min.bytes", 1024));
+            gzip.setIncludedMethods("GET", "POST");
+            gzip.addExcludedMimeTypes("text/event-stream");
+            gzip.setSyncFlush(true);
+            gzip.setHandler(context);
+            server.setHandler(gzip);
+        } else {
+            server.setHandler(context);
+        }
+        return server;
+    }
 
-        System.err.println("=================================");
-        System.err.println("Tika MCP Extractor Server started on port " + HTTP_PORT);
-        if (streamableHttp) {
-            System.err.println("Mode: Streamable HTTP (for MCP Inspector)");
-            System.err.println("MCP endpoint: http://localhost:" + HTTP_PORT + "/message");
+    /**
+     * Build the MCP server on the given transport with every tool of McpToolsProvider, in sync mode, where
+     * each tool call blocks the thread that received it, or in async mode, where tool calls run on a parse
+     * executor and transport threads stay free. Returns the names of the registered tools.
+     */
+    private static List<String> buildMcpServer(McpServerTransportProvider transportProvider) {
+        McpToolsProvider toolsProvider = new McpToolsProvider(TikaExtractorService.getShared());
+        McpSchema.ServerCapabilities capabilities = McpSchema.ServerCapabilities.builder()
+                .tools(true)
+                .logging()
+                .build();
+
+        if (ASYNC_MODE) {
+            List<McpServerFeatures.AsyncToolSpecification> tools = toolsProvider.getAllAsyncTools(createParseExecutor());
+            McpServer.async(transportProvider)
+                    .serverInfo(SERVER_NAME, VERSION)
+                    .capabilities(capabilities)
+                    .tools(tools.toArray(new McpServerFeatures.AsyncToolSpecification[0]))
+                    .build();
+            return tools.stream().map(tool -> tool.tool().name()).toList();
         } else {
-            System.err.println("Mode: Standard HTTP/SSE");
-            System.err.println("MCP endpoint: http://localhost:" + HTTP_PORT + "/");
+            List<McpServerFeatures.SyncToolSpecification> tools = toolsProvider.getAllTools();
+            McpServer.sync(transportProvider)
+                    .serverInfo(SERVER_NAME, VERSION)
+                    .capabilities(capabilities)
+                    .tools(tools.toArray(new McpServerFeatures.SyncToolSpecification[0]))
+                    .build();
+            return tools.stream().map(tool -> tool.tool().name()).toList();
         }
-        System.err.println("SSE endpoint: http://localhost:" + HTTP_PORT + "/sse");
-        System.err.println("Test endpoints:");
-        System.err.println("  - List files: GET http://localhost:" + HTTP_PORT + "/api/test/list");
-        System.err.println("  - Extract HTML: POST http://localhost:" + HTTP_PORT + "/api/test/extract-html");
-        System.err.println("  - Extract text: POST http://localhost:" + HTTP_PORT + "/api/test/extract-text");
-        System.err.println("  - Extract RAW HTML: POST http://localhost:" + HTTP_PORT + "/api/test/raw-html");
-        System.err.println("Health check: http://localhost:" + HTTP_PORT + "/api/health");
-        System.err.println("Files directory: ./files-to-extract/");
-        System.err.println("=================================");
+    }
 
-        server.join();
+    /**
+     * Executor for async tool calls: a virtual thread per call by default,
+     * or a bounded platform pool when mcp.parse.executor=bounded
+     */
+    private static ExecutorService createParseExecutor() {
+        if ("bounded".equalsIgnoreCase(ConfigLoader.getProperty("mcp.parse.executor", "virtual"))) {
+            int threads = ConfigLoader.getIntProperty("mcp.parse.threads", 0);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            System.err.println("Async tool calls run on a bounded pool of " + threads + " threads");
+            return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("tika-parse-", 0).daemon(true).factory());
+        }
+        System.err.println("Async tool calls run on virtual threads");
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tika-parse-", 0).factory());
     }
 
 }
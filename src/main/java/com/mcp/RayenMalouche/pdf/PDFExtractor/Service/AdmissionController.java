@@ -0,0 +1,270 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission layer in front of the parsers. At most maxConcurrent parses run at once and at most
+ * maxQueued callers wait for a slot; anyone beyond that is rejected immediately, so an overloaded
+ * server answers fast instead of letting every request slow down. Each admitted parse gets a permit
+ * that enforces the file size limit, the output character limit and a wall-clock timeout.
+ */
+public class AdmissionController {
+
+    private static final AdmissionController SHARED = new AdmissionController(
+            ConfigLoader.getIntProperty("parse.max.concurrent", 0),
+            ConfigLoader.getIntProperty("parse.max.queued", 32),
+            ConfigLoader.getLongProperty("parse.queue.timeout.ms", 10_000),
+            ConfigLoader.getLongProperty("parse.timeout.ms", 120_000),
+            ConfigLoader.getLongProperty("files.max.size", 52_428_800),
+            ConfigLoader.getLongProperty("tika.max.string.length", -1));
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("parse-watchdog").daemon(true).factory());
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeoutMs;
+    private final long parseTimeoutMs;
+    private final long maxFileSize;
+    private final long maxOutputChars;
+    private final Semaphore slots;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * @param maxConcurrent  parses allowed to run at once (0 = one per core)
+     * @param maxQueued      callers allowed to wait for a slot
+     * @param queueTimeoutMs longest a caller waits for a slot before being rejected
+     * @param parseTimeoutMs wall-clock limit of one parse (0 or less = none)
+     * @param maxFileSize    largest file accepted, in bytes (0 or less = none)
+     * @param maxOutputChars most characters one parse may produce (0 or less = none)
+     */
+    public AdmissionController(int maxConcurrent, int maxQueued, long queueTimeoutMs,
+                               long parseTimeoutMs, long maxFileSize, long maxOutputChars) {
+        this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors();
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMs = Math.max(0, queueTimeoutMs);
+        this.parseTimeoutMs = parseTimeoutMs;
+        this.maxFileSize = maxFileSize;
+        this.maxOutputChars = maxOutputChars;
+        this.slots = new Semaphore(this.maxConcurrent, true);
+    }
+
+    public static AdmissionController getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Check the file against the size limit and wait for a parse slot.
+     * The returned permit must be closed when the parse ends.
+     */
+    public Permit admit(File file) throws ExtractionRejectedException {
+        return admit(file.getName(), file.length());
+    }
+
+    /**
+     * Check a document of the given size, such as an upload, against the size limit and wait for a parse slot
+     */
+    public Permit admit(String name, long size) throws ExtractionRejectedException {
+        if (maxFileSize > 0 && size > maxFileSize) {
+            rejected.incrementAndGet();
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.FILE_TOO_LARGE,
+                    String.format("File %s is %d bytes, the limit is %d", name, size, maxFileSize));
+        }
+
+        if (!slots.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                throw overloaded();
+            }
+            try {
+                if (!slots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw overloaded();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw cancelled(name);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+
+        admitted.incrementAndGet();
+        return new Permit(name);
+    }
+
+    private static ExtractionRejectedException cancelled(String name) {
+        return new ExtractionRejectedException(ExtractionRejectedException.Reason.CANCELLED, "Parsing " + name + " was cancelled");
+    }
+
+    private ExtractionRejectedException overloaded() {
+        rejected.incrementAndGet();
+        return new ExtractionRejectedException(ExtractionRejectedException.Reason.OVERLOADED,
+                "Server is busy: " + maxConcurrent + " parses running and " + maxQueued + " waiting, retry later");
+    }
+
+    /**
+     * Parses holding a slot
+     */
+    public int getRunning() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    /**
+     * Parses waiting for a slot
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Current load and counters, for the health endpoint
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("running", getRunning());
+        stats.put("maxQueued", maxQueued);
+        stats.put("queued", getQueued());
+        stats.put("admitted", admitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        return stats;
+    }
+
+    /**
+     * One admitted parse. When the timeout expires the parse is aborted: the next write through
+     * a guarded writer fails, and the parsing thread is interrupted to break out of blocking I/O.
+     * An interrupt from anywhere else cancels the parse the same way.
+     */
+    public class Permit implements AutoCloseable {
+        private final String name;
+        private final Thread owner;
+        private final ScheduledFuture<?> deadline;
+        private boolean expired;
+        private boolean closed;
+
+        private Permit(String name) {
+            this.name = name;
+            this.owner = Thread.currentThread();
+            this.deadline = parseTimeoutMs > 0
+                    ? WATCHDOG.schedule(this::expire, parseTimeoutMs, TimeUnit.MILLISECONDS)
+                    : null;
+        }
+
+        private synchronized void expire() {
+            if (!closed) {
+                expired = true;
+                timedOut.incrementAndGet();
+                owner.interrupt();
+            }
+        }
+
+        public synchronized boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * Wrap the parse output so the character limit and the timeout are enforced as content is written
+         */
+        public Writer guard(Writer out) {
+            return new GuardedWriter(out);
+        }
+
+        /**
+         * If the parse failed because this permit aborted it, rethrow the abort reason
+         * instead of whatever wrapper exception the parser produced
+         */
+        public void rethrowIfAborted(Exception e) throws ExtractionRejectedException {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ExtractionRejectedException rejection) {
+                    throw rejection;
+                }
+            }
+            if (isExpired()) {
+                throw timeout();
+            }
+            if (owner.isInterrupted()) {
+                throw cancelled(name);
+            }
+        }
+
+        private ExtractionRejectedException timeout() {
+            return new ExtractionRejectedException(ExtractionRejectedException.Reason.TIMEOUT,
+                    "Parsing " + name + " exceeded the " + parseTimeoutMs + " ms limit");
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            if (expired) {
+                // Clear the watchdog's interrupt so it does not leak into the caller's next task
+                Thread.interrupted();
+            }
+            slots.release();
+        }
+
+        private class GuardedWriter extends FilterWriter {
+            private long written;
+
+            GuardedWriter(Writer out) {
+                super(out);
+            }
+
+            @Override
+            public void write(int c) throws IOException {
+                check(1);
+                super.write(c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                check(len);
+                super.write(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                check(len);
+                super.write(str, off, len);
+            }
+
+            private void check(int len) throws ExtractionRejectedException {
+                if (isExpired()) {
+                    throw timeout();
+                }
+                if (owner.isInterrupted()) {
+                    throw cancelled(name);
+                }
+                written += len;
+                if (maxOutputChars > 0 && written > maxOutputChars) {
+                    throw new ExtractionRejectedException(ExtractionRejectedException.Reason.OUTPUT_TOO_LARGE,
+                            "Extracted content of " + name + " exceeds the limit of " + maxOutputChars + " characters");
+                }
+            }
+        }
+    }
+}
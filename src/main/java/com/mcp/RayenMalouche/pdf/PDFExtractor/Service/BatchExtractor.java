@@ -0,0 +1,115 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts many files in parallel and hands each result back as soon as it completes.
+ * All batches share one bounded fork-join pool sized by batch.parallelism (default: one worker per core),
+ * and a failing file only produces an error entry for that file.
+ */
+public class BatchExtractor {
+
+    private static final ForkJoinPool POOL = createPool();
+    private static final int MAX_FILES = ConfigLoader.getIntProperty("batch.max.files", 1000);
+
+    private final TikaExtractorService extractorService;
+
+    /**
+     * Receives one result per file, in completion order, on the thread that called extract
+     */
+    @FunctionalInterface
+    public interface ResultConsumer {
+        void accept(Map<String, Object> result) throws Exception;
+    }
+
+    public BatchExtractor(TikaExtractorService extractorService) {
+        this.extractorService = extractorService;
+    }
+
+    private static ForkJoinPool createPool() {
+        int parallelism = ConfigLoader.getIntProperty("batch.parallelism", 0);
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return new ForkJoinPool(parallelism);
+    }
+
+    public static int getParallelism() {
+        return POOL.getParallelism();
+    }
+
+    public static int getMaxFiles() {
+        return MAX_FILES;
+    }
+
+    /**
+     * Files to process: the explicit list when given, otherwise every file matching the glob
+     */
+    public List<String> resolve(List<String> filenames, String glob) throws IOException {
+        if (filenames != null && !filenames.isEmpty()) {
+            return filenames;
+        }
+        if (glob != null && !glob.isBlank()) {
+            return extractorService.findFiles(glob);
+        }
+        throw new IllegalArgumentException("Either filenames or glob is required");
+    }
+
+    /**
+     * Extract every file with the given mode (text, html or metadata).
+     * Returns once all results have been delivered; if the consumer fails (for example because
+     * the client went away) the remaining extractions are cancelled and the error is rethrown.
+     */
+    public void extract(List<String> filenames, String mode, ResultConsumer consumer) throws Exception {
+        if (filenames.size() > MAX_FILES) {
+            throw new IllegalArgumentException("Batch of " + filenames.size() + " files exceeds the limit of " + MAX_FILES);
+        }
+
+        CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<>(POOL);
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(filenames.size());
+        for (String filename : filenames) {
+            futures.add(completion.submit(() -> extractOne(filename, mode)));
+        }
+
+        try {
+            for (int i = 0; i < filenames.size(); i++) {
+                consumer.accept(completion.take().get());
+            }
+        } catch (Exception e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+    }
+
+    private Map<String, Object> extractOne(String filename, String mode) {
+        long start = System.nanoTime();
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.putAll(switch (mode) {
+                case "html" -> extractorService.extractToHtml(filename);
+                case "metadata" -> extractorService.getFileMetadata(filename);
+                default -> extractorService.extractText(filename);
+            });
+            result.put("status", "success");
+        } catch (Exception e) {
+            result.put("status", "error");
+            result.put("message", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            if (e instanceof ExtractionRejectedException rejection) {
+                result.put("reason", rejection.getReason().name());
+            }
+        }
+        result.put("filename", filename);
+        result.put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+}
@@ -0,0 +1,409 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * SAX handler that renders Tika's XHTML events as a compact document for clients with a limited
+ * context: plain text or minimal HTML (headings, paragraphs, list items and preformatted blocks,
+ * without head, styles or attributes), with whitespace collapsed and the running headers and footers
+ * of paged documents removed. Output stops at a character budget, and a cursor tells where the next
+ * call resumes, all in one pass over the parse.
+ * <p>
+ * Content is cut into blocks at block-level elements. Pages ({@code <div class="page">}) are buffered
+ * until they end; the first and last lines of a page are dropped when, with digits ignored, they were
+ * also the first or last lines of an earlier page, so "Page 3 of 10" goes the way of "Page 2 of 10".
+ * The first occurrence of a header is kept. Content outside pages is written as soon as each block ends.
+ * <p>
+ * The blocks of a whole document can also be recorded once ({@link #recordBlocks}) and later windows
+ * rendered from the recording ({@link #replay}) instead of parsing the document again.
+ */
+public class CompactContentHandler extends DefaultHandler {
+
+    /**
+     * Rough size of a token of English text, for converting a token budget into characters
+     */
+    public static final int CHARS_PER_TOKEN = 4;
+
+    private static final Set<String> BLOCK_ELEMENTS = Set.of(
+            "p", "div", "h1", "h2", "h3", "h4", "h5", "h6", "li", "pre", "blockquote", "tr", "dt", "dd");
+    private static final Set<String> KEPT_ELEMENTS = Set.of("h1", "h2", "h3", "h4", "h5", "h6", "li", "pre");
+    private static final Set<String> SKIPPED_ELEMENTS = Set.of("head", "style", "script");
+    private static final int EDGE_LINES = 2;
+    private static final int MAX_EDGES = 1000;
+
+    private final Writer out;
+    private final boolean html;
+    private final int maxChars;
+    private final long skipBlocks;
+    private final int skipChars;
+
+    private final StringBuilder text = new StringBuilder();
+    private String blockTag = "p";
+    private int skipDepth;
+    private int divDepth;
+    private int pageDepth = -1;
+    private List<Block> page;
+    private final Set<String> edges = new HashSet<>();
+
+    private StringBuilder recorded;
+    private long blockIndex;
+    private int written;
+    private long removedLines;
+    private String nextCursor;
+
+    /**
+     * @param html     minimal HTML instead of plain text
+     * @param maxChars characters to write at most
+     * @param cursor   where to resume, as returned by {@link #getNextCursor()}, or null to start at the beginning
+     */
+    public CompactContentHandler(Writer out, boolean html, int maxChars, String cursor) {
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("maxChars and maxTokens must be > 0");
+        }
+        this.out = out;
+        this.html = html;
+        this.maxChars = maxChars;
+        if (cursor == null || cursor.isBlank()) {
+            skipBlocks = 0;
+            skipChars = 0;
+        } else {
+            try {
+                int separator = cursor.indexOf(':');
+                skipBlocks = Long.parseLong(cursor.substring(0, separator));
+                skipChars = Integer.parseInt(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            if (skipBlocks < 0 || skipChars < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+
+    /**
+     * Characters of output for a budget given in tokens, in characters, or both (the smaller wins)
+     */
+    public static int budget(Number maxTokens, Number maxChars) {
+        long budget = maxChars != null ? maxChars.longValue() : Integer.MAX_VALUE;
+        if (maxTokens != null) {
+            budget = Math.min(budget, maxTokens.longValue() * CHARS_PER_TOKEN);
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(budget, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        String name = localName.isEmpty() ? qName : localName;
+        if (skipDepth > 0 || SKIPPED_ELEMENTS.contains(name)) {
+            skipDepth++;
+            return;
+        }
+        if ("div".equals(name)) {
+            divDepth++;
+            if (page == null && "page".equals(atts.getValue("class"))) {
+                endBlock();
+                page = new ArrayList<>();
+                pageDepth = divDepth;
+                return;
+            }
+        }
+        if (BLOCK_ELEMENTS.contains(name)) {
+            endBlock();
+            blockTag = KEPT_ELEMENTS.contains(name) ? name : "p";
+        } else if ("br".equals(name)) {
+            text.append('\n');
+        } else if (("td".equals(name) || "th".equals(name)) && !text.isEmpty()) {
+            text.append(" | ");
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        String name = localName.isEmpty() ? qName : localName;
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        if (BLOCK_ELEMENTS.contains(name)) {
+            endBlock();
+        }
+        if ("div".equals(name)) {
+            if (divDepth == pageDepth) {
+                endPage();
+            }
+            divDepth--;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (skipDepth == 0) {
+            text.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        endBlock();
+        if (page != null) {
+            endPage();
+        }
+    }
+
+    /**
+     * Where the next call resumes, or null when everything was written
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Also append every block, after header and footer removal, to blocks: one line of tag, tab and content
+     */
+    public void recordBlocks(StringBuilder blocks) {
+        recorded = blocks;
+    }
+
+    /**
+     * Write the blocks recorded by {@link #recordBlocks} from the cursor on, up to the budget
+     */
+    public void replay(CharSequence blocks) throws SAXException {
+        int start = 0;
+        try {
+            for (int i = 0; i < blocks.length(); i++) {
+                if (blocks.charAt(i) == '\n') {
+                    String line = blocks.subSequence(start, i).toString();
+                    int tab = line.indexOf('\t');
+                    emit(new Block(line.substring(0, tab), List.of(line.substring(tab + 1))));
+                    start = i + 1;
+                }
+            }
+        } catch (BudgetReachedException e) {
+            // nextCursor is set
+        }
+    }
+
+    public boolean isTruncated() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Header and footer lines dropped so far, including those before the cursor
+     */
+    public long getRemovedLines() {
+        return removedLines;
+    }
+
+    private void endBlock() throws SAXException {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                String line = collapse(text, start, i);
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+                start = i + 1;
+            }
+        }
+        text.setLength(0);
+        String tag = blockTag;
+        blockTag = "p";
+        if (lines.isEmpty()) {
+            return;
+        }
+        Block block = new Block(tag, lines);
+        if (page != null) {
+            page.add(block);
+        } else {
+            emit(block);
+        }
+    }
+
+    private void endPage() throws SAXException {
+        endBlock();
+        List<Block> blocks = page;
+        page = null;
+        pageDepth = -1;
+
+        List<String> pageEdges = new ArrayList<>();
+        for (int i = 0, n = 0; i < blocks.size() && n < EDGE_LINES; i++) {
+            for (int j = 0; j < blocks.get(i).lines().size() && n < EDGE_LINES; j++, n++) {
+                pageEdges.add(edgeKey(blocks.get(i).lines().get(j)));
+            }
+        }
+        for (int i = blocks.size() - 1, n = 0; i >= 0 && n < EDGE_LINES; i--) {
+            for (int j = blocks.get(i).lines().size() - 1; j >= 0 && n < EDGE_LINES; j--, n++) {
+                pageEdges.add(edgeKey(blocks.get(i).lines().get(j)));
+            }
+        }
+
+        for (int n = 0; n < EDGE_LINES && !blocks.isEmpty(); n++) {
+            List<String> lines = blocks.get(0).lines();
+            if (!edges.contains(edgeKey(lines.get(0)))) {
+                break;
+            }
+            lines.remove(0);
+            removedLines++;
+            if (lines.isEmpty()) {
+                blocks.remove(0);
+            }
+        }
+        for (int n = 0; n < EDGE_LINES && !blocks.isEmpty(); n++) {
+            List<String> lines = blocks.get(blocks.size() - 1).lines();
+            if (!edges.contains(edgeKey(lines.get(lines.size() - 1)))) {
+                break;
+            }
+            lines.remove(lines.size() - 1);
+            removedLines++;
+            if (lines.isEmpty()) {
+                blocks.remove(blocks.size() - 1);
+            }
+        }
+        if (edges.size() < MAX_EDGES) {
+            edges.addAll(pageEdges);
+        }
+
+        for (Block block : blocks) {
+            emit(block);
+        }
+    }
+
+    /**
+     * Write a block, unless it lies before the cursor; stop the parse once the budget is spent
+     */
+    private void emit(Block block) throws SAXException {
+        try {
+            if (blockIndex < skipBlocks) {
+                blockIndex++;
+                // Nothing is written before the cursor, but the guarded writer still gets to check for timeouts
+                out.write("", 0, 0);
+                return;
+            }
+            String content = String.join(" ", block.lines());
+            if (recorded != null) {
+                recorded.append(block.tag()).append('\t').append(content).append('\n');
+            }
+            int from = blockIndex == skipBlocks ? Math.min(skipChars, content.length()) : 0;
+            String rendered = render(block.tag(), content, from, content.length());
+            if (written + rendered.length() > maxChars) {
+                int to = from;
+                if (written == 0) {
+                    // A block larger than the whole budget is cut rather than never returned
+                    to = fit(block.tag(), content, from, maxChars);
+                    rendered = render(block.tag(), content, from, to);
+                    out.write(rendered);
+                    written += rendered.length();
+                }
+                nextCursor = to < content.length() ? blockIndex + ":" + to : (blockIndex + 1) + ":0";
+                throw new BudgetReachedException();
+            }
+            out.write(rendered);
+            written += rendered.length();
+            blockIndex++;
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private String render(String tag, String content, int from, int to) {
+        StringBuilder rendered = new StringBuilder(to - from + 12);
+        if (html) {
+            rendered.append('<').append(tag).append('>');
+            for (int i = from; i < to; i++) {
+                appendEscaped(rendered, content.charAt(i));
+            }
+            rendered.append("</").append(tag).append(">\n");
+        } else {
+            rendered.append(content, from, to).append('\n');
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * End of the longest part of content from from whose rendering takes at most budget characters
+     * (at least one character, so every call makes progress)
+     */
+    private int fit(String tag, String content, int from, int budget) {
+        int length = html ? 2 * tag.length() + 6 : 1;
+        int to = from;
+        while (to < content.length()) {
+            char c = content.charAt(to);
+            int width = !html ? 1 : c == '&' ? 5 : c == '<' || c == '>' ? 4 : 1;
+            if (length + width > budget && to > from) {
+                break;
+            }
+            length += width;
+            to++;
+        }
+        // Never split a surrogate pair
+        if (to < content.length() && to > from + 1 && Character.isLowSurrogate(content.charAt(to))) {
+            to--;
+        }
+        return to;
+    }
+
+    private static void appendEscaped(StringBuilder out, char c) {
+        switch (c) {
+            case '&' -> out.append("&amp;");
+            case '<' -> out.append("&lt;");
+            case '>' -> out.append("&gt;");
+            default -> out.append(c);
+        }
+    }
+
+    /**
+     * The characters from start to end with runs of whitespace reduced to one space and the ends trimmed
+     */
+    private static String collapse(CharSequence text, int start, int end) {
+        StringBuilder line = new StringBuilder(end - start);
+        boolean space = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = !line.isEmpty();
+            } else {
+                if (space) {
+                    line.append(' ');
+                    space = false;
+                }
+                line.append(c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * A line as compared against other pages' headers and footers: case and digits ignored
+     */
+    private static String edgeKey(String line) {
+        return line.toLowerCase(Locale.ROOT).replaceAll("\\d+", "#");
+    }
+
+    private record Block(String tag, List<String> lines) {
+    }
+
+    /**
+     * Ends the parse once the budget is spent; see {@link #isTruncated()}
+     */
+    private static class BudgetReachedException extends SAXException {
+        BudgetReachedException() {
+            super("Output budget reached");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of extraction results.
+ * Entries are keyed by the SHA-256 of the file content plus its size and the output mode,
+ * so a renamed or touched copy of a document hits the same entry while an edited one never does.
+ * The memory tier is an LRU bounded by the estimated size of the cached results;
+ * the optional disk tier stores results as JSON files under a configurable directory and evicts the
+ * least recently read ones first.
+ */
+public class ExtractionCache {
+
+    private static final ExtractionCache SHARED = fromConfig();
+    private static final int MAX_HASH_ENTRIES = 10_000;
+
+    private final boolean enabled;
+    private final long maxMemoryBytes;
+    private final File diskDirectory;
+    private final long maxDiskBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final LinkedHashMap<String, CachedResult> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, ContentHash> hashes = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ContentHash> eldest) {
+            return size() > MAX_HASH_ENTRIES;
+        }
+    };
+    private long memoryBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private record CachedResult(Map<String, Object> result, long weight) {
+    }
+
+    private record ContentHash(long size, long lastModified, String sha256) {
+    }
+
+    public ExtractionCache(boolean enabled, long maxMemoryBytes, File diskDirectory, long maxDiskBytes) {
+        this.enabled = enabled;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.diskDirectory = diskDirectory;
+        this.maxDiskBytes = maxDiskBytes;
+
+        if (diskDirectory != null) {
+            if (!diskDirectory.exists() && !diskDirectory.mkdirs()) {
+                System.err.println("Warning: Could not create cache directory " + diskDirectory);
+            }
+            File[] existing = diskDirectory.listFiles(File::isFile);
+            if (existing != null) {
+                for (File f : existing) {
+                    diskBytes.addAndGet(f.length());
+                }
+            }
+        }
+    }
+
+    /**
+     * The cache shared by every extractor service in this JVM, configured from application.properties
+     */
+    public static ExtractionCache getShared() {
+        return SHARED;
+    }
+
+    private static ExtractionCache fromConfig() {
+        boolean enabled = ConfigLoader.getBooleanProperty("cache.enabled", true);
+        long maxMemory = ConfigLoader.getLongProperty("cache.memory.max.bytes", 256L * 1024 * 1024);
+        File diskDir = null;
+        if (enabled && ConfigLoader.getBooleanProperty("cache.disk.enabled", false)) {
+            diskDir = new File(ConfigLoader.getProperty("cache.disk.directory", "extraction-cache"));
+        }
+        long maxDisk = ConfigLoader.getLongProperty("cache.disk.max.bytes", 1024L * 1024 * 1024);
+        return new ExtractionCache(enabled, maxMemory, diskDir, maxDisk);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Length of the longest text a single entry can hold; larger results are never kept in memory
+     */
+    public long getMaxEntryChars() {
+        return enabled ? maxMemoryBytes / 2 : 0;
+    }
+
+    /**
+     * Build the cache key for a file and output mode.
+     * The content hash is memoized per path, size and mtime so unchanged files are only hashed once.
+     */
+    public String keyFor(File file, String mode) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String path = file.getAbsolutePath();
+
+        ContentHash hash;
+        synchronized (hashes) {
+            hash = hashes.get(path);
+        }
+        if (hash == null || hash.size() != size || hash.lastModified() != lastModified) {
+            hash = new ContentHash(size, lastModified, sha256(file));
+            synchronized (hashes) {
+                hashes.put(path, hash);
+            }
+        }
+        return hash.sha256() + "-" + size + "-" + mode;
+    }
+
+    /**
+     * Look up a cached result, falling back to the disk tier on a memory miss.
+     * Returns a shallow copy so callers can adjust per-request fields, or null on a miss.
+     */
+    public Map<String, Object> get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        synchronized (this) {
+            CachedResult cached = memory.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return new HashMap<>(cached.result());
+            }
+        }
+
+        Map<String, Object> fromDisk = readFromDisk(key);
+        if (fromDisk != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, fromDisk);
+            return new HashMap<>(fromDisk);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, Map<String, Object> result) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Object> copy = new HashMap<>(result);
+        putInMemory(key, copy);
+        writeToDisk(key, copy);
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        synchronized (this) {
+            stats.put("entries", memory.size());
+            stats.put("memoryBytes", memoryBytes);
+        }
+        stats.put("maxMemoryBytes", maxMemoryBytes);
+        stats.put("diskEnabled", diskDirectory != null);
+        if (diskDirectory != null) {
+            stats.put("diskBytes", diskBytes.get());
+            stats.put("diskEvictions", diskEvictions.get());
+        }
+        return stats;
+    }
+
+    private synchronized void putInMemory(String key, Map<String, Object> result) {
+        long weight = estimateWeight(result);
+        if (weight > maxMemoryBytes) {
+            return;
+        }
+
+        CachedResult previous = memory.put(key, new CachedResult(result, weight));
+        if (previous != null) {
+            memoryBytes -= previous.weight();
+        }
+        memoryBytes += weight;
+
+        Iterator<CachedResult> it = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().weight();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readFromDisk(String key) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        File entry = new File(diskDirectory, key + ".json");
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            Map<String, Object> result = mapper.readValue(entry, Map.class);
+            // trimDisk evicts by mtime, so a read makes the entry the most recently used
+            entry.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException e) {
+            System.err.println("Discarding unreadable cache entry " + entry.getName() + ": " + e.getMessage());
+            deleteDiskEntry(entry);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Map<String, Object> result) {
+        if (diskDirectory == null) {
+            return;
+        }
+        File entry = new File(diskDirectory, key + ".json");
+        File tmp = new File(diskDirectory, key + ".json.tmp");
+        try {
+            mapper.writeValue(tmp, result);
+            long previous = entry.isFile() ? entry.length() : 0;
+            if (!tmp.renameTo(entry)) {
+                tmp.delete();
+                return;
+            }
+            diskBytes.addAndGet(entry.length() - previous);
+        } catch (IOException e) {
+            System.err.println("Could not write cache entry " + entry.getName() + ": " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        if (diskBytes.get() > maxDiskBytes) {
+            trimDisk();
+        }
+    }
+
+    private synchronized void trimDisk() {
+        File[] entries = diskDirectory.listFiles((dir, name) -> name.endsWith(".json"));
+        if (entries == null) {
+            return;
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File f : entries) {
+            if (diskBytes.get() <= maxDiskBytes) {
+                break;
+            }
+            deleteDiskEntry(f);
+            diskEvictions.incrementAndGet();
+        }
+    }
+
+    private void deleteDiskEntry(File entry) {
+        long length = entry.length();
+        if (entry.delete()) {
+            diskBytes.addAndGet(-length);
+        }
+    }
+
+    /**
+     * Rough heap footprint of a result map: two bytes per character plus a fixed overhead per entry
+     */
+    private static long estimateWeight(Object value) {
+        if (value instanceof CharSequence cs) {
+            return 40 + 2L * cs.length();
+        }
+        if (value instanceof Map<?, ?> map) {
+            long weight = 48;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                weight += 32 + estimateWeight(e.getKey()) + estimateWeight(e.getValue());
+            }
+            return weight;
+        }
+        return 16;
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
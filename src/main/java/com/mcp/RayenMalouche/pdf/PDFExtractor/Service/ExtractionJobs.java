@@ -0,0 +1,403 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extractions run as background jobs, for documents that take longer than a client waits for one call.
+ * Submitted jobs wait in a priority queue (high before normal before low, first come first served within
+ * a priority) of at most jobs.max.queued entries and run on a pool of jobs.workers threads; the parses still
+ * go through admission control. Results are kept in a store bounded by jobs.results.max.bytes, oldest
+ * first out, and finished jobs are forgotten jobs.ttl.ms after they end. Cancelling a queued job takes it
+ * off the queue; cancelling a running job interrupts its thread, which aborts the parse at its next write
+ * or blocking read.
+ */
+public class ExtractionJobs {
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    public enum Priority { HIGH, NORMAL, LOW }
+
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("extraction-jobs-cleaner").daemon(true).factory());
+
+    private final TikaExtractorService extractorService;
+    private final ThreadPoolExecutor executor;
+    private final int maxQueued;
+    private final long maxResultBytes;
+    private final long ttlMs;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // Results in completion order, so the oldest is evicted first when the store is full
+    private final LinkedHashMap<String, StoredResult> results = new LinkedHashMap<>();
+    private long storedBytes;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param workers        threads running jobs (0 = half the cores, at least one)
+     * @param maxQueued      jobs allowed to wait for a worker; submissions beyond that are rejected
+     * @param maxResultBytes size bound of the result store (estimated, two bytes per character)
+     * @param ttlMs          how long a finished job and its result are kept
+     */
+    public ExtractionJobs(TikaExtractorService extractorService, int workers, int maxQueued, long maxResultBytes, long ttlMs) {
+        int threads = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.extractorService = extractorService;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxResultBytes = maxResultBytes;
+        this.ttlMs = ttlMs;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                Thread.ofPlatform().name("extraction-job-", 0).daemon(true).factory());
+
+        long sweep = Math.max(1_000, Math.min(ttlMs, 60_000));
+        CLEANER.scheduleWithFixedDelay(this::expire, sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The job queue configured by jobs.workers, jobs.max.queued, jobs.results.max.bytes and jobs.ttl.ms,
+     * running on the shared extraction engine; created on first use
+     */
+    public static ExtractionJobs getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final ExtractionJobs SHARED = new ExtractionJobs(
+                TikaExtractorService.getShared(),
+                ConfigLoader.getIntProperty("jobs.workers", 0),
+                ConfigLoader.getIntProperty("jobs.max.queued", 100),
+                ConfigLoader.getLongProperty("jobs.results.max.bytes", 268_435_456),
+                ConfigLoader.getLongProperty("jobs.ttl.ms", 900_000));
+    }
+
+    /**
+     * Queue the extraction of a file: mode is text, html or metadata; with startPage (and optionally
+     * endPage) only that page range of a PDF is extracted as text or html. priority is high, normal or low
+     * (null = normal). Returns the status of the new job.
+     */
+    public Map<String, Object> submit(String filename, String mode, Integer startPage, Integer endPage, String priority)
+            throws ExtractionRejectedException {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("Filename is required");
+        }
+        String extraction = mode != null ? mode.toLowerCase(Locale.ROOT) : "text";
+        Callable<Map<String, Object>> task = switch (extraction) {
+            case "text", "html" -> {
+                boolean html = "html".equals(extraction);
+                if (startPage == null) {
+                    yield html ? () -> extractorService.extractToHtml(filename) : () -> extractorService.extractText(filename);
+                }
+                int lastPage = endPage != null ? endPage : startPage;
+                yield () -> extractorService.extractPages(filename, startPage, lastPage, html);
+            }
+            case "metadata" -> () -> extractorService.getFileMetadata(filename);
+            default -> throw new IllegalArgumentException("mode must be text, html or metadata");
+        };
+        return submit(filename, extraction, parsePriority(priority), task);
+    }
+
+    /**
+     * Queue any extraction producing a result map; filename and mode only describe the job
+     */
+    public Map<String, Object> submit(String filename, String mode, Priority priority, Callable<Map<String, Object>> task)
+            throws ExtractionRejectedException {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.OVERLOADED,
+                    "Job queue is full: " + maxQueued + " jobs waiting, retry later");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), filename, mode, priority, sequence.incrementAndGet(), task);
+        jobs.put(job.id, job);
+        submitted.incrementAndGet();
+        executor.execute(job);
+        return job.status();
+    }
+
+    private static Priority parsePriority(String priority) {
+        if (priority == null || priority.isBlank()) {
+            return Priority.NORMAL;
+        }
+        try {
+            return Priority.valueOf(priority.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("priority must be high, normal or low");
+        }
+    }
+
+    /**
+     * Status of a job, or null when it is unknown or has expired
+     */
+    public Map<String, Object> getStatus(String id) {
+        Job job = id != null ? jobs.get(id) : null;
+        return job != null ? job.status() : null;
+    }
+
+    /**
+     * Cancel a queued or running job. Returns its status afterwards, or null when it is unknown;
+     * a job that has already finished is left as it is.
+     */
+    public Map<String, Object> cancel(String id) {
+        Job job = id != null ? jobs.get(id) : null;
+        if (job == null) {
+            return null;
+        }
+        job.cancel();
+        return job.status();
+    }
+
+    /**
+     * The result of a finished job with a window of its text or html: offset characters are skipped and at
+     * most limit returned, with hasMore and nextOffset as in text windows. Returns null when the job is
+     * unknown; throws IllegalStateException when it has not succeeded or its result has been evicted.
+     */
+    public Map<String, Object> getResult(String id, long offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit must be > 0");
+        }
+        Job job = id != null ? jobs.get(id) : null;
+        if (job == null) {
+            return null;
+        }
+        if (job.state != State.SUCCEEDED) {
+            throw new IllegalStateException("Job " + id + " is " + job.state + (job.error != null ? ": " + job.error : ""));
+        }
+        StoredResult stored;
+        synchronized (results) {
+            stored = results.get(id);
+        }
+        if (stored == null) {
+            throw new IllegalStateException("The result of job " + id + " has been evicted from the result store");
+        }
+
+        Map<String, Object> result = new HashMap<>(stored.result);
+        String field = result.containsKey("html") ? "html" : result.containsKey("text") ? "text" : null;
+        if (field != null) {
+            String content = (String) result.get(field);
+            int from = (int) Math.min(offset, content.length());
+            int to = (int) Math.min((long) from + limit, content.length());
+            result.put(field, content.substring(from, to));
+            result.put(field + "Length", to - from);
+            result.put("offset", offset);
+            result.put("hasMore", to < content.length());
+            if (to < content.length()) {
+                result.put("nextOffset", (long) to);
+            }
+        }
+        result.put("jobId", id);
+        return result;
+    }
+
+    private void store(String id, Map<String, Object> result) throws ExtractionRejectedException {
+        long bytes = estimateBytes(result);
+        if (maxResultBytes > 0 && bytes > maxResultBytes) {
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.OUTPUT_TOO_LARGE,
+                    "Result of about " + bytes + " bytes exceeds the result store limit of " + maxResultBytes);
+        }
+        synchronized (results) {
+            results.put(id, new StoredResult(result, bytes));
+            storedBytes += bytes;
+            Iterator<Map.Entry<String, StoredResult>> oldest = results.entrySet().iterator();
+            while (maxResultBytes > 0 && storedBytes > maxResultBytes && oldest.hasNext()) {
+                Map.Entry<String, StoredResult> entry = oldest.next();
+                if (!entry.getKey().equals(id)) {
+                    storedBytes -= entry.getValue().bytes;
+                    oldest.remove();
+                    evicted.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget jobs, and their results, that finished more than ttlMs ago
+     */
+    void expire() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        for (Job job : jobs.values()) {
+            if (job.finishedAt > 0 && job.finishedAt < cutoff) {
+                jobs.remove(job.id);
+                synchronized (results) {
+                    StoredResult stored = results.remove(job.id);
+                    if (stored != null) {
+                        storedBytes -= stored.bytes;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value instanceof String string) {
+            return 40 + 2L * string.length();
+        }
+        if (value instanceof Map<?, ?> map) {
+            long bytes = 48;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        return 16;
+    }
+
+    public Map<String, Object> getStats() {
+        int running = 0;
+        for (Job job : jobs.values()) {
+            if (job.state == State.RUNNING) {
+                running++;
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("workers", executor.getMaximumPoolSize());
+        stats.put("queued", queued.get());
+        stats.put("maxQueued", maxQueued);
+        stats.put("running", running);
+        stats.put("retained", jobs.size());
+        stats.put("submitted", submitted.get());
+        synchronized (results) {
+            stats.put("storedResults", results.size());
+            stats.put("storedBytes", storedBytes);
+        }
+        stats.put("maxStoredBytes", maxResultBytes);
+        stats.put("evictedResults", evicted.get());
+        return stats;
+    }
+
+    private record StoredResult(Map<String, Object> result, long bytes) {
+    }
+
+    /**
+     * One job. Ordered in the executor's priority queue by priority, then by submission.
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        private final String id;
+        private final String filename;
+        private final String mode;
+        private final Priority priority;
+        private final long sequence;
+        private final Callable<Map<String, Object>> task;
+        private final long submittedAt = System.currentTimeMillis();
+        private volatile State state = State.QUEUED;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile String error;
+        private volatile String reason;
+        private Thread runner;
+
+        Job(String id, String filename, String mode, Priority priority, long sequence, Callable<Map<String, Object>> task) {
+            this.id = id;
+            this.filename = filename;
+            this.mode = mode;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                state = State.RUNNING;
+                runner = Thread.currentThread();
+                startedAt = System.currentTimeMillis();
+            }
+            queued.decrementAndGet();
+
+            Exception failure = null;
+            try {
+                store(id, task.call());
+            } catch (Exception e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                runner = null;
+                // Clear a cancellation interrupt that arrived after the parse stopped looking
+                Thread.interrupted();
+                finishedAt = System.currentTimeMillis();
+                if (state == State.CANCELLED) {
+                    discardResult();
+                } else if (failure != null) {
+                    state = State.FAILED;
+                    error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+                    if (failure instanceof ExtractionRejectedException rejection) {
+                        reason = rejection.getReason().name();
+                    }
+                } else {
+                    state = State.SUCCEEDED;
+                }
+            }
+        }
+
+        synchronized void cancel() {
+            if (state == State.QUEUED) {
+                state = State.CANCELLED;
+                finishedAt = System.currentTimeMillis();
+                queued.decrementAndGet();
+                executor.remove(this);
+            } else if (state == State.RUNNING) {
+                state = State.CANCELLED;
+                runner.interrupt();
+            }
+        }
+
+        private void discardResult() {
+            synchronized (results) {
+                StoredResult stored = results.remove(id);
+                if (stored != null) {
+                    storedBytes -= stored.bytes;
+                }
+            }
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("state", state.name());
+            status.put("filename", filename);
+            status.put("mode", mode);
+            status.put("priority", priority.name());
+            status.put("submittedAt", submittedAt);
+            if (startedAt > 0) {
+                status.put("startedAt", startedAt);
+                status.put("elapsedMs", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+            }
+            if (finishedAt > 0) {
+                status.put("finishedAt", finishedAt);
+            }
+            if (error != null) {
+                status.put("message", error);
+            }
+            if (reason != null) {
+                status.put("reason", reason);
+            }
+            return status;
+        }
+    }
+}
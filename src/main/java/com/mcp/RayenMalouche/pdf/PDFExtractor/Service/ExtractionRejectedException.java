@@ -0,0 +1,33 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when admission control refuses or aborts a parse
+ */
+public class ExtractionRejectedException extends IOException {
+
+    public enum Reason {
+        /** All parse slots and wait queue slots are taken; the client should retry later */
+        OVERLOADED,
+        /** The file is larger than files.max.size */
+        FILE_TOO_LARGE,
+        /** The parse produced more than tika.max.string.length characters */
+        OUTPUT_TOO_LARGE,
+        /** The parse ran longer than parse.timeout.ms */
+        TIMEOUT,
+        /** The parse was cancelled: its thread was interrupted, for example by cancel-extraction */
+        CANCELLED
+    }
+
+    private final Reason reason;
+
+    public ExtractionRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,217 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-request breakdown of where the time of one extraction went: io (resolving the file, hashing it for
+ * the cache key, cache lookup), admission (waiting for a parse slot), detect (routing and type detection),
+ * parse (the parser itself, including the streaming HTML handler) and serialize (rendering the JSON response).
+ * A recorder is bound to the thread handling the request; phases opened while none is bound cost nothing.
+ * Phases nest and each one records its own time only, so the phases add up to the request's wall time.
+ * Allocations are estimated from the per-thread allocation counter of the JVM and cover the request thread
+ * only, not the threads of the parallel PDF extractor or a forked worker.
+ */
+public final class ExtractionTimings {
+
+    private static final long SLOW_THRESHOLD_NANOS =
+            ConfigLoader.getLongProperty("timings.slow.threshold.ms", 2000) * 1_000_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ThreadLocal<ExtractionTimings> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+    private static final Phase NO_PHASE = new Phase(null, null);
+
+    private final String operation;
+    private final long start = System.nanoTime();
+    private final long startAllocated = allocatedBytes();
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final Deque<Phase> open = new ArrayDeque<>();
+    private String target;
+
+    private ExtractionTimings(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Bind a recorder for one request (a tool call or an endpoint) to the current thread
+     */
+    public static ExtractionTimings start(String operation) {
+        ExtractionTimings timings = new ExtractionTimings(operation);
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * The recorder bound to the current thread, or null
+     */
+    public static ExtractionTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Open a phase of the current request; close it when the phase ends, or use {@link #time}
+     */
+    public static Phase phase(String name) {
+        ExtractionTimings timings = CURRENT.get();
+        if (timings == null) {
+            return NO_PHASE;
+        }
+        Phase phase = new Phase(timings, name);
+        timings.open.push(phase);
+        return phase;
+    }
+
+    /**
+     * Run body as a phase of the current request and return its result
+     */
+    public static <T, E extends Exception> T time(String name, Timed<T, E> body) throws E {
+        Phase phase = phase(name);
+        try {
+            return body.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Name the document the request is about, for the slow-request log
+     */
+    public static void target(String target) {
+        ExtractionTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.target = target;
+        }
+    }
+
+    /**
+     * Milliseconds and allocated bytes per phase so far, phases still open counted up to now, plus the totals
+     */
+    public Map<String, Object> snapshot() {
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        phases.forEach((name, values) -> totals.put(name, values.clone()));
+        long childNanos = 0;
+        long childBytes = 0;
+        // Innermost first, so each open phase is charged for its own time only
+        for (Phase phase : open) {
+            long nanos = now - phase.start;
+            long bytes = allocated - phase.startAllocated;
+            long[] values = totals.computeIfAbsent(phase.name, name -> new long[2]);
+            values[0] += nanos - phase.childNanos - childNanos;
+            values[1] += bytes - phase.childBytes - childBytes;
+            childNanos = nanos;
+            childBytes = bytes;
+        }
+
+        Map<String, Object> phaseTimes = new LinkedHashMap<>();
+        Map<String, Object> phaseBytes = new LinkedHashMap<>();
+        totals.forEach((name, values) -> {
+            phaseTimes.put(name, millis(values[0]));
+            if (startAllocated >= 0) {
+                phaseBytes.put(name, values[1]);
+            }
+        });
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("totalMs", millis(now - start));
+        snapshot.put("phasesMs", phaseTimes);
+        if (startAllocated >= 0) {
+            snapshot.put("allocatedBytes", allocated - startAllocated);
+            snapshot.put("phasesAllocatedBytes", phaseBytes);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Unbind the recorder from the thread. A request slower than timings.slow.threshold.ms is logged
+     * as one JSON record with its phases.
+     */
+    public void finish(String outcome) {
+        CURRENT.remove();
+        long elapsed = System.nanoTime() - start;
+        if (SLOW_THRESHOLD_NANOS < 0 || elapsed < SLOW_THRESHOLD_NANOS) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("event", "slow-extraction");
+        record.put("operation", operation);
+        record.put("target", target);
+        record.put("outcome", outcome);
+        record.putAll(snapshot());
+        try {
+            System.err.println(MAPPER.writeValueAsString(record));
+        } catch (JsonProcessingException e) {
+            System.err.println("Slow extraction: " + record);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static long allocatedBytes() {
+        // -1 when the JVM has no allocation counter or the thread is virtual
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    /**
+     * Work timed by {@link #time}
+     */
+    @FunctionalInterface
+    public interface Timed<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * One open phase; closing it charges its time, minus the phases nested in it, to its name
+     */
+    public static final class Phase implements AutoCloseable {
+        private final ExtractionTimings timings;
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long startAllocated;
+        private long childNanos;
+        private long childBytes;
+
+        private Phase(ExtractionTimings timings, String name) {
+            this.timings = timings;
+            this.name = name;
+            this.startAllocated = timings != null ? allocatedBytes() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (timings == null || timings.open.peek() != this) {
+                return;
+            }
+            timings.open.pop();
+            long nanos = System.nanoTime() - start;
+            long bytes = allocatedBytes() - startAllocated;
+            long[] values = timings.phases.computeIfAbsent(name, key -> new long[2]);
+            values[0] += nanos - childNanos;
+            values[1] += bytes - childBytes;
+
+            Phase parent = timings.open.peek();
+            if (parent != null) {
+                parent.childNanos += nanos;
+                parent.childBytes += bytes;
+            }
+        }
+    }
+}
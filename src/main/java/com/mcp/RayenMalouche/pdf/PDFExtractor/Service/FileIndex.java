@@ -0,0 +1,514 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.tika.Tika;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the files directory tree: size, mtime, detected MIME type and SHA-256 of every file,
+ * keyed by its path relative to the directory ("reports/2024/q1.pdf"). The tree is walked in parallel,
+ * one fork/join task per subdirectory, and entries become visible as they are found, so listings return
+ * first results while the initial scan of a large tree is still running. A file is only sniffed and hashed
+ * when it appears or changes. A WatchService on every directory applies changes as they happen; without
+ * one, every query re-walks the tree instead. The index can be snapshotted to a JSON file so that a
+ * restart only has to re-stat files it already knows.
+ */
+public class FileIndex {
+
+    /**
+     * One indexed file; sha256 is null when content hashing is disabled
+     */
+    public record Entry(String name, long size, long lastModified, boolean canRead, String mimeType, String sha256) {
+    }
+
+    private record Snapshot(String directory, List<Entry> entries) {
+    }
+
+    private final File directory;
+    private final Path root;
+    private final File snapshotFile;
+    private final boolean hashContent;
+    private final boolean watch;
+    private final ForkJoinPool scanPool;
+    private final Tika tika = new Tika();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final List<Consumer<Entry>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean watching;
+    private volatile boolean watchFailed;
+    private volatile boolean complete;
+    private final CountDownLatch scanned = new CountDownLatch(1);
+    private volatile boolean snapshotDirty;
+    private final AtomicLong version = new AtomicLong();
+    // The version restarts at 0 with every index, so tags handed out by an earlier process must not match
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private volatile WatchService watchService;
+
+    private final AtomicLong rescans = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong watchEvents = new AtomicLong();
+
+    /**
+     * @param snapshotFile    where to persist the index between runs, or null to keep it in memory only
+     * @param scanParallelism threads walking the tree; 0 = two per core, since the walk mostly waits on the disk
+     */
+    public FileIndex(File directory, File snapshotFile, boolean hashContent, boolean watch, int scanParallelism) {
+        this.directory = directory;
+        this.root = directory.toPath().toAbsolutePath().normalize();
+        this.snapshotFile = snapshotFile;
+        this.hashContent = hashContent;
+        this.watch = watch;
+        this.scanPool = new ForkJoinPool(scanParallelism > 0
+                ? scanParallelism
+                : 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * The index of the files directory shared by every extractor service in this JVM, created on first use
+     * (so that forked parser workers never build one) and filled in the background
+     */
+    public static FileIndex getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final FileIndex SHARED = fromConfig();
+    }
+
+    private static FileIndex fromConfig() {
+        File snapshot = null;
+        if (ConfigLoader.getBooleanProperty("index.snapshot.enabled", false)) {
+            snapshot = new File(ConfigLoader.getProperty("index.snapshot.file", "file-index.json"));
+        }
+        FileIndex index = new FileIndex(
+                new File(TikaExtractorService.FILES_DIRECTORY),
+                snapshot,
+                ConfigLoader.getBooleanProperty("index.hash.enabled", true),
+                ConfigLoader.getBooleanProperty("index.watch.enabled", true),
+                ConfigLoader.getIntProperty("index.scan.parallelism", 0));
+        index.startInBackground();
+        return index;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Whether the initial scan has finished; until then queries return the files found so far
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Block until the initial scan has finished
+     */
+    public void awaitComplete() throws InterruptedException {
+        scanned.await();
+    }
+
+    /**
+     * Load the snapshot, walk the tree and start watching it; returns once the initial scan is done
+     */
+    public void start() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            System.err.println("Warning: Could not create files directory " + directory);
+        }
+        loadSnapshot();
+        if (watch) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                System.err.println("Warning: Could not watch " + directory + ", listing will rescan: " + e.getMessage());
+            }
+        }
+
+        try {
+            // Directories are registered as the walk reaches them, so changes made during the scan are not lost
+            refresh();
+
+            if (watchService != null && !watchFailed) {
+                watching = true;
+                Thread watcher = new Thread(this::watchLoop, "file-index-watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            } else {
+                closeWatchService();
+            }
+        } finally {
+            complete = true;
+            scanned.countDown();
+        }
+        saveSnapshotIfDirty();
+    }
+
+    /**
+     * Run {@link #start()} on a daemon thread
+     */
+    public void startInBackground() {
+        Thread scanner = new Thread(this::start, "file-index-scan");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    /**
+     * Re-walk the whole tree, indexing new and changed files and dropping deleted ones
+     */
+    public synchronized void refresh() {
+        rescans.incrementAndGet();
+        Set<String> present = ConcurrentHashMap.newKeySet();
+        scanPool.invoke(new ScanTask(root, present));
+        if (entries.keySet().retainAll(present)) {
+            changed();
+        }
+        if (!watching && complete) {
+            saveSnapshotIfDirty();
+        }
+    }
+
+    /**
+     * Re-walk the tree unless it is watched (or still being scanned), so the index and its version reflect
+     * the directory as of now. Queries do this themselves.
+     */
+    public void refreshIfUnwatched() {
+        if (!watching && complete) {
+            refresh();
+        }
+    }
+
+    /**
+     * Files whose relative path starts with prefix and whose MIME type starts with mimeType (either may be null),
+     * sorted by name (the relative path), size or lastModified
+     */
+    public List<Entry> query(String prefix, String mimeType, String sort, boolean descending) {
+        Comparator<Entry> order = switch (sort == null ? "name" : sort) {
+            case "name" -> Comparator.comparing(Entry::name);
+            case "size" -> Comparator.comparingLong(Entry::size).thenComparing(Entry::name);
+            case "lastModified" -> Comparator.comparingLong(Entry::lastModified).thenComparing(Entry::name);
+            default -> throw new IllegalArgumentException("sort must be name, size or lastModified");
+        };
+
+        refreshIfUnwatched();
+
+        Collection<Entry> candidates = prefix == null || prefix.isEmpty()
+                ? entries.values()
+                : entries.subMap(prefix, prefix + Character.MAX_VALUE).values();
+        String type = mimeType == null ? null : mimeType.toLowerCase(Locale.ROOT);
+
+        List<Entry> matches = new ArrayList<>();
+        for (Entry entry : candidates) {
+            if (type == null || entry.mimeType().toLowerCase(Locale.ROOT).startsWith(type)) {
+                matches.add(entry);
+            }
+        }
+        // Entries come out of the map in name order already
+        if (sort != null && !"name".equals(sort)) {
+            matches.sort(order);
+        }
+        if (descending) {
+            matches = matches.reversed();
+        }
+        return matches;
+    }
+
+    /**
+     * The entry of one file as of the last scan or watch event, or null when it is not indexed
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * A number that changes whenever a file is added, changed or removed, for validating cached listings
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * The version qualified by a value picked when this index was created, for tags that outlive the process
+     * (HTTP ETags): two indexes, for example before and after a restart, never produce the same tag
+     */
+    public String getVersionTag() {
+        return epoch + "-" + version.get();
+    }
+
+    /**
+     * Call listener with every file that is added or changes from now on, on the thread that noticed
+     * (a scan task or the watcher), so it must not block
+     */
+    public void addListener(Consumer<Entry> listener) {
+        listeners.add(listener);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("complete", complete);
+        stats.put("watching", watching);
+        stats.put("watchedDirectories", watchedDirectories.size());
+        stats.put("hashContent", hashContent);
+        stats.put("snapshotEnabled", snapshotFile != null);
+        stats.put("rescans", rescans.get());
+        stats.put("indexed", indexed.get());
+        stats.put("watchEvents", watchEvents.get());
+        return stats;
+    }
+
+    /**
+     * Stop watching and write any pending snapshot
+     */
+    public synchronized void close() {
+        watching = false;
+        closeWatchService();
+        scanPool.shutdown();
+        saveSnapshotIfDirty();
+    }
+
+    /**
+     * Walks one directory: registers it with the watch service, indexes its files and forks a task per subdirectory.
+     * Symbolic links are skipped so the walk can neither loop nor leave the files directory.
+     */
+    private class ScanTask extends RecursiveAction {
+        private final Path dir;
+        private final Set<String> present;
+
+        ScanTask(Path dir, Set<String> present) {
+            this.dir = dir;
+            this.present = present;
+        }
+
+        @Override
+        protected void compute() {
+            register(dir);
+            File[] children = dir.toFile().listFiles();
+            if (children == null) {
+                return;
+            }
+            List<ScanTask> subdirectories = new ArrayList<>();
+            for (File child : children) {
+                Path path = child.toPath();
+                if (Files.isSymbolicLink(path)) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    subdirectories.add(new ScanTask(path, present));
+                } else if (child.isFile()) {
+                    String name = relativeName(path);
+                    present.add(name);
+                    update(name, child);
+                }
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    private void update(String name, File file) {
+        if (!file.isFile()) {
+            remove(name);
+            return;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        Entry current = entries.get(name);
+        if (current != null && current.size() == size && current.lastModified() == lastModified) {
+            return;
+        }
+
+        String mimeType;
+        String sha256 = null;
+        try {
+            mimeType = tika.detect(file);
+            if (hashContent) {
+                sha256 = ExtractionCache.sha256(file);
+            }
+        } catch (IOException e) {
+            // Deleted or locked between the listing and the read; the next event or rescan catches up
+            mimeType = "unknown";
+        }
+        Entry entry = new Entry(name, size, lastModified, file.canRead(), mimeType, sha256);
+        entries.put(name, entry);
+        indexed.incrementAndGet();
+        changed();
+        for (Consumer<Entry> listener : listeners) {
+            listener.accept(entry);
+        }
+    }
+
+    /**
+     * Drop a file, or every file below a directory
+     */
+    private void remove(String name) {
+        boolean removed = entries.remove(name) != null;
+        Map<String, Entry> below = entries.subMap(name + "/", name + "/" + Character.MAX_VALUE);
+        if (!below.isEmpty()) {
+            below.clear();
+            removed = true;
+        }
+        if (removed) {
+            changed();
+        }
+    }
+
+    private void changed() {
+        snapshotDirty = true;
+        version.incrementAndGet();
+    }
+
+    private String relativeName(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private void register(Path dir) {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, dir);
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        } catch (IOException e) {
+            // Typically the inotify watch limit on very large trees
+            if (!watchFailed) {
+                System.err.println("Warning: Could not watch " + dir + ", listing will rescan: " + e.getMessage());
+            }
+            watchFailed = true;
+            watching = false;
+        }
+    }
+
+    private void watchLoop() {
+        WatchService service = watchService;
+        try {
+            while (watching) {
+                WatchKey key = service.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    // Quiet period: persist the changes of the last burst in one write
+                    saveSnapshotIfDirty();
+                    continue;
+                }
+                Path dir = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    watchEvents.incrementAndGet();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                        refresh();
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    String name = relativeName(child);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        remove(name);
+                    } else if (Files.isSymbolicLink(child)) {
+                        // Not indexed, see ScanTask
+                    } else if (Files.isDirectory(child)) {
+                        // A new or moved-in subtree: walk and watch it
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            scanPool.invoke(new ScanTask(child, ConcurrentHashMap.newKeySet()));
+                        }
+                    } else {
+                        update(name, child.toFile());
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                    if (root.equals(dir)) {
+                        System.err.println("Warning: " + directory + " is no longer watchable, listing will rescan");
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        } finally {
+            watching = false;
+            closeWatchService();
+        }
+    }
+
+    private void closeWatchService() {
+        WatchService service = watchService;
+        watchService = null;
+        watchedDirectories.clear();
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void loadSnapshot() {
+        if (snapshotFile == null || !snapshotFile.isFile()) {
+            return;
+        }
+        try {
+            Snapshot snapshot = mapper.readValue(snapshotFile, Snapshot.class);
+            if (!root.toString().equals(snapshot.directory())) {
+                return;
+            }
+            for (Entry entry : snapshot.entries()) {
+                // Content hashes are only trusted when this run would have computed them too
+                if (hashContent == (entry.sha256() != null)) {
+                    entries.put(entry.name(), entry);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Discarding unreadable index snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void saveSnapshotIfDirty() {
+        if (snapshotFile == null || !snapshotDirty) {
+            return;
+        }
+        snapshotDirty = false;
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            mapper.writeValue(tmp, new Snapshot(root.toString(), new ArrayList<>(entries.values())));
+            if (!tmp.renameTo(snapshotFile)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write index snapshot " + snapshotFile + ": " + e.getMessage());
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.PdfExtractorApplication;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+
+/**
+ * Pool of warm child JVMs that run the parses, so that parser garbage, crashes and out-of-memory
+ * errors stay out of the server process. Requests and responses are exchanged as one JSON object
+ * per line over each worker's stdin/stdout (see {@link ParserWorker}); worker logs go to the
+ * server's stderr. A worker is replaced after workers.max.parses parses, when it dies, and when
+ * the caller gives up on it (for example on a parse timeout).
+ */
+public class ForkedParserPool {
+
+    private static final ForkedParserPool SHARED = fromConfig();
+    // Never produced by a worker: responses are JSON, which escapes control characters
+    private static final String EXITED = "\u0000exited";
+
+    private final int size;
+    private final int maxParses;
+    private final String heap;
+    private final BlockingQueue<Worker> idle;
+    private final List<Worker> workers = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong crashed = new AtomicLong();
+
+    public ForkedParserPool(int size, int maxParses, String heap) {
+        this.size = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+        this.maxParses = maxParses;
+        this.heap = heap;
+        this.idle = new ArrayBlockingQueue<>(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            Worker worker = new Worker(i);
+            worker.startQuietly();
+            workers.add(worker);
+            idle.add(worker);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "parser-workers-shutdown"));
+    }
+
+    private static ForkedParserPool fromConfig() {
+        if (!ConfigLoader.getBooleanProperty("workers.enabled", false)) {
+            return null;
+        }
+        ForkedParserPool pool = new ForkedParserPool(
+                ConfigLoader.getIntProperty("workers.count", 0),
+                ConfigLoader.getIntProperty("workers.max.parses", 200),
+                ConfigLoader.getProperty("workers.heap", "512m"));
+        System.err.println("Parses run in " + pool.size + " forked worker JVMs");
+        return pool;
+    }
+
+    /**
+     * The pool configured by workers.enabled, or null when parses run in-process
+     */
+    public static ForkedParserPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Run one request on the next free worker and return its result.
+     * Errors raised by the parse are rethrown with the same type where the caller cares about it
+     * (admission rejections and invalid arguments); anything else becomes an IOException.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> execute(Map<String, Object> request) throws IOException {
+        Worker worker;
+        try {
+            worker = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a parser worker");
+        }
+
+        String response;
+        boolean healthy = false;
+        try {
+            response = worker.call(mapper.writeValueAsString(request));
+            healthy = true;
+        } finally {
+            release(worker, healthy);
+        }
+
+        Map<String, Object> message = mapper.readValue(response, Map.class);
+        if (Boolean.TRUE.equals(message.get("ok"))) {
+            return (Map<String, Object>) message.get("result");
+        }
+        String error = (String) message.get("message");
+        if (message.get("reason") instanceof String reason) {
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.valueOf(reason), error);
+        }
+        if ("IllegalArgumentException".equals(message.get("type"))) {
+            throw new IllegalArgumentException(error);
+        }
+        throw new IOException(error);
+    }
+
+    private void release(Worker worker, boolean healthy) {
+        if (!healthy) {
+            crashed.incrementAndGet();
+            worker.stop();
+            worker.startQuietly();
+        } else if (maxParses > 0 && worker.parses >= maxParses) {
+            recycled.incrementAndGet();
+            worker.stop();
+            worker.startQuietly();
+        }
+        idle.add(worker);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("workers", size);
+        stats.put("idle", idle.size());
+        stats.put("started", started.get());
+        stats.put("recycled", recycled.get());
+        stats.put("crashed", crashed.get());
+        return stats;
+    }
+
+    public void close() {
+        workers.forEach(Worker::stop);
+    }
+
+    /**
+     * Command that starts a worker JVM: the server's own main class and classpath (or executable jar)
+     * with the worker argument
+     */
+    private List<String> workerCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + heap);
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        // Workers start from the server's class data sharing archive too, when it was started with one
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile=")) {
+                command.add(argument);
+            }
+        }
+
+        String classPath = System.getProperty("java.class.path");
+        if (isExecutableJar(classPath)) {
+            command.add("-jar");
+            command.add(classPath);
+        } else {
+            command.add("-cp");
+            command.add(classPath);
+            command.add(PdfExtractorApplication.class.getName());
+        }
+        command.add(ParserWorker.ARGUMENT);
+        return command;
+    }
+
+    private static boolean isExecutableJar(String classPath) {
+        if (classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(classPath)) {
+            return jar.getManifest() != null && jar.getManifest().getMainAttributes().getValue("Main-Class") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * One worker slot; the process behind it is replaced on recycling or failure
+     */
+    private class Worker {
+        private final int id;
+        private Process process;
+        private BufferedWriter requests;
+        private BlockingQueue<String> responses;
+        private int parses;
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        void start() throws IOException {
+            process = new ProcessBuilder(workerCommand())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            responses = new LinkedBlockingQueue<>();
+            parses = 0;
+            started.incrementAndGet();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            BlockingQueue<String> queue = responses;
+            Thread.ofPlatform().name("parser-worker-" + id + "-reader").daemon(true).start(() -> {
+                try (reader) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        queue.add(line);
+                    }
+                } catch (IOException e) {
+                    // The process is gone; the pending call learns it from the marker below
+                }
+                queue.add(EXITED);
+            });
+        }
+
+        void startQuietly() {
+            try {
+                start();
+            } catch (IOException e) {
+                // Retried by the next call that gets this slot
+                System.err.println("Could not start parser worker " + id + ": " + e.getMessage());
+                process = null;
+            }
+        }
+
+        String call(String request) throws IOException {
+            if (process == null || !process.isAlive()) {
+                stop();
+                start();
+            }
+            parses++;
+            requests.write(request);
+            requests.newLine();
+            requests.flush();
+
+            String response;
+            try {
+                response = responses.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for parser worker " + id);
+            }
+            if (EXITED.equals(response)) {
+                throw new IOException("Parser worker " + id + " exited with code " + exitCode()
+                        + " (out of memory or crashed) while parsing");
+            }
+            return response;
+        }
+
+        private String exitCode() {
+            try {
+                return Integer.toString(process.waitFor());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "unknown";
+            }
+        }
+
+        void stop() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+}
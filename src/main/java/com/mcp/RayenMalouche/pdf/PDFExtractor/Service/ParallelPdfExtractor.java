@@ -0,0 +1,302 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Extracts the pages of one PDF on several cores. The page range is split into ranges of a few pages,
+ * each extracted as its own task on a dedicated, bounded pool; PDFBox documents are not thread-safe, so
+ * every task borrows a PDDocument loaded for the extraction (at most one per concurrent task) and records
+ * what PdfPageExtractor emits for its range. The recordings are replayed into the caller's handler in
+ * page order, so the output is the same {@code <div class="page">} markup a serial page extraction
+ * produces. At most two ranges per pool thread wait to be replayed; further ranges are only scheduled as
+ * the caller consumes them, so a slow consumer holds back its own extraction without parking pool
+ * threads, and concurrent extractions share the pool range by range.
+ */
+public class ParallelPdfExtractor {
+
+    private static final ParallelPdfExtractor SHARED = new ParallelPdfExtractor(
+            ConfigLoader.getBooleanProperty("pdf.parallel.enabled", false)
+                    ? ConfigLoader.getIntProperty("pdf.parallel.threads", 0) : 1,
+            ConfigLoader.getIntProperty("pdf.parallel.min.pages", 64),
+            ConfigLoader.getIntProperty("pdf.parallel.pages.per.range", 16),
+            ConfigLoader.getLongProperty("pdf.parallel.min.bytes", 512 * 1024));
+
+    private final int parallelism;
+    private final ExecutorService pool;
+    private final int minPages;
+    private final int pagesPerRange;
+    private final long minBytes;
+
+    public ParallelPdfExtractor(int parallelism, int minPages, int pagesPerRange) {
+        this(parallelism, minPages, pagesPerRange, 0);
+    }
+
+    /**
+     * @param parallelism  threads extracting pages (0 = one per core, 1 = never split)
+     * @param minPages     smallest page count worth splitting
+     * @param pagesPerRange pages in one range
+     * @param minBytes     smallest file worth loading to count its pages; smaller PDFs are parsed normally
+     */
+    public ParallelPdfExtractor(int parallelism, int minPages, int pagesPerRange, long minBytes) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = Executors.newFixedThreadPool(this.parallelism,
+                Thread.ofPlatform().name("pdf-pages-", 0).daemon(true).factory());
+        this.minPages = Math.max(1, minPages);
+        this.pagesPerRange = Math.max(1, pagesPerRange);
+        this.minBytes = Math.max(0, minBytes);
+    }
+
+    public static ParallelPdfExtractor getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Whether extraction can be split at all; false on a single core or when pdf.parallel.enabled is off
+     */
+    public boolean isEnabled() {
+        return parallelism > 1;
+    }
+
+    /**
+     * Whether a file of this size may be split. Counting pages means loading the document, which a normal
+     * parse then does again, so small files are not even counted.
+     */
+    public boolean mayBeSplit(long bytes) {
+        return isEnabled() && bytes >= minBytes;
+    }
+
+    /**
+     * Whether a range of this many pages is extracted in parallel
+     */
+    public boolean shouldSplit(int pages) {
+        return isEnabled() && pages >= minPages;
+    }
+
+    /**
+     * Emit a complete XHTML document for pages startPage..endPage (1-based, inclusive) of file
+     */
+    public void extract(File file, int startPage, int endPage, ContentHandler handler, Metadata metadata)
+            throws IOException, SAXException {
+        XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+        xhtml.startDocument();
+
+        Job job = new Job(file, startPage, endPage);
+        job.schedule();
+        try {
+            for (CompletableFuture<Recording> range : job.ranges) {
+                await(range).replay(xhtml);
+                job.replayed();
+            }
+        } finally {
+            job.cancel();
+        }
+
+        xhtml.endDocument();
+    }
+
+    /**
+     * One extraction: its page ranges in order, and the documents its tasks share
+     */
+    private class Job {
+        private final File file;
+        private final int startPage;
+        private final int endPage;
+        private final List<CompletableFuture<Recording>> ranges = new ArrayList<>();
+        private final int maxRunning;
+        // Ranges extracted but not yet replayed: two per pool thread
+        private final int window = parallelism * 2;
+        private final Deque<PDDocument> documents = new ConcurrentLinkedDeque<>();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        // Guarded by this
+        private int scheduled;
+        private int running;
+        private int replayed;
+
+        Job(File file, int startPage, int endPage) {
+            this.file = file;
+            this.startPage = startPage;
+            this.endPage = endPage;
+            for (int page = startPage; page <= endPage; page += pagesPerRange) {
+                ranges.add(new CompletableFuture<>());
+            }
+            this.maxRunning = Math.min(parallelism, ranges.size());
+        }
+
+        /**
+         * Submit the next ranges, as long as fewer than maxRunning are being extracted and the window of
+         * ranges waiting to be replayed has room
+         */
+        synchronized void schedule() {
+            while (!cancelled.get() && scheduled < ranges.size() && running < maxRunning
+                    && scheduled - replayed < window) {
+                int index = scheduled++;
+                running++;
+                pool.execute(() -> extractRange(index));
+            }
+        }
+
+        synchronized void replayed() {
+            replayed++;
+            schedule();
+        }
+
+        /**
+         * Extract one range with a document no other task is using, loading one if none is free. A task
+         * that cannot load the document fails its range, so the error reaches the caller in page order.
+         */
+        private void extractRange(int index) {
+            PDDocument document = documents.poll();
+            try {
+                if (cancelled.get()) {
+                    ranges.get(index).cancel(false);
+                    return;
+                }
+                if (document == null) {
+                    document = PdfPageExtractor.load(file);
+                }
+                int from = startPage + index * pagesPerRange;
+                int to = Math.min(endPage, from + pagesPerRange - 1);
+                Recording recording = new Recording(cancelled);
+                PdfPageExtractor.extractPages(document, from, to, recording);
+                ranges.get(index).complete(recording);
+            } catch (Exception e) {
+                ranges.get(index).completeExceptionally(e);
+            } finally {
+                if (document != null) {
+                    documents.push(document);
+                }
+                synchronized (this) {
+                    running--;
+                    schedule();
+                }
+                if (cancelled.get()) {
+                    closeDocuments();
+                }
+            }
+        }
+
+        /**
+         * Stop the extraction: running ranges fail on their next event and no more are scheduled
+         */
+        void cancel() {
+            cancelled.set(true);
+            closeDocuments();
+        }
+
+        // Tasks still running return their document after this; they close it on their way out
+        private void closeDocuments() {
+            PDDocument document;
+            while ((document = documents.poll()) != null) {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static Recording await(Future<Recording> task) throws IOException, SAXException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            // The parse timeout interrupts the thread that holds the permit, which is this one
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting pages");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof SAXException saxException) {
+                throw saxException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Page extraction failed", cause);
+        }
+    }
+
+    /**
+     * Records the XHTML events of a page range instead of writing them. Every convenience method of
+     * XHTMLContentHandler funnels into these four, so the recording holds exactly what the page
+     * extractor asked for; the indentation and line breaks are added again when it is replayed.
+     */
+    private static class Recording extends XHTMLContentHandler {
+        private final AtomicBoolean cancelled;
+        private final List<Event> events = new ArrayList<>();
+
+        @FunctionalInterface
+        private interface Event {
+            void replay(ContentHandler handler) throws SAXException;
+        }
+
+        Recording(AtomicBoolean cancelled) {
+            super(new DefaultHandler(), new Metadata());
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void startElement(String uri, String local, String name, Attributes attributes) throws SAXException {
+            checkCancelled();
+            Attributes copy = new AttributesImpl(attributes);
+            events.add(handler -> handler.startElement(uri, local, name, copy));
+        }
+
+        @Override
+        public void endElement(String uri, String local, String name) {
+            events.add(handler -> handler.endElement(uri, local, name));
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            checkCancelled();
+            char[] copy = Arrays.copyOfRange(ch, start, start + length);
+            events.add(handler -> handler.characters(copy, 0, copy.length));
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            char[] copy = Arrays.copyOfRange(ch, start, start + length);
+            events.add(handler -> handler.ignorableWhitespace(copy, 0, copy.length));
+        }
+
+        // Another range failed or the caller gave up: stop instead of extracting pages nobody reads
+        private void checkCancelled() throws SAXException {
+            if (cancelled.get()) {
+                throw new SAXException("Page extraction cancelled");
+            }
+        }
+
+        void replay(ContentHandler handler) throws SAXException {
+            for (Event event : events) {
+                event.replay(handler);
+            }
+        }
+    }
+}
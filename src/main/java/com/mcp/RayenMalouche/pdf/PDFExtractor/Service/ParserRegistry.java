@@ -0,0 +1,231 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.EmptyParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.sax.SecureContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the parser for each document. PDF, DOCX, XLSX, PPTX and RTF files whose extension agrees with
+ * their leading bytes go straight to the parser registered for that type (PDFParser, OOXMLParser,
+ * RTFParser), skipping the detector chain of the AutoDetectParser; everything else, including files whose
+ * name and content disagree, is auto-detected as before. The parsers come from tika.config.file when it is
+ * set, and every parse context switches off the features that are disabled in application.properties.
+ */
+public class ParserRegistry {
+
+    static final MediaType PDF = MediaType.application("pdf");
+    static final MediaType RTF = MediaType.application("rtf");
+    static final MediaType DOCX = MediaType.application("vnd.openxmlformats-officedocument.wordprocessingml.document");
+    static final MediaType XLSX = MediaType.application("vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+    static final MediaType PPTX = MediaType.application("vnd.openxmlformats-officedocument.presentationml.presentation");
+
+    private static final Map<String, MediaType> EXTENSIONS = Map.of(
+            "pdf", PDF, "rtf", RTF, "docx", DOCX, "xlsx", XLSX, "pptx", PPTX);
+    private static final Set<MediaType> ZIP_TYPES = Set.of(DOCX, XLSX, PPTX);
+    private static final byte[] PDF_MAGIC = {'%', 'P', 'D', 'F', '-'};
+    private static final byte[] RTF_MAGIC = {'{', '\\', 'r', 't', 'f'};
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    private final AutoDetectParser fallback;
+    private final Map<MediaType, Parser> directParsers = new HashMap<>();
+    private final boolean routing;
+    private final boolean embedded;
+    private final boolean ocr;
+    private final boolean pdfAnnotations;
+    private final boolean pdfInlineImages;
+
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong autoDetected = new AtomicLong();
+
+    /**
+     * @param fallback        parser for documents that are not routed, and source of the routed parsers
+     * @param routing         route known types by extension and leading bytes
+     * @param embedded        parse embedded documents (attachments, images in Office files) recursively
+     * @param ocr             allow OCR of images and image-only PDF pages when Tesseract is installed
+     * @param pdfAnnotations  extract the text of PDF annotations
+     * @param pdfInlineImages extract images inlined in PDF pages as embedded documents
+     */
+    public ParserRegistry(AutoDetectParser fallback, boolean routing, boolean embedded, boolean ocr,
+                          boolean pdfAnnotations, boolean pdfInlineImages) {
+        this.fallback = fallback;
+        this.routing = routing;
+        this.embedded = embedded;
+        this.ocr = ocr;
+        this.pdfAnnotations = pdfAnnotations;
+        this.pdfInlineImages = pdfInlineImages;
+
+        ParseContext context = new ParseContext();
+        for (MediaType type : EXTENSIONS.values()) {
+            Parser parser = fallback;
+            // Descend through the composite (AutoDetectParser -> DefaultParser) to the parser of the type
+            while (parser instanceof CompositeParser composite) {
+                parser = composite.getParsers(context).get(type);
+            }
+            if (parser != null && !(parser instanceof EmptyParser)) {
+                directParsers.put(type, parser);
+            }
+        }
+    }
+
+    /**
+     * Registry configured from application.properties (tika.config.file, tika.routing.enabled,
+     * tika.embedded.enabled, tika.ocr.enabled, tika.pdf.annotations.enabled, tika.pdf.inline.images.enabled)
+     */
+    public static ParserRegistry fromConfig() {
+        return new ParserRegistry(
+                createParser(ConfigLoader.getProperty("tika.config.file", "")),
+                ConfigLoader.getBooleanProperty("tika.routing.enabled", true),
+                ConfigLoader.getBooleanProperty("tika.embedded.enabled", true),
+                ConfigLoader.getBooleanProperty("tika.ocr.enabled", true),
+                ConfigLoader.getBooleanProperty("tika.pdf.annotations.enabled", true),
+                ConfigLoader.getBooleanProperty("tika.pdf.inline.images.enabled", false));
+    }
+
+    private static AutoDetectParser createParser(String configFile) {
+        if (configFile.isBlank()) {
+            return new AutoDetectParser();
+        }
+        try {
+            return new AutoDetectParser(new TikaConfig(Path.of(configFile)));
+        } catch (TikaException | IOException | SAXException e) {
+            System.err.println("Could not load Tika config " + configFile + ", using the default parsers: " + e.getMessage());
+            return new AutoDetectParser();
+        }
+    }
+
+    /**
+     * A parse context with the configured features applied; callers may override entries before parsing
+     */
+    public ParseContext newContext() {
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, embedded ? fallback : new EmptyParser());
+
+        PDFParserConfig pdfConfig = new PDFParserConfig();
+        pdfConfig.setExtractAnnotationText(pdfAnnotations);
+        pdfConfig.setExtractInlineImages(pdfInlineImages);
+        pdfConfig.setMaxMainMemoryBytes(PdfPageExtractor.MAX_MAIN_MEMORY_BYTES);
+        if (!ocr) {
+            pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
+            TesseractOCRConfig ocrConfig = new TesseractOCRConfig();
+            ocrConfig.setSkipOcr(true);
+            context.set(TesseractOCRConfig.class, ocrConfig);
+        }
+        context.set(PDFParserConfig.class, pdfConfig);
+        return context;
+    }
+
+    /**
+     * Parse a document; name is its file name. The stream must support mark/reset to be routed.
+     */
+    public void parse(String name, InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+            throws IOException, SAXException, TikaException {
+        MediaType type = ExtractionTimings.time("detect", () -> route(name, stream));
+        Parser parser = type != null ? directParsers.get(type) : null;
+        if (parser == null) {
+            autoDetected.incrementAndGet();
+            // The AutoDetectParser runs the detector chain itself, so that time is part of the parse phase
+            fallback.parse(stream, handler, metadata, context);
+            return;
+        }
+
+        routed.incrementAndGet();
+        metadata.set(Metadata.CONTENT_TYPE, type.toString());
+        // Same stream wrapping and zip-bomb guard the AutoDetectParser applies
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            TikaInputStream tis = TikaInputStream.get(stream, tmp, metadata);
+            SecureContentHandler secure = new SecureContentHandler(handler, tis);
+            try {
+                parser.parse(tis, secure, metadata, context);
+            } catch (SAXException e) {
+                secure.throwIfCauseOf(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The media type of a document, from routing when possible and from the detector chain otherwise
+     */
+    public MediaType detect(String name, InputStream stream, Metadata metadata) throws IOException {
+        return ExtractionTimings.time("detect", () -> {
+            MediaType type = route(name, stream);
+            return type != null ? type : fallback.getDetector().detect(stream, metadata);
+        });
+    }
+
+    /**
+     * The routed type of a document, or null when it has to be auto-detected. A known extension must be
+     * confirmed by the leading bytes; without one only the unambiguous PDF and RTF signatures are trusted.
+     */
+    MediaType route(String name, InputStream stream) throws IOException {
+        if (!routing || !stream.markSupported()) {
+            return null;
+        }
+        byte[] header = readHeader(stream);
+        MediaType byContent = startsWith(header, PDF_MAGIC) ? PDF : startsWith(header, RTF_MAGIC) ? RTF : null;
+        int dot = name.lastIndexOf('.');
+        MediaType byExtension = dot >= 0 ? EXTENSIONS.get(name.substring(dot + 1).toLowerCase()) : null;
+        if (byExtension == null) {
+            return byContent;
+        }
+        if (byExtension.equals(byContent) || (ZIP_TYPES.contains(byExtension) && startsWith(header, ZIP_MAGIC))) {
+            return byExtension;
+        }
+        return null;
+    }
+
+    /**
+     * Whether the stream, which must support mark/reset, starts with the PDF signature
+     */
+    static boolean isPdf(InputStream stream) throws IOException {
+        return stream.markSupported() && startsWith(readHeader(stream), PDF_MAGIC);
+    }
+
+    private static byte[] readHeader(InputStream stream) throws IOException {
+        byte[] header = new byte[8];
+        stream.mark(header.length);
+        int length;
+        try {
+            length = stream.readNBytes(header, 0, header.length);
+        } finally {
+            stream.reset();
+        }
+        return Arrays.copyOf(header, length);
+    }
+
+    private static boolean startsWith(byte[] header, byte[] magic) {
+        return header.length >= magic.length && Arrays.equals(header, 0, magic.length, magic, 0, magic.length);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("routingEnabled", routing);
+        stats.put("routedTypes", directParsers.keySet().stream().map(MediaType::toString).sorted().toList());
+        stats.put("routed", routed.get());
+        stats.put("autoDetected", autoDetected.get());
+        return stats;
+    }
+}
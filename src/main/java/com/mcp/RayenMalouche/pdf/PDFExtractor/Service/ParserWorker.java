@@ -0,0 +1,103 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forked parser worker (see {@link ForkedParserPool}), started as the server's main class with
+ * the --parser-worker argument. Reads one JSON request per line from stdin, runs it on an
+ * in-process, uncached TikaExtractorService and writes one JSON response per line to stdout.
+ */
+public class ParserWorker {
+
+    public static final String ARGUMENT = "--parser-worker";
+
+    private ParserWorker() {
+    }
+
+    public static void run() throws IOException {
+        // Anything a library prints must not end up in the protocol stream
+        PrintStream protocol = System.out;
+        System.setOut(System.err);
+
+        ObjectMapper mapper = new ObjectMapper();
+        TikaExtractorService service = new TikaExtractorService(
+                new ExtractionCache(false, 0, null, 0), AdmissionController.getShared());
+        if (ConfigLoader.getBooleanProperty("engine.warmup.enabled", true)) {
+            // Recycled workers are replaced regularly; warm each one before it takes requests
+            System.err.println("Parser worker warmed up in " + service.warmUp() + " ms");
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(protocol, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> request = mapper.readValue(line, Map.class);
+            out.write(mapper.writeValueAsString(handle(service, request)));
+            out.newLine();
+            out.flush();
+        }
+    }
+
+    private static Map<String, Object> handle(TikaExtractorService service, Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            String filename = (String) request.get("filename");
+            Map<String, Object> result = switch ((String) request.get("op")) {
+                case "html" -> service.extractToHtml(filename);
+                case "text" -> service.extractText(filename);
+                case "window" -> service.extractText(filename,
+                        ((Number) request.get("offset")).longValue(), ((Number) request.get("limit")).intValue());
+                case "pages" -> service.extractPages(filename,
+                        ((Number) request.get("startPage")).intValue(), ((Number) request.get("endPage")).intValue(),
+                        Boolean.TRUE.equals(request.get("html")));
+                case "compact" -> service.extractCompactAt(filename, Boolean.TRUE.equals(request.get("html")),
+                        ((Number) request.get("maxChars")).intValue(), (String) request.get("position"));
+                case "compact-blocks" -> service.extractCompactBlocks(filename);
+                case "metadata" -> service.getFileMetadata(filename, Boolean.TRUE.equals(request.get("fullParse")));
+                case "upload" -> extractUpload(service, request);
+                default -> throw new IllegalArgumentException("Unknown worker operation: " + request.get("op"));
+            };
+            response.put("ok", true);
+            response.put("result", result);
+        } catch (Exception e) {
+            response.put("ok", false);
+            response.put("type", e.getClass().getSimpleName());
+            response.put("message", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            if (e instanceof ExtractionRejectedException rejection) {
+                response.put("reason", rejection.getReason().name());
+            }
+        }
+        return response;
+    }
+
+    /**
+     * An uploaded document, sent inline as base64 or as the path of the server's spill file
+     */
+    private static Map<String, Object> extractUpload(TikaExtractorService service, Map<String, Object> request) throws Exception {
+        String name = (String) request.get("filename");
+        boolean html = Boolean.TRUE.equals(request.get("html"));
+        try (UploadedDocument document = request.get("path") != null
+                ? UploadedDocument.ofFile(name, new File((String) request.get("path")))
+                : UploadedDocument.of(name, Base64.getDecoder().decode((String) request.get("content")))) {
+            StringWriter content = new StringWriter();
+            Map<String, Object> result = service.extractUpload(document, html, content);
+            result.put(html ? "html" : "text", content.toString());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.action.PDAction;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Extracts a range of pages from a PDF as Tika-style XHTML events.
+ * Only the content streams of the requested pages are parsed, and the markup follows
+ * Tika's PDF output: one {@code <div class="page">} per page, {@code <p>} per paragraph
+ * and link annotations as {@code <div class="annotation">}.
+ */
+class PdfPageExtractor {
+
+    /**
+     * Bytes of decoded PDF streams PDFBox keeps on the heap per document before it spills them to a
+     * scratch file (-1 = heap only); the same limit is handed to Tika's PDFParser
+     */
+    static final long MAX_MAIN_MEMORY_BYTES = ConfigLoader.getLongProperty("pdf.max.main.memory.bytes", 4 * 1024 * 1024);
+
+    private PdfPageExtractor() {
+    }
+
+    /**
+     * Open a PDF read straight from the file, without copying it onto the heap
+     */
+    static PDDocument load(File file) throws IOException {
+        return PDDocument.load(file, MAX_MAIN_MEMORY_BYTES < 0
+                ? MemoryUsageSetting.setupMainMemoryOnly()
+                : MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES));
+    }
+
+    /**
+     * Emit a complete XHTML document for pages startPage..endPage (1-based, inclusive)
+     */
+    static void extract(PDDocument document, int startPage, int endPage, ContentHandler handler, Metadata metadata)
+            throws IOException, SAXException {
+        XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+        xhtml.startDocument();
+        extractPages(document, startPage, endPage, xhtml);
+        xhtml.endDocument();
+    }
+
+    /**
+     * Emit only the page divs for startPage..endPage into an already started XHTML document
+     */
+    static void extractPages(PDDocument document, int startPage, int endPage, XHTMLContentHandler xhtml)
+            throws IOException, SAXException {
+        PageStripper stripper = new PageStripper(xhtml);
+        stripper.setStartPage(startPage);
+        stripper.setEndPage(endPage);
+        try {
+            stripper.writeText(document, Writer.nullWriter());
+        } catch (IOException e) {
+            if (e.getCause() instanceof SAXException saxException) {
+                throw saxException;
+            }
+            throw e;
+        }
+    }
+
+    private static class PageStripper extends PDFTextStripper {
+        private final XHTMLContentHandler xhtml;
+        private boolean inParagraph;
+
+        PageStripper(XHTMLContentHandler xhtml) throws IOException {
+            this.xhtml = xhtml;
+            setSortByPosition(false);
+            // Off as in Tika's PDFParserConfig: suppressing duplicates costs a map lookup per glyph
+            setSuppressDuplicateOverlappingText(false);
+            setShouldSeparateByBeads(true);
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            try {
+                xhtml.startElement("div", "class", "page");
+            } catch (SAXException e) {
+                throw new IOException("Unable to start a page", e);
+            }
+            writeParagraphStart();
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            try {
+                writeParagraphEnd();
+                for (PDAnnotation annotation : page.getAnnotations()) {
+                    if (annotation instanceof PDAnnotationLink link) {
+                        writeLink(link);
+                    }
+                }
+                xhtml.endElement("div");
+            } catch (SAXException e) {
+                throw new IOException("Unable to end a page", e);
+            }
+        }
+
+        private void writeLink(PDAnnotationLink link) throws SAXException {
+            PDAction action = link.getAction();
+            if (action instanceof PDActionURI uriAction && uriAction.getURI() != null) {
+                String uri = uriAction.getURI();
+                xhtml.startElement("div", "class", "annotation");
+                xhtml.startElement("a", "href", uri);
+                xhtml.characters(uri);
+                xhtml.endElement("a");
+                xhtml.endElement("div");
+            }
+        }
+
+        // Paragraphs never nest: like Tika, a start closes an open paragraph and an end without
+        // one opens an empty one, which produces the empty <p></p> at page boundaries
+        @Override
+        protected void writeParagraphStart() throws IOException {
+            if (inParagraph) {
+                writeParagraphEnd();
+            }
+            inParagraph = true;
+            try {
+                xhtml.startElement("p");
+            } catch (SAXException e) {
+                throw new IOException("Unable to start a paragraph", e);
+            }
+        }
+
+        @Override
+        protected void writeParagraphEnd() throws IOException {
+            if (!inParagraph) {
+                writeParagraphStart();
+            }
+            inParagraph = false;
+            try {
+                xhtml.endElement("p");
+            } catch (SAXException e) {
+                throw new IOException("Unable to end a paragraph", e);
+            }
+        }
+
+        @Override
+        protected void writeString(String text) throws IOException {
+            try {
+                xhtml.characters(text);
+            } catch (SAXException e) {
+                throw new IOException("Unable to write a string: " + text, e);
+            }
+        }
+
+        @Override
+        protected void writeCharacters(TextPosition text) throws IOException {
+            try {
+                xhtml.characters(text.getUnicode());
+            } catch (SAXException e) {
+                throw new IOException("Unable to write a character: " + text.getUnicode(), e);
+            }
+        }
+
+        @Override
+        protected void writeWordSeparator() throws IOException {
+            try {
+                xhtml.characters(getWordSeparator());
+            } catch (SAXException e) {
+                throw new IOException("Unable to write a word separator", e);
+            }
+        }
+
+        @Override
+        protected void writeLineSeparator() throws IOException {
+            try {
+                xhtml.newline();
+            } catch (SAXException e) {
+                throw new IOException("Unable to write a newline", e);
+            }
+        }
+    }
+}
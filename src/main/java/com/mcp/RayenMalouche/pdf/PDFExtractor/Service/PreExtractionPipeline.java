@@ -0,0 +1,275 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background ingestion of the files directory: every file that appears or changes is extracted to text,
+ * HTML and metadata ahead of the first request, so the results are already in the extraction cache when a
+ * client asks for them. New and changed files come from the file index; the queue of files to extract is
+ * bounded, and when it is full further notifications are dropped and the queue is refilled from the file
+ * index once it drains, so a burst of thousands of files costs neither memory nor a backlog of
+ * duplicates. Extraction runs on a few minimum-priority threads, goes through admission control like any
+ * request, and steps aside while interactive requests are waiting for a slot.
+ */
+public class PreExtractionPipeline {
+
+    private final TikaExtractorService extractorService;
+    private final FileIndex files;
+    private final AdmissionController admission;
+    private final List<String> modes;
+    private final int workers;
+    private final int maxQueued;
+    private final long backoffMs;
+    private final long rescanIntervalMs;
+
+    // Guarded by queue; a set, so a file that changes again while queued is extracted once
+    private final LinkedHashSet<String> queue = new LinkedHashSet<>();
+    private boolean overflowed;
+    // Size and mtime of the version of each file last extracted, or that failed to extract
+    private final Map<String, long[]> done = new ConcurrentHashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong extracted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rescans = new AtomicLong();
+
+    /**
+     * @param modes            what to extract per file: any of text, html and metadata
+     * @param workers          extraction threads
+     * @param maxQueued        files waiting to be extracted before notifications are dropped
+     * @param backoffMs        pause while interactive requests are queued for admission, or after an overloaded rejection
+     * @param rescanIntervalMs how long an idle worker waits before comparing the whole file index against what was
+     *                         extracted, which catches changes an unwatched directory only shows on a rescan
+     */
+    public PreExtractionPipeline(TikaExtractorService extractorService, FileIndex files, AdmissionController admission,
+                                 List<String> modes, int workers, int maxQueued, long backoffMs, long rescanIntervalMs) {
+        for (String mode : modes) {
+            if (!List.of("text", "html", "metadata").contains(mode)) {
+                throw new IllegalArgumentException("Unknown pre-extraction mode: " + mode);
+            }
+        }
+        this.extractorService = extractorService;
+        this.files = files;
+        this.admission = admission;
+        this.modes = List.copyOf(modes);
+        this.workers = Math.max(1, workers);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.backoffMs = Math.max(1, backoffMs);
+        this.rescanIntervalMs = Math.max(1, rescanIntervalMs);
+    }
+
+    /**
+     * The pipeline over the files directory, started on first use
+     */
+    public static PreExtractionPipeline getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final PreExtractionPipeline SHARED = createShared();
+    }
+
+    private static PreExtractionPipeline createShared() {
+        PreExtractionPipeline pipeline = new PreExtractionPipeline(
+                TikaExtractorService.getShared(),
+                FileIndex.getShared(),
+                AdmissionController.getShared(),
+                Arrays.stream(ConfigLoader.getProperty("preextract.modes", "text,html,metadata").split(","))
+                        .map(String::trim)
+                        .filter(mode -> !mode.isEmpty())
+                        .toList(),
+                ConfigLoader.getIntProperty("preextract.workers", 1),
+                ConfigLoader.getIntProperty("preextract.max.queued", 1000),
+                ConfigLoader.getLongProperty("preextract.backoff.ms", 500),
+                ConfigLoader.getLongProperty("preextract.rescan.interval.ms", 60_000));
+        pipeline.start();
+        return pipeline;
+    }
+
+    /**
+     * Whether pre-extraction is configured; it needs the extraction cache to keep its results
+     */
+    public static boolean isEnabled() {
+        return ConfigLoader.getBooleanProperty("preextract.enabled", false)
+                && ConfigLoader.getBooleanProperty("cache.enabled", true);
+    }
+
+    /**
+     * Follow the file index and start the workers. Files already in the directory are extracted too
+     * (cache hits, when a disk cache kept them from an earlier run).
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        files.addListener(this::offer);
+        synchronized (queue) {
+            // The first worker to find the queue empty fills it from the index
+            overflowed = true;
+        }
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::workLoop, "pre-extract-" + i);
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            threads.add(worker);
+            worker.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    /**
+     * Queue a new or changed file; never blocks, since it runs on the file index's scan and watch threads
+     */
+    private void offer(FileIndex.Entry entry) {
+        if (!running || isDone(entry)) {
+            return;
+        }
+        synchronized (queue) {
+            if (queue.contains(entry.name())) {
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                overflowed = true;
+                dropped.incrementAndGet();
+                return;
+            }
+            queue.add(entry.name());
+            queue.notify();
+        }
+    }
+
+    private boolean isDone(FileIndex.Entry entry) {
+        long[] version = done.get(entry.name());
+        return version != null && version[0] == entry.size() && version[1] == entry.lastModified();
+    }
+
+    private void workLoop() {
+        try {
+            while (running) {
+                String name = take();
+                FileIndex.Entry entry = files.get(name);
+                if (entry == null || !entry.canRead() || isDone(entry)) {
+                    continue;
+                }
+                if (!extract(entry)) {
+                    // Overloaded: put it back and let the requests that are waiting go first
+                    synchronized (queue) {
+                        queue.add(name);
+                    }
+                    Thread.sleep(backoffMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * The next file to extract. The queue is refilled from the file index after notifications were dropped,
+     * and after rescanIntervalMs without work.
+     */
+    private String take() throws InterruptedException {
+        while (true) {
+            synchronized (queue) {
+                if (queue.isEmpty() && !overflowed) {
+                    queue.wait(rescanIntervalMs);
+                }
+                if (!queue.isEmpty()) {
+                    Iterator<String> next = queue.iterator();
+                    String name = next.next();
+                    next.remove();
+                    return name;
+                }
+                overflowed = false;
+            }
+            rescan();
+        }
+    }
+
+    private void rescan() throws InterruptedException {
+        rescans.incrementAndGet();
+        files.awaitComplete();
+        List<FileIndex.Entry> entries = files.query(null, null, null, false);
+        Set<String> present = new HashSet<>();
+        for (FileIndex.Entry entry : entries) {
+            present.add(entry.name());
+            offer(entry);
+        }
+        done.keySet().retainAll(present);
+    }
+
+    /**
+     * Extract one file in every mode; false when admission control turned it away for now
+     */
+    private boolean extract(FileIndex.Entry entry) throws InterruptedException {
+        String name = entry.name();
+        try {
+            for (String mode : modes) {
+                // Interactive requests are waiting for a parse slot: do not compete with them
+                while (admission.getQueued() > 0) {
+                    deferred.incrementAndGet();
+                    Thread.sleep(backoffMs);
+                }
+                switch (mode) {
+                    case "text" -> extractorService.extractText(name);
+                    case "html" -> extractorService.extractToHtml(name);
+                    case "metadata" -> extractorService.getFileMetadata(name);
+                    default -> throw new IllegalStateException(mode);
+                }
+            }
+            extracted.incrementAndGet();
+        } catch (ExtractionRejectedException e) {
+            if (e.getReason() == ExtractionRejectedException.Reason.OVERLOADED) {
+                deferred.incrementAndGet();
+                return false;
+            }
+            if (e.getReason() == ExtractionRejectedException.Reason.CANCELLED) {
+                throw new InterruptedException();
+            }
+            failed.incrementAndGet();
+            System.err.println("Pre-extraction of " + name + " rejected: " + e.getMessage());
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("Pre-extraction of " + name + " failed: " + e.getMessage());
+        }
+        // A failed file is not retried until it changes
+        done.put(name, new long[]{entry.size(), entry.lastModified()});
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (queue) {
+            stats.put("queued", queue.size());
+        }
+        stats.put("modes", modes);
+        stats.put("workers", workers);
+        stats.put("extracted", extracted.get());
+        stats.put("failed", failed.get());
+        stats.put("deferred", deferred.get());
+        stats.put("dropped", dropped.get());
+        stats.put("rescans", rescans.get());
+        return stats;
+    }
+}
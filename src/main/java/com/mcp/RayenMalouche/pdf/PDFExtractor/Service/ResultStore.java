@@ -0,0 +1,513 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent store of rendered extraction output (raw HTML or text, or a whole JSON response body), kept
+ * gzip-compressed in append-only segment files so that a repeated request is answered by copying bytes
+ * instead of parsing, escaping and compressing the document again. Each record is one complete gzip member,
+ * so it can be sent as-is to a client that accepts gzip (Content-Encoding passthrough, straight from the
+ * file channel) and is only inflated for clients that do not.
+ * Records are keyed like the extraction cache (content hash, size and mode). The index of record
+ * locations lives in memory and is rebuilt from the record headers of the segments on startup; a record
+ * cut short by a crash ends its segment. When the segments outgrow store.max.bytes the oldest segment is
+ * dropped as a whole.
+ */
+public class ResultStore {
+
+    private static final int MAGIC = 0x52535431;
+    // magic, key length, uncompressed length, compressed length
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final long segmentMaxBytes;
+    private final long maxBytes;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    // Guarded by this
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong evictedSegments = new AtomicLong();
+
+    private record Entry(Segment segment, long position, int length, long rawLength) {
+    }
+
+    public ResultStore(File directory, long segmentMaxBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create result store directory " + directory);
+        }
+        load();
+    }
+
+    /**
+     * The store shared by the REST endpoints, or null when store.enabled is false or the directory is unusable
+     */
+    public static ResultStore getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final ResultStore SHARED = fromConfig();
+    }
+
+    private static ResultStore fromConfig() {
+        if (!ConfigLoader.getBooleanProperty("store.enabled", false)) {
+            return null;
+        }
+        try {
+            return new ResultStore(
+                    new File(ConfigLoader.getProperty("store.directory", "extraction-store")),
+                    ConfigLoader.getLongProperty("store.segment.max.bytes", 64L * 1024 * 1024),
+                    ConfigLoader.getLongProperty("store.max.bytes", 1024L * 1024 * 1024));
+        } catch (IOException e) {
+            System.err.println("Warning: Result store disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Open a stored record for reading, or null when there is none. Close it once sent: a segment
+     * dropped meanwhile is only closed and deleted when its last reader is done.
+     */
+    public Stored open(String key) {
+        Entry entry = index.get(key);
+        if (entry == null || !entry.segment().acquire()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Stored(entry);
+    }
+
+    /**
+     * Start recording output to store under key once committed; nothing is stored if the recording is
+     * closed without a commit (the extraction failed part-way)
+     */
+    public Recording record(String key) {
+        return new Recording(key);
+    }
+
+    /**
+     * One stored record, readable compressed or inflated
+     */
+    public static final class Stored implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed;
+
+        private Stored(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Size of the gzip member, the Content-Length when it is sent compressed
+         */
+        public long getCompressedLength() {
+            return entry.length();
+        }
+
+        public long getLength() {
+            return entry.rawLength();
+        }
+
+        /**
+         * Copy the gzip member to the target with FileChannel.transferTo, which the kernel can do without
+         * passing the bytes through the heap when the target is a socket or a file
+         */
+        public void transferCompressed(WritableByteChannel target) throws IOException {
+            FileChannel channel = entry.segment().channel;
+            long position = entry.position();
+            long end = position + entry.length();
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0 && channel.size() < end) {
+                    throw new IOException("Truncated record in " + entry.segment().file.getName());
+                }
+                position += sent;
+            }
+        }
+
+        public void transferCompressed(OutputStream out) throws IOException {
+            transferCompressed(Channels.newChannel(out));
+        }
+
+        /**
+         * The record inflated, for clients that do not accept gzip
+         */
+        public InputStream openInflated() throws IOException {
+            InputStream compressed = Channels.newInputStream(new RecordChannel(entry));
+            return new GZIPInputStream(compressed, 64 * 1024);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                entry.segment().release();
+            }
+        }
+    }
+
+    /**
+     * Output being recorded for the store: written through writer() (alone, or tee'd alongside the response
+     * with tee()), compressed as it arrives and appended to the active segment on commit
+     */
+    public final class Recording implements AutoCloseable {
+        private final String key;
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(8 * 1024);
+        private final GZIPOutputStream gzip;
+        private final CountingOutputStream raw;
+        private final Writer writer;
+        private boolean overflowed;
+        private boolean done;
+
+        private Recording(String key) {
+            this.key = key;
+            try {
+                this.gzip = new GZIPOutputStream(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        // A record never spans segments; a larger one is simply not stored
+                        if (compressed.size() + len > segmentMaxBytes - HEADER_BYTES - key.length() * 3L) {
+                            overflowed = true;
+                        }
+                        if (!overflowed) {
+                            compressed.write(b, off, len);
+                        }
+                    }
+                }, 8 * 1024);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.raw = new CountingOutputStream(gzip);
+            this.writer = new OutputStreamWriter(raw, StandardCharsets.UTF_8);
+        }
+
+        public Writer writer() {
+            return writer;
+        }
+
+        /**
+         * A writer sending everything to out and to this recording
+         */
+        public Writer tee(Writer out) {
+            return new FilterWriter(out) {
+                @Override
+                public void write(int c) throws IOException {
+                    super.write(c);
+                    writer.write(c);
+                }
+
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    super.write(cbuf, off, len);
+                    writer.write(cbuf, off, len);
+                }
+
+                @Override
+                public void write(String str, int off, int len) throws IOException {
+                    super.write(str, off, len);
+                    writer.write(str, off, len);
+                }
+            };
+        }
+
+        /**
+         * Store what was written. Returns false when the output was too large for a segment.
+         */
+        public boolean commit() throws IOException {
+            done = true;
+            writer.close();
+            if (overflowed) {
+                return false;
+            }
+            append(key, compressed.toByteArray(), raw.bytes);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    // In-memory
+                }
+            }
+        }
+    }
+
+    private synchronized void append(String key, byte[] payload, long rawLength) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = HEADER_BYTES + keyBytes.length + payload.length;
+        if (active == null || active.size + recordLength > segmentMaxBytes) {
+            roll();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(MAGIC).putInt(keyBytes.length).putLong(rawLength).putInt(payload.length);
+        record.put(keyBytes).put(payload).flip();
+        long position = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, position + record.position());
+        }
+        active.size += recordLength;
+        totalBytes += recordLength;
+        index.put(key, new Entry(active, position + HEADER_BYTES + keyBytes.length, payload.length, rawLength));
+        writes.incrementAndGet();
+        uncompressedBytes.addAndGet(rawLength);
+
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            evictOldest();
+        }
+    }
+
+    private void roll() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        File file = new File(directory, SEGMENT_PREFIX + String.format("%08d", id) + SEGMENT_SUFFIX);
+        active = new Segment(file, FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.put(id, active);
+    }
+
+    private void evictOldest() {
+        Map.Entry<Integer, Segment> oldest = segments.pollFirstEntry();
+        Segment segment = oldest.getValue();
+        index.values().removeIf(entry -> entry.segment() == segment);
+        totalBytes -= segment.size;
+        evictedSegments.incrementAndGet();
+        segment.release();
+    }
+
+    /**
+     * Rebuild the index from the record headers of every segment
+     */
+    private synchronized void load() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            int id;
+            try {
+                id = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Segment segment = new Segment(file, FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+            segments.put(id, segment);
+            scan(segment);
+            totalBytes += segment.size;
+            active = segment;
+        }
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            evictOldest();
+        }
+    }
+
+    private void scan(Segment segment) throws IOException {
+        FileChannel channel = segment.channel;
+        long length = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= length) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            int keyLength = header.getInt();
+            long rawLength = header.getLong();
+            int payloadLength = header.getInt();
+            long end = position + HEADER_BYTES + keyLength + (long) payloadLength;
+            if (magic != MAGIC || keyLength <= 0 || payloadLength <= 0 || rawLength < 0 || end > length) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(channel, key, position + HEADER_BYTES);
+            index.put(new String(key.array(), StandardCharsets.UTF_8),
+                    new Entry(segment, position + HEADER_BYTES + keyLength, payloadLength, rawLength));
+            position = end;
+        }
+        if (position < length) {
+            System.err.println("Truncating " + segment.file.getName() + " after an incomplete record at " + position);
+            channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", index.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("writes", writes.get());
+        stats.put("uncompressedBytesWritten", uncompressedBytes.get());
+        stats.put("evictedSegments", evictedSegments.get());
+        synchronized (this) {
+            stats.put("segments", segments.size());
+            stats.put("diskBytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    /**
+     * A segment file; reference counted so that readers can finish while it is being dropped
+     */
+    private static final class Segment {
+        private final File file;
+        private final FileChannel channel;
+        // Written under the store's lock
+        private long size;
+        // The store's own reference plus one per open Stored
+        private int references = 1;
+
+        Segment(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        synchronized boolean acquire() {
+            if (references == 0) {
+                return false;
+            }
+            references++;
+            return true;
+        }
+
+        synchronized void release() {
+            if (--references == 0) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Deleted next
+                }
+                if (!file.delete()) {
+                    System.err.println("Could not delete result store segment " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one record through positional reads, so readers never move a shared channel position
+     */
+    private static final class RecordChannel implements java.nio.channels.ReadableByteChannel {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RecordChannel(Entry entry) {
+            this.channel = entry.segment().channel;
+            this.position = entry.position();
+            this.end = entry.position() + entry.length();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (dst.remaining() > end - position) {
+                dst.limit(dst.position() + (int) (end - position));
+            }
+            try {
+                int read = channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // The segment channel is shared
+        }
+    }
+
+    /**
+     * Stream that counts the bytes written through it: the encoded, uncompressed length of a record
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long bytes;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the plain text of the files directory, so a question can be answered by
+ * a lookup instead of parsing every document again. Text is split into lowercase letter/digit tokens;
+ * each term maps to the documents containing it and the character offsets of its occurrences. Hits are
+ * ranked with BM25 and come with snippets around the densest clusters of query terms, each with its
+ * character offset and, for documents whose parser marks pages (PDFs), its page number.
+ * The shared index is filled by a background indexer that follows the file index: new and changed files
+ * are extracted (through admission control, one at a time, stepping aside while interactive requests wait
+ * for a slot) and deleted ones dropped, every search.sync.interval.ms. Document texts are kept in memory to
+ * build snippets, so the index holds at most search.max.documents documents and search.max.chars characters
+ * of text; files beyond that are left out until others are deleted.
+ */
+public class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int SNIPPET_RADIUS = 80;
+    // Occurrences considered per hit when picking snippets, so a very common term stays cheap
+    private static final int MAX_SNIPPET_CANDIDATES = 2_000;
+
+    private record Document(int id, String name, long size, long lastModified, String text, int[] pageOffsets,
+                            String[] terms, int length) {
+    }
+
+    private final TikaExtractorService extractorService;
+    private final FileIndex files;
+    private final AdmissionController admission;
+    private final int maxDocuments;
+    private final long maxChars;
+    private final long backoffMs;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Document> byName = new HashMap<>();
+    private final Map<String, Map<Integer, int[]>> postings = new HashMap<>();
+    private final Map<Integer, Document> byId = new HashMap<>();
+    private long totalLength;
+    private long totalChars;
+    private int nextId;
+
+    // Files that could not be extracted, by name, with the size and mtime that failed; retried once they change
+    private final Map<String, long[]> failed = new ConcurrentHashMap<>();
+    // Files whose text did not fit in the room left, likewise; retried once they change or documents are removed
+    private final Map<String, long[]> tooLarge = new ConcurrentHashMap<>();
+    private volatile int pending = -1;
+    private volatile boolean limited;
+    private volatile long lastSyncMs;
+    private final AtomicLong deferred = new AtomicLong();
+
+    public SearchIndex(TikaExtractorService extractorService, FileIndex files) {
+        this(extractorService, files, null, Integer.MAX_VALUE, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param extractorService extracts the text of new and changed files, or null for an index filled by add
+     * @param files            the file index the indexer follows, or null
+     * @param admission        admission control whose queued requests the indexer waits for, or null
+     * @param maxDocuments     documents the index holds at most
+     * @param maxChars         characters of document text the index holds at most
+     * @param backoffMs        pause while interactive requests are queued for admission
+     */
+    public SearchIndex(TikaExtractorService extractorService, FileIndex files, AdmissionController admission,
+                       int maxDocuments, long maxChars, long backoffMs) {
+        this.extractorService = extractorService;
+        this.files = files;
+        this.admission = admission;
+        this.maxDocuments = Math.max(1, maxDocuments);
+        this.maxChars = Math.max(1, maxChars);
+        this.backoffMs = Math.max(1, backoffMs);
+    }
+
+    /**
+     * The index of the files directory, kept current by a background indexer; created on first use
+     */
+    public static SearchIndex getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final SearchIndex SHARED = createShared();
+    }
+
+    private static SearchIndex createShared() {
+        SearchIndex index = new SearchIndex(TikaExtractorService.getShared(), FileIndex.getShared(),
+                AdmissionController.getShared(),
+                ConfigLoader.getIntProperty("search.max.documents", 10_000),
+                ConfigLoader.getLongProperty("search.max.chars", 100_000_000L),
+                ConfigLoader.getLongProperty("search.backoff.ms", 500));
+        long interval = Math.max(1_000, ConfigLoader.getLongProperty("search.sync.interval.ms", 10_000));
+        Thread indexer = Thread.ofPlatform().name("search-indexer").daemon(true).priority(Thread.MIN_PRIORITY).unstarted(() -> {
+            while (true) {
+                try {
+                    index.sync();
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    System.err.println("Search indexing failed: " + e.getMessage());
+                }
+            }
+        });
+        indexer.start();
+        return index;
+    }
+
+    public static boolean isEnabled() {
+        return ConfigLoader.getBooleanProperty("search.enabled", false);
+    }
+
+    /**
+     * Bring the index in line with the file index: extract new and changed files, drop deleted ones.
+     * A round stops early when admission control reports overload or the index is full, and resumes at the
+     * next sync.
+     */
+    public synchronized void sync() throws InterruptedException {
+        long start = System.nanoTime();
+        files.awaitComplete();
+        List<FileIndex.Entry> entries = files.query(null, null, null, false);
+
+        Set<String> present = new HashSet<>();
+        List<FileIndex.Entry> stale = new ArrayList<>();
+        for (FileIndex.Entry entry : entries) {
+            present.add(entry.name());
+            long[] failure = failed.get(entry.name());
+            long[] skipped = tooLarge.get(entry.name());
+            boolean failedAsIs = failure != null && failure[0] == entry.size() && failure[1] == entry.lastModified()
+                    || skipped != null && skipped[0] == entry.size() && skipped[1] == entry.lastModified();
+            if (entry.canRead() && !failedAsIs && !isCurrent(entry.name(), entry.size(), entry.lastModified())) {
+                stale.add(entry);
+            }
+        }
+        for (String name : names()) {
+            if (!present.contains(name)) {
+                remove(name);
+            }
+        }
+        failed.keySet().retainAll(present);
+        tooLarge.keySet().retainAll(present);
+
+        pending = stale.size();
+        limited = false;
+        for (FileIndex.Entry entry : stale) {
+            // Interactive requests are waiting for a parse slot: do not compete with them
+            while (admission != null && admission.getQueued() > 0) {
+                deferred.incrementAndGet();
+                Thread.sleep(backoffMs);
+            }
+            if (!hasRoomFor(entry.name())) {
+                limited = true;
+                break;
+            }
+            try {
+                Map<String, Object> result = extractorService.extractTextWithPages(entry.name());
+                @SuppressWarnings("unchecked")
+                List<Number> pages = (List<Number>) result.getOrDefault("pageOffsets", List.of());
+                if (!add(entry.name(), entry.size(), entry.lastModified(), (String) result.get("text"),
+                        pages.stream().mapToInt(Number::intValue).toArray())) {
+                    limited = true;
+                    tooLarge.put(entry.name(), new long[]{entry.size(), entry.lastModified()});
+                }
+                failed.remove(entry.name());
+            } catch (ExtractionRejectedException e) {
+                if (e.getReason() == ExtractionRejectedException.Reason.OVERLOADED) {
+                    break;
+                }
+                failed.put(entry.name(), new long[]{entry.size(), entry.lastModified()});
+            } catch (Exception e) {
+                failed.put(entry.name(), new long[]{entry.size(), entry.lastModified()});
+                System.err.println("Could not index " + entry.name() + ": " + e.getMessage());
+            }
+            pending--;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        lastSyncMs = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Whether the index holds the given version of a file
+     */
+    public boolean isCurrent(String name, long size, long lastModified) {
+        lock.readLock().lock();
+        try {
+            Document document = byName.get(name);
+            return document != null && document.size() == size && document.lastModified() == lastModified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a document of this name could be added: it replaces an indexed one, or there is room left
+     */
+    private boolean hasRoomFor(String name) {
+        lock.readLock().lock();
+        try {
+            return byName.containsKey(name) || byName.size() < maxDocuments && totalChars < maxChars;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<String> names() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(byName.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index (or re-index) the text of a document. pageOffsets holds the character offset at which each page
+     * starts, in order, and may be empty. Returns false, leaving the index as it was, when the document
+     * does not fit within the document and character limits.
+     */
+    public boolean add(String name, long size, long lastModified, String text, int[] pageOffsets) {
+        // Tokenize outside the lock; searches keep running against the previous version meanwhile
+        Map<String, int[]> occurrences = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int length = tokenize(text, (term, offset) -> {
+            int[] positions = occurrences.get(term);
+            int count = counts.getOrDefault(term, 0);
+            if (positions == null) {
+                positions = new int[4];
+            } else if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count] = offset;
+            occurrences.put(term, positions);
+            counts.put(term, count + 1);
+        });
+
+        lock.writeLock().lock();
+        try {
+            Document previous = byName.get(name);
+            int documents = byName.size() - (previous != null ? 1 : 0);
+            long chars = totalChars - (previous != null ? previous.text().length() : 0);
+            if (documents >= maxDocuments || chars + text.length() > maxChars) {
+                return false;
+            }
+            removeLocked(name);
+            int id = nextId++;
+            Document document = new Document(id, name, size, lastModified, text, pageOffsets,
+                    occurrences.keySet().toArray(String[]::new), length);
+            occurrences.forEach((term, positions) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(id, Arrays.copyOf(positions, counts.get(term))));
+            byName.put(name, document);
+            byId.put(id, document);
+            totalLength += length;
+            totalChars += text.length();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    public void remove(String name) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(String name) {
+        Document document = byName.remove(name);
+        if (document == null) {
+            return;
+        }
+        byId.remove(document.id());
+        totalLength -= document.length();
+        totalChars -= document.text().length();
+        // Room was freed: documents that did not fit get another chance
+        tooLarge.clear();
+        for (String term : document.terms()) {
+            Map<Integer, int[]> documents = postings.get(term);
+            documents.remove(document.id());
+            if (documents.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Documents matching any term of the query, best first, at most limit of them, each with up to
+     * snippets snippets. prefix restricts the hits to files whose relative path starts with it.
+     */
+    public Map<String, Object> search(String query, int limit, String prefix, int snippets) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("query is required");
+        }
+        long start = System.nanoTime();
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query, (term, offset) -> terms.add(term));
+
+        List<Map<String, Object>> hits = new ArrayList<>();
+        int total;
+        lock.readLock().lock();
+        try {
+            int documentCount = byName.size();
+            double averageLength = documentCount > 0 ? (double) totalLength / documentCount : 0;
+            Map<Integer, double[]> scores = new HashMap<>();
+            for (String term : terms) {
+                Map<Integer, int[]> documents = postings.get(term);
+                if (documents == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (documentCount - documents.size() + 0.5) / (documents.size() + 0.5));
+                for (Map.Entry<Integer, int[]> posting : documents.entrySet()) {
+                    Document document = byId.get(posting.getKey());
+                    if (prefix != null && !document.name().startsWith(prefix)) {
+                        continue;
+                    }
+                    int tf = posting.getValue().length;
+                    double norm = K1 * (1 - B + B * document.length() / Math.max(averageLength, 1));
+                    double[] score = scores.computeIfAbsent(posting.getKey(), id -> new double[2]);
+                    score[0] += idf * tf * (K1 + 1) / (tf + norm);
+                    score[1] += tf;
+                }
+            }
+            total = scores.size();
+
+            List<Map.Entry<Integer, double[]>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort((a, b) -> Double.compare(b.getValue()[0], a.getValue()[0]));
+            for (Map.Entry<Integer, double[]> entry : ranked.subList(0, Math.min(Math.max(limit, 0), ranked.size()))) {
+                Document document = byId.get(entry.getKey());
+                Map<String, Object> hit = new LinkedHashMap<>();
+                hit.put("filename", document.name());
+                hit.put("score", Math.round(entry.getValue()[0] * 1000) / 1000.0);
+                hit.put("matches", (long) entry.getValue()[1]);
+                if (document.pageOffsets().length > 0) {
+                    hit.put("pages", document.pageOffsets().length);
+                }
+                hit.put("snippets", snippets(document, terms, snippets));
+                hits.add(hit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("query", query);
+        result.put("terms", List.copyOf(terms));
+        result.put("total", total);
+        result.put("count", hits.size());
+        result.put("hits", hits);
+        result.put("indexedDocuments", size());
+        result.put("pendingDocuments", Math.max(pending, 0));
+        result.put("indexComplete", pending == 0);
+        result.put("indexFull", limited);
+        result.put("tookMs", (System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+
+    /**
+     * Up to count non-overlapping windows of the text holding the most distinct query terms, in text order
+     */
+    private List<Map<String, Object>> snippets(Document document, Set<String> terms, int count) {
+        // Occurrences of the query terms in the document, as (offset, term index) pairs sorted by offset
+        List<long[]> occurrences = new ArrayList<>();
+        int termIndex = 0;
+        for (String term : terms) {
+            Map<Integer, int[]> documents = postings.get(term);
+            int[] positions = documents != null ? documents.get(document.id()) : null;
+            if (positions != null) {
+                for (int position : positions) {
+                    occurrences.add(new long[]{position, termIndex});
+                }
+            }
+            termIndex++;
+        }
+        occurrences.sort((a, b) -> Long.compare(a[0], b[0]));
+        if (occurrences.size() > MAX_SNIPPET_CANDIDATES) {
+            occurrences = occurrences.subList(0, MAX_SNIPPET_CANDIDATES);
+        }
+
+        // Distinct terms within a window starting at each occurrence, by two pointers
+        int[] distinct = new int[occurrences.size()];
+        int[] inWindow = new int[terms.size()];
+        int kinds = 0;
+        for (int from = 0, to = 0; from < occurrences.size(); from++) {
+            while (to < occurrences.size() && occurrences.get(to)[0] < occurrences.get(from)[0] + 2 * SNIPPET_RADIUS) {
+                if (inWindow[(int) occurrences.get(to)[1]]++ == 0) {
+                    kinds++;
+                }
+                to++;
+            }
+            distinct[from] = kinds;
+            if (--inWindow[(int) occurrences.get(from)[1]] == 0) {
+                kinds--;
+            }
+        }
+
+        List<Integer> chosen = new ArrayList<>();
+        while (chosen.size() < count) {
+            int best = -1;
+            for (int i = 0; i < occurrences.size(); i++) {
+                if ((best < 0 || distinct[i] > distinct[best]) && !overlaps(occurrences, chosen, i)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            chosen.add(best);
+        }
+        // Occurrences are sorted by offset, so their indexes are in text order too
+        chosen.sort(Integer::compare);
+
+        List<Map<String, Object>> snippets = new ArrayList<>();
+        for (int index : chosen) {
+            snippets.add(snippet(document, (int) occurrences.get(index)[0]));
+        }
+        return snippets;
+    }
+
+    private static boolean overlaps(List<long[]> occurrences, List<Integer> chosen, int candidate) {
+        long offset = occurrences.get(candidate)[0];
+        for (int index : chosen) {
+            if (Math.abs(occurrences.get(index)[0] - offset) < 2 * SNIPPET_RADIUS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, Object> snippet(Document document, int offset) {
+        String text = document.text();
+        int start = Math.max(0, offset - SNIPPET_RADIUS / 2);
+        int end = Math.min(text.length(), offset + 2 * SNIPPET_RADIUS - SNIPPET_RADIUS / 2);
+        // Do not cut words in half
+        while (start > 0 && start < offset && !Character.isWhitespace(text.charAt(start - 1))) {
+            start++;
+        }
+        while (end < text.length() && end > offset && !Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+
+        Map<String, Object> snippet = new LinkedHashMap<>();
+        snippet.put("offset", start);
+        if (document.pageOffsets().length > 0) {
+            int page = Arrays.binarySearch(document.pageOffsets(), offset);
+            snippet.put("page", page >= 0 ? page + 1 : Math.max(1, -page - 1));
+        }
+        snippet.put("text", (start > 0 ? "..." : "") + text.substring(start, end).replaceAll("\\s+", " ").trim()
+                + (end < text.length() ? "..." : ""));
+        return snippet;
+    }
+
+    @FunctionalInterface
+    private interface TokenConsumer {
+        void accept(String term, int offset);
+    }
+
+    /**
+     * Split text into lowercase runs of letters and digits; returns the number of tokens
+     */
+    private static int tokenize(String text, TokenConsumer consumer) {
+        int tokens = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i > start && i - start <= MAX_TERM_LENGTH) {
+                consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT), start);
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("documents", byName.size());
+            stats.put("terms", postings.size());
+            stats.put("tokens", totalLength);
+            stats.put("chars", totalChars);
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("pending", Math.max(pending, 0));
+        stats.put("failed", failed.size());
+        stats.put("tooLarge", tooLarge.size());
+        stats.put("full", limited);
+        stats.put("deferred", deferred.get());
+        stats.put("maxDocuments", maxDocuments);
+        stats.put("maxChars", maxChars);
+        stats.put("lastSyncMs", lastSyncMs);
+        return stats;
+    }
+}
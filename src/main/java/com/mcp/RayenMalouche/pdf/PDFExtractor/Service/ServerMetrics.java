@@ -0,0 +1,161 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.binder.system.UptimeMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server metrics in a Micrometer registry, scraped in the Prometheus text format from /api/metrics:
+ * MCP tool calls (count and latency per tool and outcome), parses (latency per operation and MIME type,
+ * document bytes in, characters out), running and queued parses, the Jetty thread pool, open SSE streams
+ * and the JVM (heap, GC, threads, classes, CPU). With metrics.enabled=false nothing is recorded.
+ */
+public class ServerMetrics {
+
+    // Histogram buckets of tool call and parse latencies, from a cached answer to a large document
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1),
+            Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30)};
+
+    private static final ServerMetrics SHARED = ConfigLoader.getBooleanProperty("metrics.enabled", true)
+            ? new ServerMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), AdmissionController.getShared())
+            : new ServerMetrics(new CompositeMeterRegistry(), null);
+
+    private final MeterRegistry registry;
+    private final AtomicInteger sseStreams = new AtomicInteger();
+
+    /**
+     * @param registry  registry to record into; a composite without children records nothing
+     * @param admission admission controller whose running and queued parses are reported, or null
+     */
+    public ServerMetrics(MeterRegistry registry, AdmissionController admission) {
+        this.registry = registry;
+        if (registry instanceof CompositeMeterRegistry) {
+            return;
+        }
+
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ClassLoaderMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        new UptimeMetrics().bindTo(registry);
+
+        Gauge.builder("mcp.sse.streams", sseStreams, AtomicInteger::get)
+                .description("Open server-sent event streams (SSE sessions and streamable HTTP listeners)")
+                .register(registry);
+
+        if (admission != null) {
+            Gauge.builder("extraction.parses.running", admission, AdmissionController::getRunning)
+                    .description("Parses holding an admission slot")
+                    .register(registry);
+            Gauge.builder("extraction.parses.queued", admission, AdmissionController::getQueued)
+                    .description("Parses waiting for an admission slot")
+                    .register(registry);
+        }
+    }
+
+    public static ServerMetrics getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Report the size and load of the Jetty thread pool
+     */
+    public void bindThreadPool(QueuedThreadPool pool) {
+        Gauge.builder("jetty.threads.current", pool, QueuedThreadPool::getThreads).register(registry);
+        Gauge.builder("jetty.threads.busy", pool, QueuedThreadPool::getBusyThreads).register(registry);
+        Gauge.builder("jetty.threads.idle", pool, QueuedThreadPool::getIdleThreads).register(registry);
+        Gauge.builder("jetty.threads.max", pool, QueuedThreadPool::getMaxThreads).register(registry);
+        Gauge.builder("jetty.threads.jobs", pool, QueuedThreadPool::getQueueSize)
+                .description("Jobs waiting for a pool thread")
+                .register(registry);
+    }
+
+    /**
+     * One MCP tool call; outcome is success or error
+     */
+    public void recordToolCall(String tool, String outcome, long nanos) {
+        Timer.builder("mcp.tool.calls")
+                .description("MCP tool calls")
+                .tag("tool", tool)
+                .tag("outcome", outcome)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One parse (not a cache hit) of a document of bytesIn bytes that produced charsOut characters
+     */
+    public void recordParse(String operation, String contentType, long nanos, long bytesIn, long charsOut) {
+        String mimeType = mimeType(contentType);
+        Timer.builder("extraction.parse")
+                .description("Document parses")
+                .tag("operation", operation)
+                .tag("mimeType", mimeType)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("extraction.input")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("mimeType", mimeType)
+                .register(registry)
+                .increment(bytesIn);
+        Counter.builder("extraction.output")
+                .baseUnit("characters")
+                .tag("mimeType", mimeType)
+                .register(registry)
+                .increment(charsOut);
+    }
+
+    // The type without parameters such as charset, so each type is one series
+    private static String mimeType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return "unknown";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase();
+    }
+
+    public void sseStreamOpened() {
+        sseStreams.incrementAndGet();
+    }
+
+    public void sseStreamClosed() {
+        sseStreams.decrementAndGet();
+    }
+
+    public boolean isEnabled() {
+        return registry instanceof PrometheusMeterRegistry;
+    }
+
+    /**
+     * The current values in the Prometheus text format, or an empty string when metrics are disabled
+     */
+    public String scrape() {
+        return registry instanceof PrometheusMeterRegistry prometheus ? prometheus.scrape() : "";
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+}
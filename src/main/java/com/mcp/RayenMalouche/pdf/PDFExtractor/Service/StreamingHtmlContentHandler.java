@@ -0,0 +1,170 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SAX handler that serializes Tika's XHTML events as HTML straight into a Writer.
+ * Produces the same markup as Tika's ToHTMLContentHandler (which can only target an OutputStream),
+ * and optionally writes a stylesheet right after the opening head tag so the styled document
+ * never has to be buffered and rewritten.
+ */
+public class StreamingHtmlContentHandler extends DefaultHandler {
+
+    private static final Set<String> EMPTY_ELEMENTS = Set.of(
+            "area", "base", "basefont", "br", "col", "frame", "hr", "img", "input", "isindex", "link", "meta", "param");
+
+    private final Writer writer;
+    private final String headContent;
+    private final Map<String, String> pendingNamespaces = new LinkedHashMap<>();
+    private boolean inStartElement;
+
+    public StreamingHtmlContentHandler(Writer writer) {
+        this(writer, null);
+    }
+
+    /**
+     * @param headContent raw markup written right after the opening head tag, or null
+     */
+    public StreamingHtmlContentHandler(Writer writer, String headContent) {
+        this.writer = writer;
+        this.headContent = headContent;
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+        pendingNamespaces.put(prefix, uri);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        lazyCloseStartElement();
+
+        String name = elementName(localName, qName);
+        write('<');
+        write(name);
+
+        for (Map.Entry<String, String> ns : pendingNamespaces.entrySet()) {
+            write(ns.getKey().isEmpty() ? " xmlns=\"" : " xmlns:" + ns.getKey() + "=\"");
+            writeEscaped(ns.getValue(), true);
+            write('"');
+        }
+        pendingNamespaces.clear();
+
+        for (int i = 0; i < atts.getLength(); i++) {
+            write(' ');
+            write(elementName(atts.getLocalName(i), atts.getQName(i)));
+            write("=\"");
+            writeEscaped(atts.getValue(i), true);
+            write('"');
+        }
+        inStartElement = true;
+
+        if (headContent != null && "head".equals(name)) {
+            lazyCloseStartElement();
+            write(headContent);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        String name = elementName(localName, qName);
+        if (inStartElement) {
+            write('>');
+            inStartElement = false;
+            if (EMPTY_ELEMENTS.contains(name)) {
+                return;
+            }
+        }
+        write("</");
+        write(name);
+        write('>');
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        lazyCloseStartElement();
+        writeEscaped(ch, start, length, false);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new SAXException("Error flushing character output", e);
+        }
+    }
+
+    private void lazyCloseStartElement() throws SAXException {
+        if (inStartElement) {
+            write('>');
+            inStartElement = false;
+        }
+    }
+
+    private static String elementName(String localName, String qName) {
+        return qName != null && !qName.isEmpty() ? qName : localName;
+    }
+
+    private void writeEscaped(String value, boolean attribute) throws SAXException {
+        if (value != null) {
+            writeEscaped(value.toCharArray(), 0, value.length(), attribute);
+        }
+    }
+
+    /**
+     * Escape markup characters, writing unescaped runs in a single call
+     */
+    private void writeEscaped(char[] ch, int start, int length, boolean attribute) throws SAXException {
+        try {
+            int end = start + length;
+            int run = start;
+            for (int i = start; i < end; i++) {
+                String entity = switch (ch[i]) {
+                    case '&' -> "&amp;";
+                    case '<' -> "&lt;";
+                    case '>' -> "&gt;";
+                    case '"' -> attribute ? "&quot;" : null;
+                    default -> null;
+                };
+                if (entity != null) {
+                    writer.write(ch, run, i - run);
+                    writer.write(entity);
+                    run = i + 1;
+                }
+            }
+            writer.write(ch, run, end - run);
+        } catch (IOException e) {
+            throw new SAXException("Error writing character output", e);
+        }
+    }
+
+    private void write(char c) throws SAXException {
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new SAXException("Error writing character output", e);
+        }
+    }
+
+    private void write(String s) throws SAXException {
+        try {
+            writer.write(s);
+        } catch (IOException e) {
+            throw new SAXException("Error writing character output", e);
+        }
+    }
+}
@@ -1,238 +1,1340 @@
 package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
 
-import org.apache.tika.Tika;
-import org.apache.tika.detect.Detector;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.PDF;
+import org.apache.tika.metadata.PagedText;
+import org.apache.tika.metadata.Property;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
-import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.EmptyParser;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
-import org.apache.tika.sax.ToHTMLContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import java.io.BufferedInputStream;
 
 public class TikaExtractorService {
-    private static final String FILES_DIRECTORY = "files-to-extract";
-    private final Tika tika;
-    private final AutoDetectParser parser;
-    private final Detector detector;
+    static final String FILES_DIRECTORY = "files-to-extract";
+    private static final List<String> WARMUP_SAMPLES = List.of(
+            "sample.pdf", "sample.docx", "sample.rtf", "sample.html", "sample.txt");
+    private static final Set<String> STANDARD_INFO_KEYS = Set.of(
+            "Title", "Author", "Creator", "Producer", "Subject", "Keywords", "Trapped", "CreationDate", "ModDate");
+    // Basic CSS injected into the extracted HTML for better readability
+    private static final String HTML_STYLE = """
+            <style>
+                body { font-family: Arial, sans-serif; line-height: 1.6; margin: 20px; }
+                h1, h2, h3 { color: #333; }
+                p { margin-bottom: 10px; }
+                table { border-collapse: collapse; width: 100%; }
+                th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }
+                img { max-width: 100%; height: auto; }
+            </style>
+            """;
+    private final ParserRegistry parsers;
+    private final ExtractionCache cache;
+    private final AdmissionController admission;
+    private final ForkedParserPool workers;
+    private final ParallelPdfExtractor parallelPdf = ParallelPdfExtractor.getShared();
+    private final ServerMetrics metrics = ServerMetrics.getShared();
+    private volatile boolean warmedUp;
 
     public TikaExtractorService() {
-        this.tika = new Tika();
-        this.parser = new AutoDetectParser();
-        this.detector = parser.getDetector();
+        this(ExtractionCache.getShared(), AdmissionController.getShared(), ForkedParserPool.getShared());
+    }
+
+    /**
+     * The extraction engine shared by the MCP tools and the REST endpoints, built on first use from
+     * application.properties. Its parsers are thread-safe, so one warmed-up instance serves all requests.
+     */
+    public static TikaExtractorService getShared() {
+        return Holder.SHARED;
+    }
+
+    private static class Holder {
+        private static final TikaExtractorService SHARED = new TikaExtractorService();
+    }
+
+    public TikaExtractorService(ExtractionCache cache) {
+        this(cache, AdmissionController.getShared());
+    }
+
+    public TikaExtractorService(ExtractionCache cache, AdmissionController admission) {
+        this(cache, admission, null);
+    }
+
+    /**
+     * @param workers pool of forked parser JVMs, or null to parse in this process
+     */
+    public TikaExtractorService(ExtractionCache cache, AdmissionController admission, ForkedParserPool workers) {
+        this.parsers = ParserRegistry.fromConfig();
+        this.cache = cache;
+        this.admission = admission;
+        this.workers = workers;
+    }
+
+    /**
+     * Parse the sample documents bundled under /warmup (PDF, DOCX, RTF, HTML, plain text) to HTML, to text
+     * and for metadata, so the parser registry, PDFBox fonts and the POI classes are loaded before the first
+     * real request. The samples go through the same parse paths as requests (including forked workers when
+     * enabled) but not through the result cache. Returns the elapsed milliseconds.
+     */
+    public long warmUp() {
+        long start = System.nanoTime();
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("tika-warmup");
+            for (String sample : WARMUP_SAMPLES) {
+                try (InputStream in = TikaExtractorService.class.getResourceAsStream("/warmup/" + sample)) {
+                    if (in == null) {
+                        continue;
+                    }
+                    File file = directory.resolve(sample).toFile();
+                    Files.copy(in, file.toPath());
+                    parseHtml(file, sample, Writer.nullWriter());
+                    parseText(file, sample, Writer.nullWriter());
+                    parseMetadataOnly(file, new Metadata());
+                } catch (Exception e) {
+                    System.err.println("Warm-up of " + sample + " failed: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Warm-up skipped: " + e.getMessage());
+        } finally {
+            if (directory != null) {
+                File[] files = directory.toFile().listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                directory.toFile().delete();
+            }
+        }
+        warmedUp = true;
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * Documents parsed through a routed parser versus the auto-detect chain
+     */
+    public Map<String, Object> getParserStats() {
+        return parsers.getStats();
     }
 
     /**
      * Extract content from a file and convert to HTML
      */
     public Map<String, Object> extractToHtml(String filename) throws IOException, TikaException, SAXException {
-        File file = new File(FILES_DIRECTORY, filename);
+        File file = resolveReadableFile(filename);
 
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filename);
+        String cacheKey = cacheKey(file, "html");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            return withFileFields(cached, file, filename);
         }
 
-        if (!file.canRead()) {
-            throw new IOException("Cannot read file: " + filename);
+        StringWriter html = new StringWriter();
+        Map<String, Object> result = measure("html", file.length(), () -> parseHtml(file, filename, html));
+        result.put("html", html.toString());
+
+        if (cacheKey != null) {
+            cache.put(cacheKey, cacheEntry(result));
         }
+        return result;
+    }
 
-        Map<String, Object> result = new HashMap<>();
+    /**
+     * Extract content from a file as HTML, writing it to the given writer as the parser produces it.
+     * Returns the same fields as extractToHtml except the html itself.
+     */
+    public Map<String, Object> streamHtml(String filename, Writer out) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
 
-        try (InputStream fileStream = new FileInputStream(file);
-             InputStream stream = new BufferedInputStream(fileStream)) {
-            // Prepare metadata
-            Metadata metadata = new Metadata();
-            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+        String cacheKey = cacheKey(file, "html");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            out.write((String) cached.remove("html"));
+            return withFileFields(cached, file, filename);
+        }
 
-            // Use ToHTMLContentHandler for HTML output
-            ToHTMLContentHandler htmlHandler = new ToHTMLContentHandler();
+        if (cacheKey == null) {
+            return measure("html", file.length(), () -> parseHtml(file, filename, out));
+        }
+        // Keep a copy of what is streamed, so the next request for the file is a cache hit
+        CapturingWriter capture = new CapturingWriter(out, cache.getMaxEntryChars());
+        Map<String, Object> result = measure("html", file.length(), () -> parseHtml(file, filename, capture));
+        if (capture.getCapture() != null) {
+            Map<String, Object> entry = cacheEntry(result);
+            entry.put("html", capture.getCapture());
+            cache.put(cacheKey, entry);
+        }
+        return result;
+    }
 
-            // Parse the document
-            ParseContext context = new ParseContext();
-            parser.parse(stream, htmlHandler, metadata, context);
+    /**
+     * Extract plain text content from a file
+     */
+    public Map<String, Object> extractText(String filename) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+
+        String cacheKey = cacheKey(file, "text");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            cached.put("filename", filename);
+            return cached;
+        }
+
+        StringWriter text = new StringWriter();
+        Map<String, Object> result = measure("text", file.length(), () -> parseText(file, filename, text));
+        result.put("text", text.toString());
+
+        if (cacheKey != null) {
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Extract plain text together with the character offset at which each page starts ("pageOffsets"),
+     * for the search index. Pages are known for documents whose parser marks them (PDFs); the list is
+     * empty for other documents and with forked workers. Not cached: the index keeps the text itself.
+     */
+    public Map<String, Object> extractTextWithPages(String filename) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+        StringWriter text = new StringWriter();
+        List<Integer> pageOffsets = new ArrayList<>();
+        Map<String, Object> result = measure("index", file.length(), () -> {
+            if (workers != null) {
+                return parseText(file, filename, text);
+            }
+            try (AdmissionController.Permit permit = admit(file);
+                 InputStream stream = TikaInputStream.get(file.toPath())) {
+                return parseText(stream, file, filename, permit, text, pageOffsets);
+            }
+        });
+        result.put("text", text.toString());
+        result.put("pageOffsets", pageOffsets);
+        return result;
+    }
 
-            // Get raw HTML
-            String html = htmlHandler.toString();
+    /**
+     * Extract plain text from a file, writing it to the given writer as the parser produces it.
+     * Returns the same fields as extractText except the text itself.
+     */
+    public Map<String, Object> streamText(String filename, Writer out) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+
+        String cacheKey = cacheKey(file, "text");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            out.write((String) cached.remove("text"));
+            cached.put("filename", filename);
+            return cached;
+        }
 
-            // Enhance HTML with basic CSS for better formatting (optional improvement for "good" HTML)
-            String enhancedHtml = enhanceHtml(html);
+        if (cacheKey == null) {
+            return measure("text", file.length(), () -> parseText(file, filename, out));
+        }
+        // Keep a copy of what is streamed, so the next request for the file is a cache hit
+        CapturingWriter capture = new CapturingWriter(out, cache.getMaxEntryChars());
+        Map<String, Object> result = measure("text", file.length(), () -> parseText(file, filename, capture));
+        if (capture.getCapture() != null) {
+            Map<String, Object> entry = new HashMap<>(result);
+            entry.put("text", capture.getCapture());
+            cache.put(cacheKey, entry);
+        }
+        return result;
+    }
+
+    /**
+     * Extract a window of the plain text: offset characters are skipped and at most limit are returned.
+     * The parse stops as soon as the window is filled, so early windows of large documents come back fast.
+     */
+    public Map<String, Object> extractText(String filename, long offset, int limit) throws IOException, TikaException, SAXException {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit must be > 0");
+        }
+        File file = resolveReadableFile(filename);
+
+        // A cached full extraction is cheaper to slice than a partial re-parse
+        String cacheKey = cacheKey(file, "text");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            String text = (String) cached.remove("text");
+            int from = (int) Math.min(offset, text.length());
+            int to = (int) Math.min((long) from + limit, text.length());
+            cached.put("filename", filename);
+            return textWindow(cached, text.substring(from, to), offset, to < text.length());
+        }
+
+        return measure("window", file.length(), () -> parseTextWindow(file, filename, offset, limit));
+    }
+
+    private Map<String, Object> parseTextWindow(File file, String filename, long offset, int limit)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            return executeForked(file, Map.of("op", "window", "filename", filename, "offset", offset, "limit", limit));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        StringWriter window = new StringWriter();
+        boolean hasMore = false;
+
+        try (AdmissionController.Permit permit = admit(file);
+             InputStream stream = TikaInputStream.get(file.toPath())) {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+
+            // The handler stops with WriteLimitReachedException as soon as a character follows the window
+            long writeLimit = Math.min(offset + limit, Integer.MAX_VALUE);
+            ContentHandler handler = new BodyContentHandler(new WriteOutContentHandler(
+                    permit.guard(new SkippingWriter(window, offset, limit)), (int) writeLimit));
+            try {
+                parsers.parse(file.getName(), stream, handler, metadata, parsers.newContext());
+            } catch (IOException | SAXException | TikaException e) {
+                if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                    permit.rethrowIfAborted(e);
+                    throw e;
+                }
+                hasMore = true;
+            }
 
-            // Build result
             result.put("filename", filename);
-            result.put("html", enhancedHtml);
             result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
             result.put("title", metadata.get(TikaCoreProperties.TITLE));
             result.put("author", metadata.get(TikaCoreProperties.CREATOR));
-            result.put("created", metadata.get(TikaCoreProperties.CREATED));
-            result.put("modified", metadata.get(TikaCoreProperties.MODIFIED));
-            result.put("fileSize", file.length());
+        }
 
-            // Add all metadata as additional info
-            Map<String, String> allMetadata = new HashMap<>();
-            for (String name : metadata.names()) {
-                allMetadata.put(name, metadata.get(name));
+        String text = window.toString();
+        return textWindow(result, text, offset, hasMore);
+    }
+
+    private static Map<String, Object> textWindow(Map<String, Object> result, String text, long offset, boolean hasMore) {
+        result.put("text", text);
+        result.put("textLength", text.length());
+        result.put("offset", offset);
+        result.put("hasMore", hasMore);
+        if (hasMore) {
+            result.put("nextOffset", offset + text.length());
+        }
+        return result;
+    }
+
+    /**
+     * Extract a compact rendering sized for a client's context: plain text or minimal HTML with whitespace
+     * collapsed and running headers and footers removed, at most maxChars characters of it. When the budget
+     * runs out the parse stops and "nextCursor" tells where to resume. A first call parses only as far as its
+     * budget reaches; continuations are rendered from the document's blocks, recorded by one full parse and
+     * kept in the extraction cache, rather than parsing again from the start.
+     * <p>
+     * A cursor names the version of the file it was issued for and is rejected once the file has changed.
+     *
+     * @param cursor "nextCursor" of the previous call, or null to start at the beginning
+     */
+    public Map<String, Object> extractCompact(String filename, boolean html, int maxChars, String cursor)
+            throws IOException, TikaException, SAXException {
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("maxChars and maxTokens must be > 0");
+        }
+        File file = resolveReadableFile(filename);
+        String version = compactVersion(file);
+        String position = compactPosition(cursor, version);
+
+        Map<String, Object> result;
+        String cacheKey = position != null ? cacheKey(file, "compact") : null;
+        Map<String, Object> blocks = cacheGet(cacheKey);
+        if (blocks == null && cacheKey != null) {
+            blocks = measure("compact", file.length(), () -> parseCompactBlocks(file, filename));
+            if (((String) blocks.get("blocks")).length() <= cache.getMaxEntryChars()) {
+                cache.put(cacheKey, blocks);
             }
-            result.put("metadata", allMetadata);
+        }
+        if (blocks != null) {
+            result = compactWindow(blocks, filename, html, maxChars, position);
+        } else {
+            // Without the cache each call parses up to the end of its window
+            result = measure("compact", file.length(), () -> parseCompact(file, filename, html, maxChars, position));
+        }
 
-            return result;
+        result.put("cursor", cursor);
+        Object next = result.get("nextCursor");
+        result.put("nextCursor", next != null ? next + "@" + version : null);
+        return result;
+    }
+
+    /**
+     * Version of a file that compact cursors carry: the start of its result key, so a touched but unchanged
+     * file keeps its cursors valid
+     */
+    private String compactVersion(File file) throws IOException {
+        String key = ExtractionTimings.time("io", () -> cache.keyFor(file, "compact"));
+        return key.substring(0, Math.min(16, key.length()));
+    }
+
+    /**
+     * The position part of a cursor issued for the given version, or null without a cursor
+     */
+    private static String compactPosition(String cursor, String version) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        int at = cursor.lastIndexOf('@');
+        if (at < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
         }
+        if (!cursor.substring(at + 1).equals(version)) {
+            throw new IllegalArgumentException("Stale cursor: the file changed since it was issued; start again without a cursor");
+        }
+        return cursor.substring(0, at);
     }
 
     /**
-     * Extract plain text content from a file
+     * Compact window starting at a handler position; called by parser workers
      */
-    public Map<String, Object> extractText(String filename) throws IOException, TikaException, SAXException {
-        File file = new File(FILES_DIRECTORY, filename);
+    Map<String, Object> extractCompactAt(String filename, boolean html, int maxChars, String position)
+            throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+        return parseCompact(file, filename, html, maxChars, position);
+    }
 
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filename);
+    private Map<String, Object> parseCompact(File file, String filename, boolean html, int maxChars, String position)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            Map<String, Object> request = new HashMap<>();
+            request.put("op", "compact");
+            request.put("filename", filename);
+            request.put("html", html);
+            request.put("maxChars", maxChars);
+            request.put("position", position);
+            return executeForked(file, request);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        StringWriter content = new StringWriter();
+        CompactContentHandler handler;
+
+        try (AdmissionController.Permit permit = admit(file);
+             InputStream stream = TikaInputStream.get(file.toPath())) {
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+
+            handler = new CompactContentHandler(permit.guard(content), html, maxChars, position);
+            try {
+                parsers.parse(file.getName(), stream, handler, metadata, parsers.newContext());
+            } catch (IOException | SAXException | TikaException e) {
+                // The handler ends the parse itself once the budget is spent
+                if (!handler.isTruncated()) {
+                    permit.rethrowIfAborted(e);
+                    throw e;
+                }
+            }
+
+            result.put("filename", filename);
+            result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
+            result.put("title", metadata.get(TikaCoreProperties.TITLE));
+            result.put("author", metadata.get(TikaCoreProperties.CREATOR));
         }
+        return compactResult(result, content.toString(), html, handler);
+    }
 
-        if (!file.canRead()) {
-            throw new IOException("Cannot read file: " + filename);
+    /**
+     * Blocks of the whole compact rendering, as recorded by {@link CompactContentHandler#recordBlocks}
+     */
+    Map<String, Object> extractCompactBlocks(String filename) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+        return parseCompactBlocks(file, filename);
+    }
+
+    private Map<String, Object> parseCompactBlocks(File file, String filename)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            return executeForked(file, Map.of("op", "compact-blocks", "filename", filename));
         }
 
         Map<String, Object> result = new HashMap<>();
+        StringBuilder blocks = new StringBuilder();
 
-        try (InputStream fileStream = new FileInputStream(file);
-             InputStream stream = new BufferedInputStream(fileStream)) { // Wrap in BufferedInputStream
-            // Prepare metadata
+        try (AdmissionController.Permit permit = admit(file);
+             InputStream stream = TikaInputStream.get(file.toPath())) {
             Metadata metadata = new Metadata();
             metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
 
-            // Use BodyContentHandler for text output
-            BodyContentHandler handler = new BodyContentHandler(-1);
+            CompactContentHandler handler = new CompactContentHandler(
+                    permit.guard(Writer.nullWriter()), false, Integer.MAX_VALUE, null);
+            handler.recordBlocks(blocks);
+            try {
+                parsers.parse(file.getName(), stream, handler, metadata, parsers.newContext());
+            } catch (IOException | SAXException | TikaException e) {
+                permit.rethrowIfAborted(e);
+                throw e;
+            }
+
+            result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
+            result.put("title", metadata.get(TikaCoreProperties.TITLE));
+            result.put("author", metadata.get(TikaCoreProperties.CREATOR));
+            result.put("removedLines", handler.getRemovedLines());
+        }
+        result.put("blocks", blocks.toString());
+        return result;
+    }
+
+    /**
+     * Compact window rendered from recorded blocks, without parsing
+     */
+    private static Map<String, Object> compactWindow(Map<String, Object> blocks, String filename, boolean html,
+                                                     int maxChars, String position) throws SAXException {
+        StringWriter content = new StringWriter();
+        CompactContentHandler handler = new CompactContentHandler(content, html, maxChars, position);
+        handler.replay((String) blocks.get("blocks"));
 
-            // Parse the document
-            ParseContext context = new ParseContext();
-            parser.parse(stream, handler, metadata, context);
+        Map<String, Object> result = new HashMap<>(blocks);
+        result.remove("blocks");
+        result.put("filename", filename);
+        Object removedLines = result.get("removedLines");
+        compactResult(result, content.toString(), html, handler);
+        result.put("removedLines", removedLines);
+        return result;
+    }
+
+    private static Map<String, Object> compactResult(Map<String, Object> result, String compact, boolean html,
+                                                     CompactContentHandler handler) {
+        result.put(html ? "html" : "text", compact);
+        result.put(html ? "htmlLength" : "textLength", compact.length());
+        result.put("estimatedTokens", (compact.length() + CompactContentHandler.CHARS_PER_TOKEN - 1)
+                / CompactContentHandler.CHARS_PER_TOKEN);
+        result.put("hasMore", handler.isTruncated());
+        result.put("nextCursor", handler.getNextCursor());
+        result.put("removedLines", handler.getRemovedLines());
+        return result;
+    }
 
-            // Build result
-            String text = handler.toString();
+    /**
+     * Extract a page range (1-based, inclusive) of a PDF as HTML or plain text.
+     * Only the requested pages are parsed; the HTML keeps Tika's one div per page structure.
+     */
+    public Map<String, Object> extractPages(String filename, int startPage, int endPage, boolean html) throws IOException, TikaException, SAXException {
+        File file = resolveReadableFile(filename);
+        return measure("pages", file.length(), () -> parsePages(file, filename, startPage, endPage, html));
+    }
+
+    private Map<String, Object> parsePages(File file, String filename, int startPage, int endPage, boolean html)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            return executeForked(file, Map.of("op", "pages", "filename", filename,
+                    "startPage", startPage, "endPage", endPage, "html", html));
+        }
+
+        MediaType mediaType;
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+        try (InputStream stream = TikaInputStream.get(file.toPath())) {
+            mediaType = parsers.detect(file.getName(), stream, metadata);
+        }
+        if (!ParserRegistry.PDF.equals(mediaType)) {
+            throw new IOException("Page ranges are only supported for PDF documents, " + filename + " is " + mediaType);
+        }
+
+        try (AdmissionController.Permit permit = admit(file);
+             PDDocument document = PdfPageExtractor.load(file)) {
+            int totalPages = document.getNumberOfPages();
+            if (startPage < 1 || startPage > totalPages || endPage < startPage) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid page range %d-%d, %s has %d pages", startPage, endPage, filename, totalPages));
+            }
+            int lastPage = Math.min(endPage, totalPages);
+
+            readPdfMetadata(document, metadata);
+
+            StringWriter out = new StringWriter();
+            Writer guarded = permit.guard(out);
+            ContentHandler handler = html
+                    ? new StreamingHtmlContentHandler(guarded, HTML_STYLE)
+                    : new BodyContentHandler(guarded);
+            try {
+                if (parallelPdf.shouldSplit(lastPage - startPage + 1)) {
+                    parallelPdf.extract(file, startPage, lastPage, handler, metadata);
+                } else {
+                    PdfPageExtractor.extract(document, startPage, lastPage, handler, metadata);
+                }
+            } catch (IOException | SAXException e) {
+                permit.rethrowIfAborted(e);
+                throw e;
+            }
+
+            Map<String, Object> result = new HashMap<>();
             result.put("filename", filename);
-            result.put("text", text);
             result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
             result.put("title", metadata.get(TikaCoreProperties.TITLE));
             result.put("author", metadata.get(TikaCoreProperties.CREATOR));
-            result.put("textLength", text.length());
+            result.put("startPage", startPage);
+            result.put("endPage", lastPage);
+            result.put("totalPages", totalPages);
+            String content = out.toString();
+            result.put(html ? "html" : "text", content);
+            result.put(html ? "htmlLength" : "textLength", content.length());
+            return result;
+        }
+    }
 
+    private Map<String, Object> parseHtml(File file, String filename, Writer out) throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            Map<String, Object> result = executeForked(file, Map.of("op", "html", "filename", filename));
+            out.write((String) result.remove("html"));
             return result;
         }
+
+        // A file-backed TikaInputStream: PDFParser reads the PDF from the file instead of copying it onto the heap
+        try (AdmissionController.Permit permit = admit(file);
+             InputStream stream = TikaInputStream.get(file.toPath())) {
+            return parseHtml(stream, file, filename, file.length(), permit, out);
+        }
     }
 
     /**
-     * List all files available for extraction
+     * Parse an admitted document to HTML. file is where the document is stored, or null when it is only in memory.
      */
-    public Map<String, Object> listAvailableFiles() throws IOException {
-        File directory = new File(FILES_DIRECTORY);
+    private Map<String, Object> parseHtml(InputStream stream, File file, String filename, long size,
+                                          AdmissionController.Permit permit, Writer out) throws IOException, TikaException, SAXException {
+        // Prepare metadata
+        String resourceName = new File(filename).getName();
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, resourceName);
+
+        // HTML handler that injects the stylesheet into <head> as it streams
+        CountingWriter counter = new CountingWriter(permit.guard(out));
+        ContentHandler htmlHandler = new StreamingHtmlContentHandler(counter, HTML_STYLE);
 
-        if (!directory.exists()) {
-            directory.mkdirs();
-            return Map.of(
-                    "files", new String[0],
-                    "message", "Directory created: " + FILES_DIRECTORY,
-                    "path", directory.getAbsolutePath()
-            );
+        // Parse the document
+        ParseContext context = parsers.newContext();
+        try {
+            if (file == null || !parsePdfInParallel(file, stream, htmlHandler, metadata)) {
+                parsers.parse(resourceName, stream, htmlHandler, metadata, context);
+            }
+        } catch (IOException | SAXException | TikaException e) {
+            permit.rethrowIfAborted(e);
+            throw e;
         }
+        counter.flush();
 
-        File[] files = directory.listFiles(File::isFile);
+        // Build result
+        Map<String, Object> result = new HashMap<>();
+        result.put("filename", filename);
+        result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
+        result.put("title", metadata.get(TikaCoreProperties.TITLE));
+        result.put("author", metadata.get(TikaCoreProperties.CREATOR));
+        result.put("created", metadata.get(TikaCoreProperties.CREATED));
+        result.put("modified", metadata.get(TikaCoreProperties.MODIFIED));
+        result.put("fileSize", size);
+        result.put("htmlLength", counter.getCount());
 
-        if (files == null || files.length == 0) {
-            return Map.of(
-                    "files", new String[0],
-                    "message", "No files found in " + FILES_DIRECTORY,
-                    "path", directory.getAbsolutePath()
-            );
+        // Add all metadata as additional info
+        Map<String, String> allMetadata = new HashMap<>();
+        for (String name : metadata.names()) {
+            allMetadata.put(name, metadata.get(name));
         }
+        result.put("metadata", allMetadata);
 
-        Map<String, Object> fileInfo = new HashMap<>();
-        for (File file : files) {
-            Map<String, Object> info = new HashMap<>();
-            info.put("size", file.length());
-            info.put("lastModified", file.lastModified());
-            info.put("canRead", file.canRead());
+        return result;
+    }
 
+    private Map<String, Object> parseText(File file, String filename, Writer out) throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            Map<String, Object> result = executeForked(file, Map.of("op", "text", "filename", filename));
+            out.write((String) result.remove("text"));
+            return result;
+        }
+
+        try (AdmissionController.Permit permit = admit(file);
+             InputStream stream = TikaInputStream.get(file.toPath())) {
+            return parseText(stream, file, filename, permit, out, null);
+        }
+    }
+
+    /**
+     * Parse an admitted document to plain text. file is where the document is stored, or null when it is only in memory.
+     * When pageOffsets is given, the text offset at which each page starts is added to it.
+     */
+    private Map<String, Object> parseText(InputStream stream, File file, String filename, AdmissionController.Permit permit,
+                                          Writer out, List<Integer> pageOffsets) throws IOException, TikaException, SAXException {
+        // Prepare metadata
+        String resourceName = new File(filename).getName();
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, resourceName);
+
+        // Use BodyContentHandler for text output
+        CountingWriter counter = new CountingWriter(permit.guard(out));
+        ContentHandler handler = new BodyContentHandler(counter);
+        if (pageOffsets != null) {
+            handler = new PageOffsetHandler(handler, counter, pageOffsets);
+        }
+
+        // Parse the document
+        ParseContext context = parsers.newContext();
+        try {
+            if (file == null || !parsePdfInParallel(file, stream, handler, metadata)) {
+                parsers.parse(resourceName, stream, handler, metadata, context);
+            }
+        } catch (IOException | SAXException | TikaException e) {
+            permit.rethrowIfAborted(e);
+            throw e;
+        }
+        counter.flush();
+
+        // Build result
+        Map<String, Object> result = new HashMap<>();
+        result.put("filename", filename);
+        result.put("contentType", metadata.get(Metadata.CONTENT_TYPE));
+        result.put("title", metadata.get(TikaCoreProperties.TITLE));
+        result.put("author", metadata.get(TikaCoreProperties.CREATOR));
+        result.put("textLength", counter.getCount());
+
+        return result;
+    }
+
+    /**
+     * Extract a document received with the request instead of read from the files directory, writing its
+     * HTML or plain text to out as it is parsed. The result has the same fields as streamHtml or streamText;
+     * uploads are not cached. With forked workers the document goes to the worker inline, or as the path of
+     * its spill file.
+     */
+    public Map<String, Object> extractUpload(UploadedDocument document, boolean html, Writer out)
+            throws IOException, TikaException, SAXException {
+        ExtractionTimings.target(document.getName());
+        return measure(html ? "html" : "text", document.getSize(), () -> parseUpload(document, html, out));
+    }
+
+    private Map<String, Object> parseUpload(UploadedDocument document, boolean html, Writer out)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            Map<String, Object> request = new HashMap<>();
+            request.put("op", "upload");
+            request.put("filename", document.getName());
+            request.put("html", html);
+            if (document.getFile() != null) {
+                request.put("path", document.getFile().getAbsolutePath());
+            } else {
+                request.put("content", Base64.getEncoder().encodeToString(document.getBytes()));
+            }
+            Map<String, Object> result = executeForked(document.getName(), document.getSize(), request);
+            out.write((String) result.remove(html ? "html" : "text"));
+            return result;
+        }
+
+        try (AdmissionController.Permit permit = admit(document.getName(), document.getSize());
+             InputStream stream = document.openStream()) {
+            return html
+                    ? parseHtml(stream, document.getFile(), document.getName(), document.getSize(), permit, out)
+                    : parseText(stream, document.getFile(), document.getName(), permit, out, null);
+        }
+    }
+
+    /**
+     * Extract a PDF with enough pages on the parallel page extractor, with the same markup as a page range
+     * request. Returns false, having consumed nothing from stream, when the document is parsed normally.
+     * Only files of at least pdf.parallel.min.bytes are loaded to count their pages, since a document
+     * that is not split is then loaded again by Tika.
+     */
+    private boolean parsePdfInParallel(File file, InputStream stream, ContentHandler handler, Metadata metadata)
+            throws IOException, SAXException {
+        if (!parallelPdf.mayBeSplit(file.length()) || !ParserRegistry.isPdf(stream)) {
+            return false;
+        }
+        int pages;
+        try (PDDocument document = PdfPageExtractor.load(file)) {
+            pages = document.getNumberOfPages();
+            if (!parallelPdf.shouldSplit(pages)) {
+                return false;
+            }
+            readPdfMetadata(document, metadata);
+        } catch (IOException e) {
+            // Encrypted or damaged: Tika reports these the way a normal parse would
+            return false;
+        }
+        parallelPdf.extract(file, 1, pages, handler, metadata);
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Parse {
+        Map<String, Object> run() throws IOException, TikaException, SAXException;
+    }
+
+    /**
+     * Run a parse and record its latency, the document size and the characters it produced under the
+     * operation and the detected MIME type. Cache hits never get here, so the timings are real parses.
+     * The parse is also the parse phase of the request's ExtractionTimings.
+     */
+    private Map<String, Object> measure(String operation, long size, Parse parse) throws IOException, TikaException, SAXException {
+        long start = System.nanoTime();
+        Map<String, Object> result;
+        // Parse throws more than one checked exception, which ExtractionTimings.time cannot pass through
+        ExtractionTimings.Phase phase = ExtractionTimings.phase("parse");
+        try {
+            result = parse.run();
+        } finally {
+            phase.close();
+        }
+        Object contentType = result.get("contentType");
+        if (contentType == null && result.get("metadata") instanceof Map<?, ?> metadata) {
+            contentType = metadata.get(Metadata.CONTENT_TYPE);
+        }
+        Object length = result.containsKey("htmlLength") ? result.get("htmlLength") : result.get("textLength");
+        metrics.recordParse(operation, (String) contentType, System.nanoTime() - start, size,
+                length instanceof Number number ? number.longValue() : 0);
+        return result;
+    }
+
+    /**
+     * Run a parse in a forked worker. Admission still happens here, so the worker pool sees
+     * the same concurrency limit and an expired permit kills the worker that is parsing.
+     */
+    private Map<String, Object> executeForked(File file, Map<String, Object> request) throws IOException {
+        return executeForked(file.getName(), file.length(), request);
+    }
+
+    private Map<String, Object> executeForked(String name, long size, Map<String, Object> request) throws IOException {
+        try (AdmissionController.Permit permit = admit(name, size)) {
             try {
-                String mimeType = tika.detect(file);
-                info.put("mimeType", mimeType);
+                return workers.execute(request);
             } catch (IOException e) {
-                info.put("mimeType", "unknown");
+                permit.rethrowIfAborted(e);
+                throw e;
             }
+        }
+    }
+
+    private AdmissionController.Permit admit(File file) throws IOException {
+        return admit(file.getName(), file.length());
+    }
+
+    /**
+     * Admission, timed as the admission phase of the request: the wait for a slot shows up there
+     */
+    private AdmissionController.Permit admit(String name, long size) throws IOException {
+        return ExtractionTimings.time("admission", () -> admission.admit(name, size));
+    }
 
-            fileInfo.put(file.getName(), info);
+    /**
+     * Cache key of a file in the given output mode, or null when the cache is disabled. Computing it hashes
+     * the file, so it is timed as io.
+     */
+    private String cacheKey(File file, String mode) throws IOException {
+        if (!cache.isEnabled()) {
+            return null;
         }
+        return ExtractionTimings.time("io", () -> cache.keyFor(file, mode));
+    }
 
-        return Map.of(
-                "files", fileInfo,
-                "count", files.length,
-                "path", directory.getAbsolutePath()
-        );
+    private Map<String, Object> cacheGet(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        return ExtractionTimings.time("io", () -> cache.get(cacheKey));
+    }
+
+    /**
+     * Copy of an html or metadata result for the cache. Entries are keyed by content only, so the fields
+     * that belong to the file the content was read from are left out; withFileFields adds them back.
+     */
+    private static Map<String, Object> cacheEntry(Map<String, Object> result) {
+        Map<String, Object> entry = new HashMap<>(result);
+        entry.remove("filename");
+        entry.remove("fileSize");
+        entry.remove("path");
+        if (entry.get("metadata") instanceof Map<?, ?> metadata) {
+            Map<Object, Object> fields = new HashMap<>(metadata);
+            fields.remove(TikaCoreProperties.RESOURCE_NAME_KEY);
+            entry.put("metadata", fields);
+        }
+        return entry;
     }
 
     /**
-     * Get detailed metadata about a file
+     * Add the fields of the requested file to a cached html or metadata result
+     */
+    private static Map<String, Object> withFileFields(Map<String, Object> cached, File file, String filename) {
+        cached.put("filename", filename);
+        cached.put("fileSize", file.length());
+        if (cached.get("metadata") instanceof Map<?, ?> metadata) {
+            // The cache hands out shallow copies, so the nested map is copied before it is changed
+            Map<Object, Object> fields = new HashMap<>(metadata);
+            fields.put(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+            cached.put("metadata", fields);
+        }
+        return cached;
+    }
+
+    /**
+     * Key identifying a rendering of a file: content hash, size and the given mode, as for the cache.
+     * Hashes are memoized per path, size and mtime, so the key of a known file costs a stat.
+     */
+    public String resultKey(String filename, String mode) throws IOException {
+        File file = resolveReadableFile(filename);
+        return ExtractionTimings.time("io", () -> cache.keyFor(file, mode));
+    }
+
+    /**
+     * Resolve a file name or relative path (for example "reports/2024/q1.pdf") inside the files directory.
+     * Absolute paths and paths that lead outside the directory, through ".." or a symbolic link, are rejected.
+     */
+    static File resolveFile(String filename) throws IOException {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("Filename is required");
+        }
+        Path base = Path.of(FILES_DIRECTORY).toAbsolutePath().normalize();
+        Path path;
+        try {
+            path = base.resolve(filename).normalize();
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("Invalid file path: " + filename);
+        }
+        if (!path.startsWith(base) || path.equals(base)) {
+            throw new IllegalArgumentException("Path is outside the files directory: " + filename);
+        }
+        if (Files.exists(path) && !path.toRealPath().startsWith(base.toRealPath())) {
+            throw new IllegalArgumentException("Path is outside the files directory: " + filename);
+        }
+        return path.toFile();
+    }
+
+    private File resolveReadableFile(String filename) throws IOException {
+        ExtractionTimings.target(filename);
+        return ExtractionTimings.time("io", () -> {
+            File file = resolveFile(filename);
+
+            if (!file.exists()) {
+                throw new IOException("File not found: " + filename);
+            }
+
+            if (!file.canRead()) {
+                throw new IOException("Cannot read file: " + filename);
+            }
+
+            return file;
+        });
+    }
+
+    /**
+     * List all files available for extraction
+     */
+    public Map<String, Object> listAvailableFiles() throws IOException {
+        return listAvailableFiles(null, null, null, false, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * List one page of the files available for extraction, served from the shared file index.
+     * Files in subdirectories are listed by relative path ("reports/2024/q1.pdf"); while the initial scan
+     * of the tree is running the listing holds the files found so far and indexComplete is false.
+     * prefix filters by relative path and mimeType by MIME type prefix (for example "image/");
+     * sort is name (default), size or lastModified. A limit of 0 or less uses files.list.page.size.
+     */
+    public Map<String, Object> listAvailableFiles(String prefix, String mimeType, String sort, boolean descending,
+                                                  int offset, int limit) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        if (limit <= 0) {
+            limit = ConfigLoader.getIntProperty("files.list.page.size", 500);
+        }
+
+        FileIndex index = FileIndex.getShared();
+        List<FileIndex.Entry> matches = index.query(prefix, mimeType, sort, descending);
+        int end = (int) Math.min(matches.size(), (long) offset + limit);
+
+        Map<String, Object> fileInfo = new LinkedHashMap<>();
+        for (FileIndex.Entry entry : matches.subList(Math.min(offset, end), end)) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("size", entry.size());
+            info.put("lastModified", entry.lastModified());
+            info.put("canRead", entry.canRead());
+            info.put("mimeType", entry.mimeType());
+            if (entry.sha256() != null) {
+                info.put("sha256", entry.sha256());
+            }
+            fileInfo.put(entry.name(), info);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("files", fileInfo);
+        result.put("count", fileInfo.size());
+        result.put("total", matches.size());
+        result.put("offset", offset);
+        result.put("hasMore", end < matches.size());
+        result.put("nextOffset", end < matches.size() ? end : null);
+        result.put("path", index.getDirectory().getAbsolutePath());
+        result.put("indexComplete", index.isComplete());
+        if (matches.isEmpty()) {
+            result.put("message", "No files found in " + FILES_DIRECTORY);
+        }
+        return result;
+    }
+
+    /**
+     * Relative paths of the files in the files directory tree matching a glob pattern, sorted.
+     * "*.pdf" matches the top level only, "**&#47;*.pdf" any subdirectory and "reports/**" one subtree.
+     */
+    public List<String> findFiles(String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        FileIndex index = FileIndex.getShared();
+        try {
+            // A batch must not silently miss files the initial scan has not reached yet
+            index.awaitComplete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the file index", e);
+        }
+        List<String> names = new ArrayList<>();
+        for (FileIndex.Entry entry : index.query(null, null, null, false)) {
+            if (matcher.matches(Path.of(entry.name()))) {
+                names.add(entry.name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get detailed metadata about a file without extracting its body
      */
     public Map<String, Object> getFileMetadata(String filename) throws IOException, TikaException, SAXException {
-        File file = new File(FILES_DIRECTORY, filename);
+        return getFileMetadata(filename, false);
+    }
+
+    /**
+     * Get detailed metadata about a file.
+     * The default metadata-only mode reads the document info, XMP and trailer of PDFs directly with PDFBox
+     * and stops other parsers as soon as body content starts; fullParse runs the complete parse instead.
+     * Results are cached per mode like extracted content.
+     */
+    public Map<String, Object> getFileMetadata(String filename, boolean fullParse) throws IOException, TikaException, SAXException {
+        ExtractionTimings.target(filename);
+        File file = resolveFile(filename);
 
         if (!file.exists()) {
             throw new IOException("File not found: " + filename);
         }
 
-        try (InputStream fileStream = new FileInputStream(file);
-             InputStream stream = new BufferedInputStream(fileStream)) {
-            Metadata metadata = new Metadata();
-            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
+        String cacheKey = cacheKey(file, fullParse ? "metadata-full" : "metadata");
+        Map<String, Object> cached = cacheGet(cacheKey);
+        if (cached != null) {
+            withFileFields(cached, file, filename).put("path", file.getAbsolutePath());
+            return cached;
+        }
+
+        Map<String, Object> result = measure("metadata", file.length(), () -> readFileMetadata(file, filename, fullParse));
+        if (cacheKey != null) {
+            cache.put(cacheKey, cacheEntry(result));
+        }
+        return result;
+    }
+
+    private Map<String, Object> readFileMetadata(File file, String filename, boolean fullParse)
+            throws IOException, TikaException, SAXException {
+        if (workers != null) {
+            return executeForked(file, Map.of("op", "metadata", "filename", filename, "fullParse", fullParse));
+        }
 
-            // Parse to extract metadata
-            BodyContentHandler handler = new BodyContentHandler(-1);
-            ParseContext context = new ParseContext();
-            parser.parse(stream, handler, metadata, context);
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getName());
 
-            // Convert metadata to map
-            Map<String, String> metadataMap = new HashMap<>();
-            for (String name : metadata.names()) {
-                metadataMap.put(name, metadata.get(name));
+        try (AdmissionController.Permit permit = admit(file)) {
+            try {
+                if (fullParse) {
+                    parseFullMetadata(file, metadata, permit);
+                } else {
+                    parseMetadataOnly(file, metadata);
+                }
+            } catch (IOException | SAXException | TikaException e) {
+                permit.rethrowIfAborted(e);
+                throw e;
             }
+        }
 
-            return Map.of(
-                    "filename", filename,
-                    "metadata", metadataMap,
-                    "fileSize", file.length(),
-                    "path", file.getAbsolutePath()
-            );
+        // Convert metadata to map
+        Map<String, String> metadataMap = new HashMap<>();
+        for (String name : metadata.names()) {
+            metadataMap.put(name, metadata.get(name));
         }
+
+        return Map.of(
+                "filename", filename,
+                "metadata", metadataMap,
+                "fileSize", file.length(),
+                "path", file.getAbsolutePath()
+        );
     }
 
+    private void parseFullMetadata(File file, Metadata metadata, AdmissionController.Permit permit) throws IOException, TikaException, SAXException {
+        try (InputStream stream = TikaInputStream.get(file.toPath())) {
+            // Parse to extract metadata; the body is discarded but still counts against the output limit
+            BodyContentHandler handler = new BodyContentHandler(permit.guard(Writer.nullWriter()));
+            ParseContext context = parsers.newContext();
+            parsers.parse(file.getName(), stream, handler, metadata, context);
+        }
+    }
 
-    // New method to enhance HTML with basic CSS (for better readability)
-    private String enhanceHtml(String rawHtml) {
-        String css = """
-            <style>
-                body { font-family: Arial, sans-serif; line-height: 1.6; margin: 20px; }
-                h1, h2, h3 { color: #333; }
-                p { margin-bottom: 10px; }
-                table { border-collapse: collapse; width: 100%; }
-                th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }
-                img { max-width: 100%; height: auto; }
-            </style>
-            """;
-        // Inject CSS into <head> if present, or add one
-        if (rawHtml.contains("<head>")) {
-            return rawHtml.replace("<head>", "<head>" + css);
-        } else {
-            return rawHtml.replace("<html>", "<html><head>" + css + "</head>");
+    private void parseMetadataOnly(File file, Metadata metadata) throws IOException, TikaException, SAXException {
+        MediaType mediaType;
+        try (InputStream stream = TikaInputStream.get(file.toPath())) {
+            mediaType = parsers.detect(file.getName(), stream, metadata);
+        }
+
+        if (ParserRegistry.PDF.equals(mediaType)) {
+            try {
+                readPdfMetadata(file, metadata);
+                return;
+            } catch (IOException e) {
+                // Encrypted or damaged PDFs: let Tika try, it reports the same errors as a full parse would
+                System.err.println("PDF metadata fast path failed for " + file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        try (InputStream stream = TikaInputStream.get(file.toPath())) {
+            // A zero write limit aborts the parse on the first body character; document
+            // properties (OOXML core/app parts, the RTF info group) are read before that point
+            BodyContentHandler handler = new BodyContentHandler(0);
+            ParseContext context = parsers.newContext();
+            context.set(Parser.class, new EmptyParser());
+            parsers.parse(file.getName(), stream, handler, metadata, context);
+        } catch (SAXException | TikaException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Read PDF metadata from the trailer, document info dictionary and catalog only.
+     * PDFBox resolves objects lazily, so page content streams are never parsed.
+     */
+    private void readPdfMetadata(File file, Metadata metadata) throws IOException {
+        try (PDDocument document = PdfPageExtractor.load(file)) {
+            readPdfMetadata(document, metadata);
+        }
+    }
+
+    private void readPdfMetadata(PDDocument document, Metadata metadata) {
+        metadata.set(Metadata.CONTENT_TYPE, "application/pdf");
+        metadata.set(PDF.PDF_VERSION, Float.toString(document.getVersion()));
+        metadata.set(PDF.IS_ENCRYPTED, Boolean.toString(document.isEncrypted()));
+        metadata.set(PagedText.N_PAGES, document.getNumberOfPages());
+
+        PDDocumentInformation info = document.getDocumentInformation();
+        setIfPresent(metadata, info.getTitle(), TikaCoreProperties.TITLE, PDF.DOC_INFO_TITLE);
+        setIfPresent(metadata, info.getAuthor(), TikaCoreProperties.CREATOR, PDF.DOC_INFO_CREATOR);
+        setIfPresent(metadata, info.getCreator(), TikaCoreProperties.CREATOR_TOOL, PDF.DOC_INFO_CREATOR_TOOL);
+        setIfPresent(metadata, info.getProducer(), PDF.PRODUCER, PDF.DOC_INFO_PRODUCER);
+        setIfPresent(metadata, info.getSubject(), TikaCoreProperties.SUBJECT, PDF.DOC_INFO_SUBJECT);
+        setIfPresent(metadata, info.getKeywords(), PDF.DOC_INFO_KEY_WORDS);
+        setIfPresent(metadata, info.getTrapped(), PDF.DOC_INFO_TRAPPED);
+        setIfPresent(metadata, info.getCreationDate(), TikaCoreProperties.CREATED, PDF.DOC_INFO_CREATED);
+        setIfPresent(metadata, info.getModificationDate(), TikaCoreProperties.MODIFIED, PDF.DOC_INFO_MODIFICATION_DATE);
+
+        for (String key : info.getMetadataKeys()) {
+            if (!STANDARD_INFO_KEYS.contains(key)) {
+                String value = info.getCustomMetadataValue(key);
+                if (value != null) {
+                    metadata.set(PDF.PDF_DOC_INFO_CUSTOM_PREFIX + key, value);
+                }
+            }
+        }
+
+        metadata.set(PDF.HAS_XMP, Boolean.toString(document.getDocumentCatalog().getMetadata() != null));
+    }
+
+    private static void setIfPresent(Metadata metadata, String value, Property... properties) {
+        if (value != null && !value.isBlank()) {
+            for (Property property : properties) {
+                metadata.set(property, value);
+            }
+        }
+    }
+
+    private static void setIfPresent(Metadata metadata, Calendar value, Property... properties) {
+        if (value != null) {
+            for (Property property : properties) {
+                metadata.set(property, value);
+            }
+        }
+    }
+
+    /**
+     * Writer that drops the first skip characters and keeps at most limit after them
+     */
+    private static class SkippingWriter extends Writer {
+        private final Writer out;
+        private long skip;
+        private long remaining;
+
+        SkippingWriter(Writer out, long skip, long limit) {
+            this.out = out;
+            this.skip = skip;
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (skip > 0) {
+                int skipped = (int) Math.min(skip, len);
+                skip -= skipped;
+                off += skipped;
+                len -= skipped;
+            }
+            int n = (int) Math.min(remaining, len);
+            if (n > 0) {
+                out.write(cbuf, off, n);
+                remaining -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Records the text offset at which each {@code <div class="page">} starts
+     */
+    private static class PageOffsetHandler extends ContentHandlerDecorator {
+        private final CountingWriter counter;
+        private final List<Integer> pageOffsets;
+
+        PageOffsetHandler(ContentHandler handler, CountingWriter counter, List<Integer> pageOffsets) {
+            super(handler);
+            this.counter = counter;
+            this.pageOffsets = pageOffsets;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+            if ("div".equals(localName) && "page".equals(atts.getValue("class"))) {
+                pageOffsets.add((int) counter.getCount());
+            }
+            super.startElement(uri, localName, name, atts);
+        }
+    }
+
+    /**
+     * Writer decorator that keeps a copy of the characters passing through it, as long as they stay
+     * within limit; beyond it the copy is dropped
+     */
+    private static class CapturingWriter extends FilterWriter {
+        private final long limit;
+        private StringBuilder copy = new StringBuilder();
+
+        CapturingWriter(Writer out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            if (reserve(1)) {
+                copy.append((char) c);
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            if (reserve(len)) {
+                copy.append(cbuf, off, len);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            if (reserve(len)) {
+                copy.append(str, off, off + len);
+            }
+        }
+
+        private boolean reserve(int len) {
+            if (copy != null && copy.length() + (long) len > limit) {
+                copy = null;
+            }
+            return copy != null;
+        }
+
+        /**
+         * Everything written, or null when it exceeded the limit
+         */
+        String getCapture() {
+            return copy != null ? copy.toString() : null;
+        }
+    }
+
+    /**
+     * Writer decorator that counts the characters passing through it
+     */
+    private static class CountingWriter extends FilterWriter {
+        private long count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            super.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            super.write(str, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.Service;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.config.ConfigLoader;
+import org.apache.tika.io.TikaInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A document received with a request (MCP base64 content, an HTTP body or multipart part) instead of
+ * read from the files directory. Documents up to upload.memory.threshold bytes stay in memory and are
+ * parsed from there; larger ones spill to a temporary file that is deleted on close. The size limit of
+ * files.max.size is enforced while reading, so an oversized body is never buffered completely.
+ */
+public class UploadedDocument implements AutoCloseable {
+
+    private static final int MEMORY_THRESHOLD = ConfigLoader.getIntProperty("upload.memory.threshold", 8 * 1024 * 1024);
+    private static final String TEMP_DIRECTORY = ConfigLoader.getProperty("upload.temp.directory", "");
+    private static final long MAX_SIZE = ConfigLoader.getLongProperty("files.max.size", 52_428_800);
+
+    private final String name;
+    private final byte[] bytes;
+    private final File file;
+    private final long size;
+    private final boolean temporary;
+
+    private UploadedDocument(String name, byte[] bytes, File file, long size, boolean temporary) {
+        this.name = name;
+        this.bytes = bytes;
+        this.file = file;
+        this.size = size;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Read a document with the configured memory threshold and size limit
+     */
+    public static UploadedDocument read(String name, InputStream in) throws IOException {
+        return read(name, in, MEMORY_THRESHOLD, MAX_SIZE);
+    }
+
+    /**
+     * Read a document, keeping it in memory up to memoryThreshold bytes and spilling it to a temporary
+     * file beyond that. More than maxSize bytes (0 or less = no limit) is rejected as FILE_TOO_LARGE.
+     */
+    public static UploadedDocument read(String name, InputStream in, int memoryThreshold, long maxSize) throws IOException {
+        String baseName = baseName(name);
+        int threshold = Math.max(0, Math.min(memoryThreshold, Integer.MAX_VALUE - 16));
+        byte[] head = in.readNBytes(threshold + 1);
+        checkSize(baseName, head.length, maxSize);
+        if (head.length <= threshold) {
+            return new UploadedDocument(baseName, head, null, head.length, false);
+        }
+
+        Path temp = Files.createTempFile(getTempDirectory(), "upload-", suffix(baseName));
+        long size = head.length;
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            out.write(head);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                size += n;
+                checkSize(baseName, size, maxSize);
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new UploadedDocument(baseName, null, temp.toFile(), size, true);
+    }
+
+    /**
+     * A document that is already in memory, such as decoded MCP content
+     */
+    public static UploadedDocument of(String name, byte[] bytes) {
+        return new UploadedDocument(baseName(name), bytes, null, bytes.length, false);
+    }
+
+    /**
+     * A document spilled by another process (the server, for a forked worker); the file is not deleted on close
+     */
+    static UploadedDocument ofFile(String name, File file) {
+        return new UploadedDocument(baseName(name), null, file, file.length(), false);
+    }
+
+    public static int getMemoryThreshold() {
+        return MEMORY_THRESHOLD;
+    }
+
+    public static long getMaxSize() {
+        return MAX_SIZE;
+    }
+
+    /**
+     * Where large uploads spill: upload.temp.directory, or the system temporary directory when it is empty
+     */
+    public static Path getTempDirectory() throws IOException {
+        return TEMP_DIRECTORY.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"))
+                : Files.createDirectories(Path.of(TEMP_DIRECTORY));
+    }
+
+    private static void checkSize(String name, long size, long maxSize) throws ExtractionRejectedException {
+        if (maxSize > 0 && size > maxSize) {
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.FILE_TOO_LARGE,
+                    String.format("Uploaded document %s is larger than the limit of %d bytes", name, maxSize));
+        }
+    }
+
+    // Only the file name is kept: it selects the parser and is never used as a path
+    private static String baseName(String name) {
+        if (name == null || name.isBlank()) {
+            return "document";
+        }
+        String baseName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1).trim();
+        return baseName.isEmpty() ? "document" : baseName;
+    }
+
+    private static String suffix(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && name.length() - dot <= 10 ? name.substring(dot) : ".tmp";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * The file holding the document, or null while it is in memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The document bytes, or null when it spilled to a file
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * A new stream over the document; it supports mark/reset, and a spilled document is read from its file
+     */
+    public InputStream openStream() throws IOException {
+        return bytes != null ? new ByteArrayInputStream(bytes) : TikaInputStream.get(file.toPath());
+    }
+
+    @Override
+    public void close() {
+        if (temporary && file != null && !file.delete() && file.exists()) {
+            System.err.println("Could not delete upload spill file " + file);
+        }
+    }
+}
@@ -39,6 +39,18 @@ public class ConfigLoader {
         return defaultValue;
     }
 
+    public static long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid long value for property: " + key);
+            }
+        }
+        return defaultValue;
+    }
+
     public static boolean getBooleanProperty(String key, boolean defaultValue) {
         String value = properties.getProperty(key);
         if (value != null) {
@@ -0,0 +1,95 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.tools;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Writer that cuts everything written to it into MCP text content blocks of a fixed size.
+ * The extracted content is held once, as the blocks themselves, instead of being copied
+ * through escaping and formatting passes; a callback fires each time a block is completed.
+ * A block can end up to one character short so that surrogate pairs are never split.
+ */
+class ContentBlockWriter extends Writer {
+
+    private final int blockSize;
+    private final IntConsumer onBlock;
+    private final List<McpSchema.Content> blocks = new ArrayList<>();
+    private StringBuilder current;
+    private long length;
+
+    ContentBlockWriter(int blockSize, IntConsumer onBlock) {
+        this.blockSize = blockSize;
+        this.onBlock = onBlock;
+        this.current = new StringBuilder(blockSize);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        length += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - current.length());
+            current.append(cbuf, off, n);
+            off += n;
+            len -= n;
+            if (current.length() == blockSize) {
+                emit(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        length += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - current.length());
+            current.append(str, off, off + n);
+            off += n;
+            len -= n;
+            if (current.length() == blockSize) {
+                emit(false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Emits the trailing partial block
+     */
+    @Override
+    public void close() {
+        if (current.length() > 0) {
+            emit(true);
+        }
+    }
+
+    List<McpSchema.Content> getBlocks() {
+        return blocks;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Completes the current block. A high surrogate at its end moves to the next block with its low
+     * surrogate, so no block holds half a character.
+     */
+    private void emit(boolean last) {
+        int end = current.length();
+        if (!last && end > 1 && Character.isHighSurrogate(current.charAt(end - 1))) {
+            end--;
+        }
+        blocks.add(new McpSchema.TextContent(current.substring(0, end)));
+        StringBuilder next = new StringBuilder(blockSize);
+        next.append(current, end, current.length());
+        current = next;
+        onBlock.accept(blocks.size());
+    }
+}
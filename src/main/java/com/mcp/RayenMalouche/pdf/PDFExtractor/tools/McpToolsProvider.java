@@ -1,19 +1,58 @@
 package com.mcp.RayenMalouche.pdf.PDFExtractor.tools;
 
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.BatchExtractor;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.CompactContentHandler;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionJobs;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionRejectedException;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionTimings;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.SearchIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ServerMetrics;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.UploadedDocument;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.JsonResponseWriter;
 import io.modelcontextprotocol.spec.McpSchema;
 import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.server.McpSyncServerExchange;
 
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class McpToolsProvider {
 
+    private static final int MIN_CHUNK_SIZE = 1024;
+    private static final String JOB_ID_SCHEMA = """
+            {
+              "type": "object",
+              "properties": {
+                "jobId": {
+                  "type": "string",
+                  "description": "Id returned by submit-extraction"
+                }
+              },
+              "required": ["jobId"]
+            }
+            """;
+
     private final TikaExtractorService extractorService;
+    private final BatchExtractor batchExtractor;
+    private final ServerMetrics metrics = ServerMetrics.getShared();
 
     public McpToolsProvider() {
-        this.extractorService = new TikaExtractorService();
+        this(TikaExtractorService.getShared());
+    }
+
+    public McpToolsProvider(TikaExtractorService extractorService) {
+        this.extractorService = extractorService;
+        this.batchExtractor = new BatchExtractor(extractorService);
     }
 
     public List<McpServerFeatures.SyncToolSpecification> getAllTools() {
@@ -22,54 +61,153 @@ public class McpToolsProvider {
         tools.add(createExtractToHtmlTool());
         tools.add(createExtractTextTool());
         tools.add(createListFilesTool());
+        tools.add(createSearchDocumentsTool());
         tools.add(createGetMetadataTool());
+        tools.add(createExtractPagesTool());
+        tools.add(createExtractBatchTool());
+        tools.add(createSubmitExtractionTool());
+        tools.add(createExtractionStatusTool());
+        tools.add(createExtractionResultTool());
+        tools.add(createCancelExtractionTool());
+
+        return tools.stream().map(this::timed).toList();
+    }
+
+    /**
+     * The tool with its calls counted and timed per outcome (see /api/metrics), and an ExtractionTimings
+     * recorder bound for the duration of each call so slow calls are logged with their phases
+     */
+    private McpServerFeatures.SyncToolSpecification timed(McpServerFeatures.SyncToolSpecification tool) {
+        String name = tool.tool().name();
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(tool.tool())
+                .callHandler((exchange, request) -> {
+                    long start = System.nanoTime();
+                    ExtractionTimings timings = ExtractionTimings.start(name);
+                    String outcome = "error";
+                    try {
+                        McpSchema.CallToolResult result = tool.callHandler().apply(exchange, request);
+                        if (!Boolean.TRUE.equals(result.isError())) {
+                            outcome = "success";
+                        }
+                        return result;
+                    } finally {
+                        timings.finish(outcome);
+                        metrics.recordToolCall(name, outcome, System.nanoTime() - start);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Render a successful tool response, timed as the serialize phase. With "timings": true in the
+     * arguments the response ends with the phase breakdown of the call (serialization counted up to there).
+     */
+    private static String respond(Map<String, Object> params, JsonResponseWriter.Fields fields) throws IOException {
+        return ExtractionTimings.time("serialize", () -> JsonResponseWriter.object(json -> {
+            fields.write(json);
+            ExtractionTimings timings = ExtractionTimings.current();
+            if (timings != null && Boolean.TRUE.equals(params.get("timings"))) {
+                json.writeObjectField("timings", timings.snapshot());
+            }
+        }));
+    }
+
+    /**
+     * The same tools for an async server: each call runs on the given executor (virtual threads or a
+     * bounded parse pool) instead of blocking the transport thread that received the request.
+     */
+    public List<McpServerFeatures.AsyncToolSpecification> getAllAsyncTools(Executor executor) {
+        Scheduler scheduler = Schedulers.fromExecutor(executor);
+        List<McpServerFeatures.AsyncToolSpecification> tools = new ArrayList<>();
+
+        for (McpServerFeatures.SyncToolSpecification syncTool : getAllTools()) {
+            tools.add(McpServerFeatures.AsyncToolSpecification.builder()
+                    .tool(syncTool.tool())
+                    .callHandler((exchange, request) -> Mono
+                            .fromCallable(() -> syncTool.callHandler().apply(new McpSyncServerExchange(exchange), request))
+                            .subscribeOn(scheduler))
+                    .build());
+        }
 
         return tools;
     }
 
     private McpServerFeatures.SyncToolSpecification createExtractToHtmlTool() {
-        return new McpServerFeatures.SyncToolSpecification(
-                new McpSchema.Tool(
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
                         "extract-to-html",
-                        "Extract content from a file in the files-to-extract directory and convert it to HTML format",
+                        "Extract content from a file in the files-to-extract directory, or from document bytes passed in content, and convert it to HTML format",
                         """
                         {
                           "type": "object",
                           "properties": {
                             "filename": {
                               "type": "string",
-                              "description": "Name of the file to extract (must be in files-to-extract directory)"
+                              "description": "Name or relative path (e.g. reports/q1.pdf) of the file to extract (must be in files-to-extract directory); with content, the document's file name"
+                            },
+                            "content": {
+                              "type": "string",
+                              "description": "Base64-encoded document to extract instead of reading filename from disk; its type is detected from the bytes and the extension of filename"
+                            },
+                            "chunkSize": {
+                              "type": "integer",
+                              "description": "Return the HTML as consecutive content blocks of this many characters, with progress notifications as they are extracted"
+                            },
+                            "maxTokens": {
+                              "type": "integer",
+                              "description": "Return a compact minimal HTML rendering (headings, paragraphs, list items; no styles or metadata) of at most about this many tokens (4 characters each): whitespace collapsed, repeated page headers and footers removed; pass nextCursor as cursor to continue"
+                            },
+                            "maxChars": {
+                              "type": "integer",
+                              "description": "Like maxTokens, as a number of characters"
+                            },
+                            "cursor": {
+                              "type": "string",
+                              "description": "nextCursor of a previous compact response, to fetch what follows it"
+                            },
+                            "timings": {
+                              "type": "boolean",
+                              "description": "Add a timings field with the time and allocations of each phase (io, admission, detect, parse, serialize)"
                             }
                           },
                           "required": ["filename"]
                         }
                         """
-                ),
-                (exchange, params) -> {
+                ))
+                .callHandler((exchange, request) -> {
                     try {
+                        Map<String, Object> params = request.arguments();
                         String filename = (String) params.get("filename");
 
                         if (filename == null || filename.trim().isEmpty()) {
                             return createErrorResult("Filename is required");
                         }
 
+                        if (params.get("content") instanceof String content) {
+                            return createUploadResult(params, filename, content, true);
+                        }
+
+                        if (params.get("maxTokens") instanceof Number || params.get("maxChars") instanceof Number) {
+                            return createCompactResult(filename, params, true);
+                        }
+
+                        if (params.get("chunkSize") instanceof Number chunkSize) {
+                            return createChunkedResult(exchange, request, filename, true, chunkSize.intValue());
+                        }
+
                         System.err.printf("Extracting file to HTML: %s%n", filename);
 
                         Map<String, Object> result = extractorService.extractToHtml(filename);
+                        String html = (String) result.get("html");
 
-                        String response = String.format("""
-                        {
-                            "status": "success",
-                            "filename": "%s",
-                            "contentType": "%s",
-                            "htmlLength": %d,
-                            "html": "%s"
-                        }""",
-                                escapeJson(filename),
-                                escapeJson((String) result.get("contentType")),
-                                ((String) result.get("html")).length(),
-                                escapeJson((String) result.get("html"))
-                        );
+                        String response = respond(params, json -> {
+                            json.writeStringField("status", "success");
+                            json.writeStringField("filename", filename);
+                            json.writeStringField("contentType", (String) result.get("contentType"));
+                            json.writeNumberField("htmlLength", html.length());
+                            json.writeStringField("html", html);
+                        });
 
                         return new McpSchema.CallToolResult(
                                 List.of(new McpSchema.TextContent(response)),
@@ -79,55 +217,99 @@ public class McpToolsProvider {
                     } catch (Exception e) {
                         System.err.println("ERROR in extract-to-html: " + e.getMessage());
                         e.printStackTrace(System.err);
-                        return createErrorResult(e.getMessage());
+                        return createErrorResult(e);
                     }
-                }
-        );
+                })
+                .build();
     }
 
     private McpServerFeatures.SyncToolSpecification createExtractTextTool() {
-        return new McpServerFeatures.SyncToolSpecification(
-                new McpSchema.Tool(
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
                         "extract-text",
-                        "Extract plain text content from a file in the files-to-extract directory",
+                        "Extract plain text content from a file in the files-to-extract directory, or from document bytes passed in content",
                         """
                         {
                           "type": "object",
                           "properties": {
                             "filename": {
                               "type": "string",
-                              "description": "Name of the file to extract text from"
+                              "description": "Name or relative path of the file to extract text from; with content, the document's file name"
+                            },
+                            "content": {
+                              "type": "string",
+                              "description": "Base64-encoded document to extract instead of reading filename from disk"
+                            },
+                            "chunkSize": {
+                              "type": "integer",
+                              "description": "Return the text as consecutive content blocks of this many characters, with progress notifications as they are extracted"
+                            },
+                            "maxTokens": {
+                              "type": "integer",
+                              "description": "Return a compact text of at most about this many tokens (4 characters each): whitespace collapsed, repeated page headers and footers removed; pass nextCursor as cursor to continue"
+                            },
+                            "maxChars": {
+                              "type": "integer",
+                              "description": "Like maxTokens, as a number of characters"
+                            },
+                            "cursor": {
+                              "type": "string",
+                              "description": "nextCursor of a previous compact response, to fetch what follows it"
+                            },
+                            "offset": {
+                              "type": "integer",
+                              "description": "Number of characters to skip before the returned text (default 0)"
+                            },
+                            "limit": {
+                              "type": "integer",
+                              "description": "Maximum number of characters to return; parsing stops once it is reached"
+                            },
+                            "timings": {
+                              "type": "boolean",
+                              "description": "Add a timings field with the time and allocations of each phase (io, admission, detect, parse, serialize)"
                             }
                           },
                           "required": ["filename"]
                         }
                         """
-                ),
-                (exchange, params) -> {
+                ))
+                .callHandler((exchange, request) -> {
                     try {
+                        Map<String, Object> params = request.arguments();
                         String filename = (String) params.get("filename");
 
                         if (filename == null || filename.trim().isEmpty()) {
                             return createErrorResult("Filename is required");
                         }
 
+                        if (params.get("content") instanceof String content) {
+                            return createUploadResult(params, filename, content, false);
+                        }
+
+                        if (params.get("maxTokens") instanceof Number || params.get("maxChars") instanceof Number) {
+                            return createCompactResult(filename, params, false);
+                        }
+
+                        if (params.get("chunkSize") instanceof Number chunkSize) {
+                            return createChunkedResult(exchange, request, filename, false, chunkSize.intValue());
+                        }
+
+                        if (params.get("offset") instanceof Number || params.get("limit") instanceof Number) {
+                            return createTextWindowResult(filename, params);
+                        }
+
                         System.err.printf("Extracting text from: %s%n", filename);
 
                         Map<String, Object> result = extractorService.extractText(filename);
+                        String text = (String) result.get("text");
 
-                        String response = String.format("""
-                        {
-                            "status": "success",
-                            "filename": "%s",
-                            "mediaType": "%s",
-                            "textLength": %d,
-                            "text": "%s"
-                        }""",
-                                escapeJson(filename),
-                                escapeJson((String) result.get("mediaType")),
-                                ((String) result.get("text")).length(),
-                                escapeJson((String) result.get("text"))
-                        );
+                        String response = respond(params, json -> {
+                            json.writeStringField("status", "success");
+                            json.writeStringField("filename", filename);
+                            json.writeStringField("contentType", (String) result.get("contentType"));
+                            json.writeNumberField("textLength", text.length());
+                            json.writeStringField("text", text);
+                        });
 
                         return new McpSchema.CallToolResult(
                                 List.of(new McpSchema.TextContent(response)),
@@ -136,21 +318,48 @@ public class McpToolsProvider {
 
                     } catch (Exception e) {
                         System.err.println("ERROR in extract-text: " + e.getMessage());
-                        return createErrorResult(e.getMessage());
+                        return createErrorResult(e);
                     }
-                }
-        );
+                })
+                .build();
     }
 
     private McpServerFeatures.SyncToolSpecification createListFilesTool() {
         return new McpServerFeatures.SyncToolSpecification(
                 new McpSchema.Tool(
                         "list-files",
-                        "List all files available in the files-to-extract directory",
+                        "List the files available in the files-to-extract directory tree by relative path, one page at a time",
                         """
                         {
                           "type": "object",
-                          "properties": {}
+                          "properties": {
+                            "prefix": {
+                              "type": "string",
+                              "description": "Only list files whose relative path starts with this prefix (e.g. reports/2024/)"
+                            },
+                            "mimeType": {
+                              "type": "string",
+                              "description": "Only list files whose MIME type starts with this value (for example application/pdf or image/)"
+                            },
+                            "sort": {
+                              "type": "string",
+                              "enum": ["name", "size", "lastModified"],
+                              "description": "Sort order (default name)"
+                            },
+                            "order": {
+                              "type": "string",
+                              "enum": ["asc", "desc"],
+                              "description": "Sort direction (default asc)"
+                            },
+                            "offset": {
+                              "type": "integer",
+                              "description": "Index of the first file to return; pass nextOffset from the previous page to continue"
+                            },
+                            "limit": {
+                              "type": "integer",
+                              "description": "Maximum number of files to return (default 500)"
+                            }
+                          }
                         }
                         """
                 ),
@@ -158,63 +367,128 @@ public class McpToolsProvider {
                     try {
                         System.err.println("Listing available files");
 
-                        Map<String, Object> result = extractorService.listAvailableFiles();
-
-                        // Convert result to JSON string
-                        StringBuilder json = new StringBuilder();
-                        json.append("{\n  \"status\": \"success\",\n");
-                        json.append("  \"count\": ").append(result.get("count")).append(",\n");
-                        json.append("  \"path\": \"").append(escapeJson(result.get("path").toString())).append("\",\n");
-                        json.append("  \"files\": ");
-
-                        // Serialize files map
-                        Map<String, Object> files = (Map<String, Object>) result.get("files");
-                        if (files.isEmpty()) {
-                            json.append("{}");
-                        } else {
-                            json.append("{\n");
-                            boolean first = true;
-                            for (Map.Entry<String, Object> entry : files.entrySet()) {
-                                if (!first) json.append(",\n");
-                                json.append("    \"").append(escapeJson(entry.getKey())).append("\": ");
-
-                                Map<String, Object> fileInfo = (Map<String, Object>) entry.getValue();
-                                json.append("{\n");
-                                json.append("      \"size\": ").append(fileInfo.get("size")).append(",\n");
-                                json.append("      \"mimeType\": \"").append(escapeJson(fileInfo.get("mimeType").toString())).append("\"\n");
-                                json.append("    }");
-                                first = false;
+                        Map<String, Object> result = extractorService.listAvailableFiles(
+                                (String) params.get("prefix"),
+                                (String) params.get("mimeType"),
+                                (String) params.get("sort"),
+                                "desc".equalsIgnoreCase((String) params.get("order")),
+                                params.get("offset") instanceof Number offset ? offset.intValue() : 0,
+                                params.get("limit") instanceof Number limit ? limit.intValue() : 0);
+
+                        String response = respond(params, json -> {
+                            json.writeStringField("status", "success");
+                            json.writeObjectField("count", result.get("count"));
+                            json.writeObjectField("total", result.get("total"));
+                            json.writeObjectField("offset", result.get("offset"));
+                            json.writeObjectField("hasMore", result.get("hasMore"));
+                            json.writeObjectField("nextOffset", result.get("nextOffset"));
+                            json.writeStringField("path", result.get("path").toString());
+                            json.writeObjectField("indexComplete", result.get("indexComplete"));
+                            json.writeObjectFieldStart("files");
+                            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result.get("files")).entrySet()) {
+                                Map<?, ?> fileInfo = (Map<?, ?>) entry.getValue();
+                                json.writeObjectFieldStart(entry.getKey().toString());
+                                json.writeObjectField("size", fileInfo.get("size"));
+                                json.writeObjectField("lastModified", fileInfo.get("lastModified"));
+                                json.writeStringField("mimeType", fileInfo.get("mimeType").toString());
+                                if (fileInfo.get("sha256") != null) {
+                                    json.writeObjectField("sha256", fileInfo.get("sha256"));
+                                }
+                                json.writeEndObject();
                             }
-                            json.append("\n  }");
-                        }
-
-                        json.append("\n}");
+                            json.writeEndObject();
+                        });
 
                         return new McpSchema.CallToolResult(
-                                List.of(new McpSchema.TextContent(json.toString())),
+                                List.of(new McpSchema.TextContent(response)),
                                 false
                         );
 
                     } catch (Exception e) {
                         System.err.println("ERROR in list-files: " + e.getMessage());
-                        return createErrorResult(e.getMessage());
+                        return createErrorResult(e);
                     }
                 }
         );
     }
 
+    private McpServerFeatures.SyncToolSpecification createSearchDocumentsTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "search-documents",
+                        "Full-text search over the files in the files-to-extract directory tree: returns the best matching files with snippets (and page numbers for PDFs) instead of their whole content",
+                        """
+                        {
+                          "type": "object",
+                          "properties": {
+                            "query": {
+                              "type": "string",
+                              "description": "Words to look for; files containing more of them, more often, rank higher"
+                            },
+                            "limit": {
+                              "type": "integer",
+                              "description": "Maximum number of files to return (default 10)"
+                            },
+                            "snippets": {
+                              "type": "integer",
+                              "description": "Maximum number of snippets per file (default 3)"
+                            },
+                            "prefix": {
+                              "type": "string",
+                              "description": "Only search files whose relative path starts with this prefix (e.g. reports/2024/)"
+                            },
+                            "timings": {
+                              "type": "boolean",
+                              "description": "Append the time spent in each phase of the call (default false)"
+                            }
+                          },
+                          "required": ["query"]
+                        }
+                        """
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        if (!SearchIndex.isEnabled()) {
+                            return createErrorResult("Search is disabled (search.enabled=false)");
+                        }
+                        String query = (String) params.get("query");
+                        System.err.println("Searching documents for: " + query);
+
+                        Map<String, Object> result = SearchIndex.getShared().search(query,
+                                params.get("limit") instanceof Number limit ? limit.intValue() : 10,
+                                (String) params.get("prefix"),
+                                params.get("snippets") instanceof Number snippets ? snippets.intValue() : 3);
+                        return createFieldsResult(params, result);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in search-documents: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
     private McpServerFeatures.SyncToolSpecification createGetMetadataTool() {
         return new McpServerFeatures.SyncToolSpecification(
                 new McpSchema.Tool(
                         "get-file-metadata",
-                        "Get detailed metadata information about a file",
+                        "Get detailed metadata information about a file without extracting its content",
                         """
                         {
                           "type": "object",
                           "properties": {
                             "filename": {
                               "type": "string",
-                              "description": "Name of the file to get metadata for"
+                              "description": "Name or relative path of the file to get metadata for"
+                            },
+                            "fullParse": {
+                              "type": "boolean",
+                              "description": "Parse the whole document to also collect content-derived metadata (slower, default false)"
+                            },
+                            "timings": {
+                              "type": "boolean",
+                              "description": "Add a timings field with the time and allocations of each phase (io, admission, detect, parse, serialize)"
                             }
                           },
                           "required": ["filename"]
@@ -229,62 +503,495 @@ public class McpToolsProvider {
                             return createErrorResult("Filename is required");
                         }
 
+                        boolean fullParse = Boolean.TRUE.equals(params.get("fullParse"));
+
                         System.err.printf("Getting metadata for: %s%n", filename);
 
-                        Map<String, Object> result = extractorService.getFileMetadata(filename);
-
-                        // Build JSON response with metadata
-                        StringBuilder json = new StringBuilder();
-                        json.append("{\n  \"status\": \"success\",\n");
-                        json.append("  \"filename\": \"").append(escapeJson(filename)).append("\",\n");
-                        json.append("  \"fileSize\": ").append(result.get("fileSize")).append(",\n");
-                        json.append("  \"metadata\": {\n");
-
-                        Map<String, String> metadata = (Map<String, String>) result.get("metadata");
-                        boolean first = true;
-                        for (Map.Entry<String, String> entry : metadata.entrySet()) {
-                            if (!first) json.append(",\n");
-                            json.append("    \"").append(escapeJson(entry.getKey())).append("\": \"");
-                            json.append(escapeJson(entry.getValue())).append("\"");
-                            first = false;
-                        }
+                        Map<String, Object> result = extractorService.getFileMetadata(filename, fullParse);
 
-                        json.append("\n  }\n}");
+                        String response = respond(params, json -> {
+                            json.writeStringField("status", "success");
+                            json.writeStringField("filename", filename);
+                            json.writeObjectField("fileSize", result.get("fileSize"));
+                            json.writeObjectField("metadata", result.get("metadata"));
+                        });
 
                         return new McpSchema.CallToolResult(
-                                List.of(new McpSchema.TextContent(json.toString())),
+                                List.of(new McpSchema.TextContent(response)),
                                 false
                         );
 
                     } catch (Exception e) {
                         System.err.println("ERROR in get-file-metadata: " + e.getMessage());
-                        return createErrorResult(e.getMessage());
+                        return createErrorResult(e);
                     }
                 }
         );
     }
 
-    private McpSchema.CallToolResult createErrorResult(String message) {
-        String response = String.format("""
-            {
-                "status": "error",
-                "message": "%s"
-            }""", escapeJson(message));
+    private McpServerFeatures.SyncToolSpecification createExtractPagesTool() {
+        return new McpServerFeatures.SyncToolSpecification(
+                new McpSchema.Tool(
+                        "extract-pages",
+                        "Extract a range of pages from a PDF in the files-to-extract directory, parsing only those pages",
+                        """
+                        {
+                          "type": "object",
+                          "properties": {
+                            "filename": {
+                              "type": "string",
+                              "description": "Name or relative path of the PDF file to extract pages from"
+                            },
+                            "startPage": {
+                              "type": "integer",
+                              "description": "First page to extract (1-based)"
+                            },
+                            "endPage": {
+                              "type": "integer",
+                              "description": "Last page to extract, inclusive (defaults to startPage)"
+                            },
+                            "format": {
+                              "type": "string",
+                              "enum": ["text", "html"],
+                              "description": "Output format (default text)"
+                            },
+                            "timings": {
+                              "type": "boolean",
+                              "description": "Add a timings field with the time and allocations of each phase (io, admission, detect, parse, serialize)"
+                            }
+                          },
+                          "required": ["filename", "startPage"]
+                        }
+                        """
+                ),
+                (exchange, params) -> {
+                    try {
+                        String filename = (String) params.get("filename");
+
+                        if (filename == null || filename.trim().isEmpty()) {
+                            return createErrorResult("Filename is required");
+                        }
+                        if (!(params.get("startPage") instanceof Number startPage)) {
+                            return createErrorResult("startPage is required");
+                        }
+                        int endPage = params.get("endPage") instanceof Number end ? end.intValue() : startPage.intValue();
+                        boolean html = "html".equalsIgnoreCase((String) params.get("format"));
+
+                        System.err.printf("Extracting pages %d-%d from: %s%n", startPage.intValue(), endPage, filename);
+
+                        Map<String, Object> result = extractorService.extractPages(filename, startPage.intValue(), endPage, html);
+                        String field = html ? "html" : "text";
+                        String content = (String) result.get(field);
+
+                        String response = respond(params, json -> {
+                            json.writeStringField("status", "success");
+                            json.writeStringField("filename", filename);
+                            json.writeStringField("contentType", (String) result.get("contentType"));
+                            json.writeObjectField("startPage", result.get("startPage"));
+                            json.writeObjectField("endPage", result.get("endPage"));
+                            json.writeObjectField("totalPages", result.get("totalPages"));
+                            json.writeNumberField(field + "Length", content.length());
+                            json.writeStringField(field, content);
+                        });
+
+                        return new McpSchema.CallToolResult(
+                                List.of(new McpSchema.TextContent(response)),
+                                false
+                        );
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in extract-pages: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                }
+        );
+    }
+
+    private McpServerFeatures.SyncToolSpecification createExtractBatchTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "extract-batch",
+                        "Extract several files from the files-to-extract directory in parallel, by name or glob pattern",
+                        """
+                        {
+                          "type": "object",
+                          "properties": {
+                            "filenames": {
+                              "type": "array",
+                              "items": { "type": "string" },
+                              "description": "Names of the files to extract"
+                            },
+                            "glob": {
+                              "type": "string",
+                              "description": "Glob pattern selecting files when no filenames are given, e.g. *.pdf, or **/*.pdf to include subdirectories"
+                            },
+                            "mode": {
+                              "type": "string",
+                              "enum": ["text", "html", "metadata"],
+                              "description": "What to extract from each file (default text)"
+                            }
+                          }
+                        }
+                        """
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        @SuppressWarnings("unchecked")
+                        List<String> requested = (List<String>) params.get("filenames");
+                        String mode = params.get("mode") != null ? (String) params.get("mode") : "text";
+                        List<String> filenames = batchExtractor.resolve(requested, (String) params.get("glob"));
+
+                        System.err.printf("Extracting batch of %d files (%s)%n", filenames.size(), mode);
+
+                        Object progressToken = request.meta() != null ? request.meta().get("progressToken") : null;
+                        List<McpSchema.Content> content = new ArrayList<>(filenames.size() + 1);
+                        int[] failed = {0};
+                        batchExtractor.extract(filenames, mode, result -> {
+                            if (!"success".equals(result.get("status"))) {
+                                failed[0]++;
+                            }
+                            content.add(new McpSchema.TextContent(JsonResponseWriter.toJson(result)));
+                            if (progressToken != null) {
+                                exchange.progressNotification(new McpSchema.ProgressNotification(
+                                        progressToken.toString(), content.size(), (double) filenames.size(),
+                                        "Extracted " + result.get("filename")));
+                            }
+                        });
+
+                        String summary = JsonResponseWriter.object(json -> {
+                            json.writeStringField("status", "success");
+                            json.writeStringField("mode", mode);
+                            json.writeNumberField("count", filenames.size());
+                            json.writeNumberField("failed", failed[0]);
+                        });
+                        content.add(0, new McpSchema.TextContent(summary));
+
+                        return new McpSchema.CallToolResult(content, false);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in extract-batch: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
+    private McpServerFeatures.SyncToolSpecification createSubmitExtractionTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "submit-extraction",
+                        "Start extracting a file in the background and return a job id at once; poll get-extraction-status and fetch the content with get-extraction-result. Use for large documents that take longer than one call",
+                        """
+                        {
+                          "type": "object",
+                          "properties": {
+                            "filename": {
+                              "type": "string",
+                              "description": "Name or relative path of the file to extract"
+                            },
+                            "mode": {
+                              "type": "string",
+                              "enum": ["text", "html", "metadata"],
+                              "description": "What to extract (default text)"
+                            },
+                            "startPage": {
+                              "type": "integer",
+                              "description": "Only extract a PDF from this page (1-based)"
+                            },
+                            "endPage": {
+                              "type": "integer",
+                              "description": "Last page to extract, inclusive (defaults to startPage)"
+                            },
+                            "priority": {
+                              "type": "string",
+                              "enum": ["high", "normal", "low"],
+                              "description": "Queue priority (default normal)"
+                            }
+                          },
+                          "required": ["filename"]
+                        }
+                        """
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        String filename = (String) params.get("filename");
+
+                        if (filename == null || filename.trim().isEmpty()) {
+                            return createErrorResult("Filename is required");
+                        }
+
+                        System.err.printf("Submitting extraction job: %s%n", filename);
+
+                        Map<String, Object> status = ExtractionJobs.getShared().submit(
+                                filename,
+                                (String) params.get("mode"),
+                                params.get("startPage") instanceof Number start ? start.intValue() : null,
+                                params.get("endPage") instanceof Number end ? end.intValue() : null,
+                                (String) params.get("priority"));
+
+                        return createFieldsResult(params, status);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in submit-extraction: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
+    private McpServerFeatures.SyncToolSpecification createExtractionStatusTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "get-extraction-status",
+                        "Get the state (QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED) of an extraction job started with submit-extraction",
+                        JOB_ID_SCHEMA
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        Map<String, Object> status = ExtractionJobs.getShared().getStatus((String) params.get("jobId"));
+                        if (status == null) {
+                            return createErrorResult("Unknown or expired job: " + params.get("jobId"));
+                        }
+                        return createFieldsResult(params, status);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in get-extraction-status: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
+    private McpServerFeatures.SyncToolSpecification createExtractionResultTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "get-extraction-result",
+                        "Get the extracted content of a finished extraction job, optionally one window of it at a time",
+                        """
+                        {
+                          "type": "object",
+                          "properties": {
+                            "jobId": {
+                              "type": "string",
+                              "description": "Id returned by submit-extraction"
+                            },
+                            "offset": {
+                              "type": "integer",
+                              "description": "Number of characters of the text or html to skip (default 0)"
+                            },
+                            "limit": {
+                              "type": "integer",
+                              "description": "Maximum number of characters to return; pass nextOffset as offset to continue"
+                            }
+                          },
+                          "required": ["jobId"]
+                        }
+                        """
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        String jobId = (String) params.get("jobId");
+                        long offset = params.get("offset") instanceof Number o ? o.longValue() : 0;
+                        int limit = params.get("limit") instanceof Number l ? l.intValue() : Integer.MAX_VALUE;
+
+                        Map<String, Object> result = ExtractionJobs.getShared().getResult(jobId, offset, limit);
+                        if (result == null) {
+                            return createErrorResult("Unknown or expired job: " + jobId);
+                        }
+                        return createFieldsResult(params, result);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in get-extraction-result: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
+    private McpServerFeatures.SyncToolSpecification createCancelExtractionTool() {
+        return McpServerFeatures.SyncToolSpecification.builder()
+                .tool(new McpSchema.Tool(
+                        "cancel-extraction",
+                        "Cancel a queued or running extraction job; a running parse is interrupted",
+                        JOB_ID_SCHEMA
+                ))
+                .callHandler((exchange, request) -> {
+                    try {
+                        Map<String, Object> params = request.arguments();
+                        Map<String, Object> status = ExtractionJobs.getShared().cancel((String) params.get("jobId"));
+                        if (status == null) {
+                            return createErrorResult("Unknown or expired job: " + params.get("jobId"));
+                        }
+                        return createFieldsResult(params, status);
+
+                    } catch (Exception e) {
+                        System.err.println("ERROR in cancel-extraction: " + e.getMessage());
+                        return createErrorResult(e);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * A successful tool response carrying the given fields (job status, job result or search result)
+     */
+    private McpSchema.CallToolResult createFieldsResult(Map<String, Object> params, Map<String, Object> fields) throws IOException {
+        String response = respond(params, json -> {
+            json.writeStringField("status", "success");
+            for (Map.Entry<String, Object> entry : fields.entrySet()) {
+                json.writeObjectField(entry.getKey(), entry.getValue());
+            }
+        });
+        return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(response)), false);
+    }
+
+    /**
+     * Extract document bytes passed inline as base64; nothing is written to the files directory
+     */
+    private McpSchema.CallToolResult createUploadResult(Map<String, Object> params, String filename, String content,
+                                                        boolean html) throws Exception {
+        byte[] bytes = Base64.getMimeDecoder().decode(content);
+        System.err.printf("Extracting uploaded document %s (%d bytes)%n", filename, bytes.length);
+
+        StringWriter out = new StringWriter();
+        Map<String, Object> result;
+        try (UploadedDocument document = UploadedDocument.of(filename, bytes)) {
+            result = extractorService.extractUpload(document, html, out);
+        }
+        String extracted = out.toString();
+        String field = html ? "html" : "text";
+
+        String response = respond(params, json -> {
+            json.writeStringField("status", "success");
+            json.writeStringField("filename", (String) result.get("filename"));
+            json.writeStringField("contentType", (String) result.get("contentType"));
+            json.writeNumberField(field + "Length", extracted.length());
+            json.writeStringField(field, extracted);
+        });
+        return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(response)), false);
+    }
+
+    private McpSchema.CallToolResult createTextWindowResult(String filename, Map<String, Object> params) throws Exception {
+        long offset = params.get("offset") instanceof Number o ? o.longValue() : 0;
+        int limit = params.get("limit") instanceof Number l ? l.intValue() : Integer.MAX_VALUE;
+
+        System.err.printf("Extracting text window %d+%d from: %s%n", offset, limit, filename);
+
+        Map<String, Object> result = extractorService.extractText(filename, offset, limit);
+        String text = (String) result.get("text");
+
+        String response = respond(params, json -> {
+            json.writeStringField("status", "success");
+            json.writeStringField("filename", filename);
+            json.writeStringField("contentType", (String) result.get("contentType"));
+            json.writeNumberField("offset", offset);
+            json.writeNumberField("textLength", text.length());
+            json.writeObjectField("hasMore", result.get("hasMore"));
+            json.writeObjectField("nextOffset", result.get("nextOffset"));
+            json.writeStringField("text", text);
+        });
 
         return new McpSchema.CallToolResult(
                 List.of(new McpSchema.TextContent(response)),
-                true
+                false
+        );
+    }
+
+    private McpSchema.CallToolResult createCompactResult(String filename, Map<String, Object> params, boolean html) throws Exception {
+        int maxChars = CompactContentHandler.budget((Number) params.get("maxTokens"), (Number) params.get("maxChars"));
+        String cursor = params.get("cursor") instanceof String c ? c : null;
+
+        System.err.printf("Extracting compact %s of %d characters from: %s%n", html ? "HTML" : "text", maxChars, filename);
+
+        Map<String, Object> result = extractorService.extractCompact(filename, html, maxChars, cursor);
+        String field = html ? "html" : "text";
+        String content = (String) result.get(field);
+
+        String response = respond(params, json -> {
+            json.writeStringField("status", "success");
+            json.writeStringField("filename", filename);
+            json.writeStringField("contentType", (String) result.get("contentType"));
+            json.writeNumberField(field + "Length", content.length());
+            json.writeObjectField("estimatedTokens", result.get("estimatedTokens"));
+            json.writeObjectField("removedLines", result.get("removedLines"));
+            json.writeObjectField("hasMore", result.get("hasMore"));
+            json.writeObjectField("nextCursor", result.get("nextCursor"));
+            json.writeStringField(field, content);
+        });
+
+        return new McpSchema.CallToolResult(
+                List.of(new McpSchema.TextContent(response)),
+                false
         );
     }
 
-    private static String escapeJson(String input) {
-        if (input == null) return "";
-        return input.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t")
-                .replace("\b", "\\b")
-                .replace("\f", "\\f");
+    /**
+     * Stream an extraction into fixed-size content blocks. The first block is a JSON summary,
+     * the following ones carry the content itself, so no escaped or formatted copy of it is built.
+     */
+    private McpSchema.CallToolResult createChunkedResult(McpSyncServerExchange exchange, McpSchema.CallToolRequest request,
+                                                         String filename, boolean html, int chunkSize) throws Exception {
+        Object progressToken = request.meta() != null ? request.meta().get("progressToken") : null;
+        ContentBlockWriter blocks = new ContentBlockWriter(Math.max(chunkSize, MIN_CHUNK_SIZE), count -> {
+            if (progressToken != null) {
+                exchange.progressNotification(new McpSchema.ProgressNotification(
+                        progressToken.toString(), count, null, "Extracted " + count + " chunks of " + filename));
+            }
+        });
+
+        System.err.printf("Extracting %s in chunks of %d: %s%n", html ? "HTML" : "text", chunkSize, filename);
+
+        Map<String, Object> result = html
+                ? extractorService.streamHtml(filename, blocks)
+                : extractorService.streamText(filename, blocks);
+        blocks.close();
+
+        String header = respond(request.arguments(), json -> {
+            json.writeStringField("status", "success");
+            json.writeStringField("filename", filename);
+            json.writeStringField("contentType", (String) result.get("contentType"));
+            json.writeNumberField(html ? "htmlLength" : "textLength", blocks.getLength());
+            json.writeNumberField("chunks", blocks.getBlocks().size());
+        });
+
+        List<McpSchema.Content> content = new ArrayList<>(blocks.getBlocks().size() + 1);
+        content.add(new McpSchema.TextContent(header));
+        content.addAll(blocks.getBlocks());
+        return new McpSchema.CallToolResult(content, false);
+    }
+
+    private McpSchema.CallToolResult createErrorResult(Exception e) {
+        // Admission control refusals carry a machine-readable reason so clients can back off and retry
+        String reason = e instanceof ExtractionRejectedException rejection ? rejection.getReason().name() : null;
+        return createErrorResult(reason, e.getMessage());
+    }
+
+    private McpSchema.CallToolResult createErrorResult(String message) {
+        return createErrorResult(null, message);
+    }
+
+    private McpSchema.CallToolResult createErrorResult(String reason, String message) {
+        String response;
+        try {
+            response = JsonResponseWriter.object(json -> {
+                json.writeStringField("status", "error");
+                if (reason != null) {
+                    json.writeStringField("reason", reason);
+                }
+                json.writeStringField("message", message != null ? message : "");
+            });
+        } catch (IOException e) {
+            // Only reachable if Jackson itself fails on an in-memory buffer
+            response = "{\"status\": \"error\"}";
+        }
+
+        return new McpSchema.CallToolResult(
+                List.of(new McpSchema.TextContent(response)),
+                true
+        );
     }
 }
\ No newline at end of file
@@ -1,6 +1,14 @@
 package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.AdmissionController;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionJobs;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.FileIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ForkedParserPool;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.PreExtractionPipeline;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ResultStore;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.SearchIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -15,12 +23,6 @@ import java.util.Map;
  */
 public class HealthServlet extends HttpServlet {
 
-    private final ObjectMapper mapper;
-
-    public HealthServlet() {
-        this.mapper = new ObjectMapper();
-    }
-
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         resp.setContentType("application/json");
@@ -38,8 +40,46 @@ public class HealthServlet extends HttpServlet {
         status.put("filesDirectoryReadable", directory.canRead());
         status.put("filesDirectoryWritable", directory.canWrite());
 
+        // Extraction cache hit/miss/eviction counters
+        status.put("cache", ExtractionCache.getShared().getStats());
+
+        // Whether the bundled samples have been parsed yet (see engine.warmup.*)
+        status.put("engineWarmedUp", TikaExtractorService.getShared().isWarmedUp());
+
+        // Documents sent straight to a known parser versus through auto-detection (see tika.routing.enabled)
+        status.put("parsers", TikaExtractorService.getShared().getParserStats());
+
+        // Running and queued parses, rejections and timeouts
+        status.put("admission", AdmissionController.getShared().getStats());
+
+        // Compressed renderings kept on disk for the REST endpoints, when enabled
+        if (ResultStore.getShared() != null) {
+            status.put("store", ResultStore.getShared().getStats());
+        }
+
+        // Background extraction jobs and the result store
+        status.put("jobs", ExtractionJobs.getShared().getStats());
+
+        // Indexed files and whether the directory watch is active
+        status.put("fileIndex", FileIndex.getShared().getStats());
+
+        // Documents and terms in the search index, and files still to index
+        if (SearchIndex.isEnabled()) {
+            status.put("search", SearchIndex.getShared().getStats());
+        }
+
+        // Files waiting for and done by background pre-extraction, when enabled
+        if (PreExtractionPipeline.isEnabled()) {
+            status.put("preExtraction", PreExtractionPipeline.getShared().getStats());
+        }
+
+        // Forked parser workers, when enabled
+        if (ForkedParserPool.getShared() != null) {
+            status.put("workers", ForkedParserPool.getShared().getStats());
+        }
+
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().write(mapper.writeValueAsString(status));
+        JsonResponseWriter.write(resp.getWriter(), status);
     }
 
     @Override
@@ -0,0 +1,90 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that escapes everything written to it as the body of a JSON string literal.
+ * Lets extracted content be streamed into a JSON response without building the string first.
+ */
+public class JsonEscapingWriter extends FilterWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public JsonEscapingWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        String escape = escapeFor((char) c);
+        if (escape != null) {
+            out.write(escape);
+        } else {
+            out.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        int run = off;
+        for (int i = off; i < end; i++) {
+            String escape = escapeFor(cbuf[i]);
+            if (escape != null) {
+                out.write(cbuf, run, i - run);
+                out.write(escape);
+                run = i + 1;
+            }
+        }
+        out.write(cbuf, run, end - run);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        int run = off;
+        for (int i = off; i < end; i++) {
+            String escape = escapeFor(str.charAt(i));
+            if (escape != null) {
+                out.write(str, run, i - run);
+                out.write(escape);
+                run = i + 1;
+            }
+        }
+        out.write(str, run, end - run);
+    }
+
+    /**
+     * Closing only flushes: the underlying writer still has to receive the closing quote
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private static String escapeFor(char c) {
+        switch (c) {
+            case '"':
+                return "\\\"";
+            case '\\':
+                return "\\\\";
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\f':
+                return "\\f";
+            default:
+                if (c < 0x20) {
+                    return "\\u00" + HEX[c >> 4] + HEX[c & 0xF];
+                }
+                return null;
+        }
+    }
+}
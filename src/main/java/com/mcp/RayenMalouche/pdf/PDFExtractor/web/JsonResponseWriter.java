@@ -0,0 +1,130 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Single-pass JSON serialization shared by the MCP tools and the servlets, built on Jackson's
+ * streaming JsonGenerator. Strings are escaped once while they are written (control characters
+ * included), servlet responses go straight to the response writer, and tool results are rendered
+ * into a per-thread buffer that is reused from one call to the next.
+ */
+public final class JsonResponseWriter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+    // A buffer that grew past this for one large extraction is dropped instead of being kept by the thread
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+    private JsonResponseWriter() {
+    }
+
+    /**
+     * Writes the fields of one JSON object; the enclosing braces are written by the caller
+     */
+    @FunctionalInterface
+    public interface Fields {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    /**
+     * Render a JSON object with the given fields as a string
+     */
+    public static String object(Fields fields) throws IOException {
+        StringBuilder shared = BUFFER.get();
+        // Nested call on this thread: the shared buffer is in use
+        StringBuilder buffer = shared.length() > 0 ? new StringBuilder() : shared;
+        try {
+            try (JsonGenerator json = createGenerator(new BufferWriter(buffer))) {
+                json.writeStartObject();
+                fields.write(json);
+                json.writeEndObject();
+            }
+            return buffer.toString();
+        } finally {
+            // Also after a failed write, or the thread would stop reusing its buffer
+            if (buffer == shared) {
+                buffer.setLength(0);
+                if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+                    BUFFER.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Render any value Jackson can serialize (maps, lists, strings, numbers) as a string
+     */
+    public static String toJson(Object value) throws IOException {
+        return MAPPER.writeValueAsString(value);
+    }
+
+    /**
+     * Write a JSON object with the given fields to out
+     */
+    public static void writeObject(Writer out, Fields fields) throws IOException {
+        try (JsonGenerator json = createGenerator(out)) {
+            json.writeStartObject();
+            fields.write(json);
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Write any value Jackson can serialize to out
+     */
+    public static void write(Writer out, Object value) throws IOException {
+        try (JsonGenerator json = createGenerator(out)) {
+            json.writeObject(value);
+        }
+    }
+
+    /**
+     * Generator over out that never closes it and only flushes its own buffer, so a servlet
+     * response is not committed by an intermediate flush
+     */
+    public static JsonGenerator createGenerator(Writer out) throws IOException {
+        return FACTORY.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    /**
+     * Unsynchronized writer over a StringBuilder
+     */
+    private static class BufferWriter extends Writer {
+        private final StringBuilder buffer;
+
+        BufferWriter(StringBuilder buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            buffer.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            buffer.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
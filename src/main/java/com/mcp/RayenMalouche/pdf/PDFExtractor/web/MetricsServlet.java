@@ -0,0 +1,29 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ServerMetrics;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * MetricsServlet serving the server metrics in the Prometheus text format, for scraping and alerting
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private final ServerMetrics metrics;
+
+    public MetricsServlet(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain; version=0.0.4");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Access-Control-Allow-Origin", "*");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().write(metrics.scrape());
+    }
+}
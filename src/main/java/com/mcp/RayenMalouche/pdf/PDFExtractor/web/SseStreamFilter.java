@@ -0,0 +1,98 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ServerMetrics;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the server-sent event streams the MCP transport keeps open. A request whose servlet answered
+ * with text/event-stream and went asynchronous is an open stream until its async context ends.
+ */
+public class SseStreamFilter implements Filter {
+
+    private static final int PENDING = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSED = 2;
+
+    private final ServerMetrics metrics;
+
+    public SseStreamFilter(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        StreamRequest stream = new StreamRequest((HttpServletRequest) request);
+        chain.doFilter(stream, response);
+
+        String contentType = response.getContentType();
+        if (stream.listening && contentType != null && contentType.startsWith("text/event-stream")) {
+            metrics.sseStreamOpened();
+            // The transport may already have completed the context; then the stream is closed again at once
+            if (!stream.state.compareAndSet(PENDING, OPEN)) {
+                metrics.sseStreamClosed();
+            }
+        }
+    }
+
+    /**
+     * Attaches the completion listener when the servlet starts async processing, so the end of the stream
+     * is seen even when the context completes before the filter chain returns
+     */
+    private final class StreamRequest extends HttpServletRequestWrapper implements AsyncListener {
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private boolean listening;
+
+        StreamRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            return listen(super.startAsync());
+        }
+
+        @Override
+        public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+            return listen(super.startAsync(request, response));
+        }
+
+        private AsyncContext listen(AsyncContext context) {
+            context.addListener(this);
+            listening = true;
+            return context;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (state.getAndSet(CLOSED) == OPEN) {
+                metrics.sseStreamClosed();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // A new async cycle drops the listeners of the previous one
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -1,16 +1,37 @@
 package com.mcp.RayenMalouche.pdf.PDFExtractor.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.BatchExtractor;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.CompactContentHandler;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionJobs;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionRejectedException;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionTimings;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.FileIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ResultStore;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.SearchIndex;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.UploadedDocument;
 
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * TestServlet for testing extraction functionality via REST API
@@ -18,10 +39,23 @@ import java.util.Map;
 public class TestServlet extends HttpServlet {
 
     private final TikaExtractorService extractorService;
+    private final BatchExtractor batchExtractor;
+    private final ResultStore store;
     private final ObjectMapper mapper;
 
+    private static final Set<String> RENDERINGS = Set.of("/extract-html", "/extract-text", "/raw-html");
+
     public TestServlet(TikaExtractorService extractorService) {
+        this(extractorService, ResultStore.getShared());
+    }
+
+    /**
+     * @param store where rendered responses are kept for repeated requests, or null to always extract
+     */
+    public TestServlet(TikaExtractorService extractorService, ResultStore store) {
         this.extractorService = extractorService;
+        this.batchExtractor = new BatchExtractor(extractorService);
+        this.store = store;
         this.mapper = new ObjectMapper();
     }
 
@@ -34,7 +68,25 @@ public class TestServlet extends HttpServlet {
         String pathInfo = req.getPathInfo();
 
         if ("/list".equals(pathInfo)) {
-            handleListFiles(resp);
+            try {
+                handleListFiles(req, resp);
+            } catch (IllegalArgumentException e) {
+                // Parameters are checked by the listing, after the tag was set; an error must not be revalidated
+                resp.setHeader("ETag", null);
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                JsonResponseWriter.writeObject(resp.getWriter(), json -> {
+                    json.writeStringField("status", "error");
+                    json.writeStringField("message", e.getMessage());
+                });
+            }
+        } else if ("/search".equals(pathInfo)) {
+            handleSearch(req, resp);
+        } else if (RENDERINGS.contains(pathInfo)) {
+            // Renderings of a file can also be fetched with GET ?filename=..., so that HTTP caches
+            // and conditional requests (If-None-Match) apply to them
+            handleExtraction(req, resp);
+        } else if (pathInfo != null && pathInfo.startsWith("/jobs/")) {
+            handleJobStatusOrResult(req, resp, pathInfo.substring("/jobs/".length()));
         } else {
             resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
             resp.getWriter().write("{\"status\": \"error\", \"message\": \"Unknown endpoint\"}");
@@ -45,8 +97,14 @@ public class TestServlet extends HttpServlet {
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         resp.setCharacterEncoding("UTF-8");
         addCorsHeaders(resp);
+        handleExtraction(req, resp);
+    }
 
+    private void handleExtraction(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String pathInfo = req.getPathInfo();
+        // Phase timings of the request, logged when it is slow
+        ExtractionTimings timings = ExtractionTimings.start(req.getMethod() + " /api/test" + pathInfo);
+        String outcome = "error";
 
         try {
             if ("/extract-html".equals(pathInfo)) {
@@ -55,28 +113,284 @@ public class TestServlet extends HttpServlet {
             } else if ("/extract-text".equals(pathInfo)) {
                 resp.setContentType("application/json");
                 handleExtractText(req, resp);
+            } else if ("/extract-pages".equals(pathInfo)) {
+                resp.setContentType("application/json");
+                handleExtractPages(req, resp);
+            } else if ("/extract-batch".equals(pathInfo)) {
+                resp.setContentType("application/x-ndjson");
+                handleExtractBatch(req, resp);
             } else if ("/raw-html".equals(pathInfo)) {
                 resp.setContentType("text/html");  // New: Set to text/html for raw HTML
                 handleRawHtml(req, resp);
+            } else if ("/jobs".equals(pathInfo)) {
+                resp.setContentType("application/json");
+                handleSubmitJob(req, resp);
             } else {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 resp.getWriter().write("{\"status\": \"error\", \"message\": \"Unknown endpoint\"}");
             }
+            outcome = resp.getStatus() < 400 ? "success" : "error";
         } catch (Exception e) {
+            if (resp.isCommitted()) {
+                // Part of a streamed body has already been sent, the status can no longer change
+                System.err.println("ERROR while streaming " + pathInfo + ": " + e.getMessage());
+                return;
+            }
+            resp.resetBuffer();
+            resp.setHeader("ETag", null);
             resp.setContentType("application/json");
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            resp.getWriter().write(String.format("{\"status\": \"error\", \"message\": \"%s\"}", escapeJson(e.getMessage())));
+            resp.setStatus(statusFor(e));
+            if (e instanceof ExtractionRejectedException rejection
+                    && rejection.getReason() == ExtractionRejectedException.Reason.OVERLOADED) {
+                resp.setHeader("Retry-After", "1");
+            }
+            JsonResponseWriter.writeObject(resp.getWriter(), json -> {
+                json.writeStringField("status", "error");
+                if (e instanceof ExtractionRejectedException rejection) {
+                    json.writeStringField("reason", rejection.getReason().name());
+                }
+                json.writeStringField("message", e.getMessage() != null ? e.getMessage() : "");
+            });
+        } finally {
+            timings.finish(outcome);
         }
     }
 
-    private void handleListFiles(HttpServletResponse resp) throws IOException {
-        Map<String, Object> result = extractorService.listAvailableFiles();
+    /**
+     * Cancel a queued or running extraction job: DELETE /api/test/jobs/{id}
+     */
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        addCorsHeaders(resp);
+
+        String pathInfo = req.getPathInfo();
+        if (pathInfo == null || !pathInfo.startsWith("/jobs/")) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().write("{\"status\": \"error\", \"message\": \"Unknown endpoint\"}");
+            return;
+        }
+        String id = pathInfo.substring("/jobs/".length());
+        Map<String, Object> status = ExtractionJobs.getShared().cancel(id);
+        if (status == null) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Unknown or expired job: " + id);
+            return;
+        }
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().write(mapper.writeValueAsString(result));
+        JsonResponseWriter.write(resp.getWriter(), status);
     }
 
-    private void handleExtractHtml(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+    /**
+     * Queue an extraction job; the body has filename, mode (text, html, metadata), optional startPage and
+     * endPage, and priority (high, normal, low). Answers 202 with the job status.
+     */
+    private void handleSubmitJob(HttpServletRequest req, HttpServletResponse resp) throws Exception {
         Map<String, Object> requestBody = parseRequestBody(req);
+        Map<String, Object> status = ExtractionJobs.getShared().submit(
+                (String) requestBody.get("filename"),
+                (String) requestBody.get("mode"),
+                requestBody.get("startPage") instanceof Number start ? start.intValue() : null,
+                requestBody.get("endPage") instanceof Number end ? end.intValue() : null,
+                (String) requestBody.get("priority"));
+        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+        resp.setHeader("Location", req.getRequestURI() + "/" + status.get("jobId"));
+        JsonResponseWriter.write(resp.getWriter(), status);
+    }
+
+    /**
+     * GET /api/test/jobs/{id} for the status of a job, GET /api/test/jobs/{id}/result (query parameters
+     * offset and limit) for its result. A result that is not available yet is a 409 with the job's state.
+     */
+    private void handleJobStatusOrResult(HttpServletRequest req, HttpServletResponse resp, String path) throws IOException {
+        ExtractionJobs jobs = ExtractionJobs.getShared();
+        boolean result = path.endsWith("/result");
+        String id = result ? path.substring(0, path.length() - "/result".length()) : path;
+        try {
+            Map<String, Object> body = result
+                    ? jobs.getResult(id, longParameter(req, "offset"), req.getParameter("limit") != null
+                            ? intParameter(req, "limit") : Integer.MAX_VALUE)
+                    : jobs.getStatus(id);
+            if (body == null) {
+                writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Unknown or expired job: " + id);
+                return;
+            }
+            resp.setStatus(HttpServletResponse.SC_OK);
+            JsonResponseWriter.write(resp.getWriter(), body);
+        } catch (IllegalArgumentException e) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            writeError(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
+        }
+    }
+
+    private static void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        JsonResponseWriter.writeObject(resp.getWriter(), json -> {
+            json.writeStringField("status", "error");
+            json.writeStringField("message", message);
+        });
+    }
+
+    /**
+     * One page of the file index; query parameters prefix, mimeType, sort, order, offset and limit
+     * work as in the list-files tool
+     */
+    private void handleListFiles(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        // An unwatched index only notices changes when it re-walks the tree, so bring it up to date first
+        FileIndex index = FileIndex.getShared();
+        index.refreshIfUnwatched();
+        // Read before listing, so a change made meanwhile can only make the tag stale, never the listing
+        String etag = "W/\"list-" + index.getVersionTag() + (index.isComplete() ? "" : "-partial") + "-"
+                + Integer.toHexString(Objects.hashCode(req.getQueryString())) + "\"";
+        if (notModified(req, resp, etag)) {
+            return;
+        }
+        Map<String, Object> result = extractorService.listAvailableFiles(
+                req.getParameter("prefix"),
+                req.getParameter("mimeType"),
+                req.getParameter("sort"),
+                "desc".equalsIgnoreCase(req.getParameter("order")),
+                intParameter(req, "offset"),
+                intParameter(req, "limit"));
+        resp.setStatus(HttpServletResponse.SC_OK);
+        JsonResponseWriter.write(resp.getWriter(), result);
+    }
+
+    /**
+     * Ranked full-text search over the indexed files: q is the query, limit (default 10), snippets per hit
+     * (default 3) and prefix work as in the search-documents tool
+     */
+    private void handleSearch(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!SearchIndex.isEnabled()) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Search is disabled (search.enabled=false)");
+            return;
+        }
+        try {
+            Map<String, Object> result = SearchIndex.getShared().search(
+                    req.getParameter("q"),
+                    req.getParameter("limit") != null ? intParameter(req, "limit") : 10,
+                    req.getParameter("prefix"),
+                    req.getParameter("snippets") != null ? intParameter(req, "snippets") : 3);
+            resp.setStatus(HttpServletResponse.SC_OK);
+            JsonResponseWriter.write(resp.getWriter(), result);
+        } catch (IllegalArgumentException e) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private static int intParameter(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private static long longParameter(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private static int statusFor(Exception e) {
+        if (e instanceof IllegalArgumentException) {
+            return HttpServletResponse.SC_BAD_REQUEST;
+        }
+        if (e instanceof ExtractionRejectedException rejection) {
+            return switch (rejection.getReason()) {
+                case OVERLOADED -> 429;
+                case FILE_TOO_LARGE, OUTPUT_TOO_LARGE -> HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+                case TIMEOUT -> HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+                case CANCELLED -> HttpServletResponse.SC_CONFLICT;
+            };
+        }
+        return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Multipart settings for this servlet's registration: parts larger than upload.memory.threshold are
+     * buffered in a temporary file by Jetty, and parts larger than files.max.size are refused
+     */
+    public static MultipartConfigElement multipartConfig() {
+        try {
+            return new MultipartConfigElement(UploadedDocument.getTempDirectory().toString(),
+                    UploadedDocument.getMaxSize(), -1, UploadedDocument.getMemoryThreshold());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the upload temp directory", e);
+        }
+    }
+
+    /**
+     * Whether the body is the document itself rather than a JSON request naming a file. Requests without
+     * a content type, with JSON or with a form-encoded body (curl -d) keep the JSON contract.
+     */
+    private static boolean isUpload(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        contentType = contentType.toLowerCase();
+        return !contentType.startsWith("application/json") && !contentType.startsWith("application/x-www-form-urlencoded");
+    }
+
+    /**
+     * The uploaded document: the part named "file" of a multipart body, or the raw body named by the
+     * filename query parameter. The name only selects the parser; nothing is stored in files-to-extract.
+     */
+    private static UploadedDocument readUpload(HttpServletRequest req) throws IOException, ServletException {
+        if (req.getContentType().toLowerCase().startsWith("multipart/")) {
+            Part part;
+            try {
+                part = req.getPart("file");
+            } catch (IllegalStateException | ServletException e) {
+                // Jetty reports a part over the size limit as an IllegalStateException, possibly wrapped
+                for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IllegalStateException) {
+                        throw new ExtractionRejectedException(ExtractionRejectedException.Reason.FILE_TOO_LARGE,
+                                "Uploaded document is larger than the limit of " + UploadedDocument.getMaxSize() + " bytes");
+                    }
+                }
+                throw new IllegalArgumentException("Malformed multipart body: " + e.getMessage());
+            }
+            if (part == null) {
+                throw new IllegalArgumentException("A multipart upload needs a part named file");
+            }
+            String name = part.getSubmittedFileName() != null ? part.getSubmittedFileName() : req.getParameter("filename");
+            try (InputStream in = part.getInputStream()) {
+                return UploadedDocument.read(name, in);
+            } finally {
+                part.delete();
+            }
+        }
+        if (UploadedDocument.getMaxSize() > 0 && req.getContentLengthLong() > UploadedDocument.getMaxSize()) {
+            // Refuse before reading when the client announced the size
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.FILE_TOO_LARGE,
+                    "Uploaded document is larger than the limit of " + UploadedDocument.getMaxSize() + " bytes");
+        }
+        return UploadedDocument.read(req.getParameter("filename"), req.getInputStream());
+    }
+
+    private void handleExtractHtml(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        if (isUpload(req)) {
+            try (UploadedDocument document = readUpload(req)) {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                writeStreamedJson(resp.getWriter(), document.getName(), "html", out -> extractorService.extractUpload(document, true, out));
+            }
+            return;
+        }
+
+        Map<String, Object> requestBody = requestArguments(req);
         String filename = (String) requestBody.get("filename");
 
         if (filename == null || filename.trim().isEmpty()) {
@@ -85,12 +399,96 @@ public class TestServlet extends HttpServlet {
             return;
         }
 
-        Map<String, Object> result = extractorService.extractToHtml(filename);
+        if (requestBody.get("maxTokens") instanceof Number || requestBody.get("maxChars") instanceof Number) {
+            writeCompact(resp, filename, requestBody, true);
+            return;
+        }
+
+        if (notModified(req, resp, filename, "html.json")) {
+            return;
+        }
+        String key = storeKey(filename, "html.json");
+        if (serveStored(req, resp, key)) {
+            return;
+        }
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().write(mapper.writeValueAsString(result));
+        writeStoring(resp, key, writer -> writeStreamedJson(writer, filename, "html", out -> extractorService.streamHtml(filename, out)));
     }
 
     private void handleExtractText(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        if (isUpload(req)) {
+            try (UploadedDocument document = readUpload(req)) {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                writeStreamedJson(resp.getWriter(), document.getName(), "text", out -> extractorService.extractUpload(document, false, out));
+            }
+            return;
+        }
+
+        Map<String, Object> requestBody = requestArguments(req);
+        String filename = (String) requestBody.get("filename");
+
+        if (filename == null || filename.trim().isEmpty()) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"status\": \"error\", \"message\": \"Filename is required\"}");
+            return;
+        }
+
+        if (requestBody.get("offset") instanceof Number || requestBody.get("limit") instanceof Number) {
+            long offset = requestBody.get("offset") instanceof Number o ? o.longValue() : 0;
+            int limit = requestBody.get("limit") instanceof Number l ? l.intValue() : Integer.MAX_VALUE;
+            Map<String, Object> result = extractorService.extractText(filename, offset, limit);
+            resp.setStatus(HttpServletResponse.SC_OK);
+            JsonResponseWriter.write(resp.getWriter(), result);
+            return;
+        }
+
+        if (requestBody.get("maxTokens") instanceof Number || requestBody.get("maxChars") instanceof Number) {
+            writeCompact(resp, filename, requestBody, false);
+            return;
+        }
+
+        if (notModified(req, resp, filename, "text.json")) {
+            return;
+        }
+        String key = storeKey(filename, "text.json");
+        if (serveStored(req, resp, key)) {
+            return;
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+        writeStoring(resp, key, writer -> writeStreamedJson(writer, filename, "text", out -> extractorService.streamText(filename, out)));
+    }
+
+    /**
+     * Stream one JSON line per file as each extraction completes, then a summary line
+     */
+    @SuppressWarnings("unchecked")
+    private void handleExtractBatch(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        Map<String, Object> requestBody = parseRequestBody(req);
+        String mode = requestBody.get("mode") != null ? (String) requestBody.get("mode") : "text";
+        List<String> filenames = batchExtractor.resolve(
+                (List<String>) requestBody.get("filenames"), (String) requestBody.get("glob"));
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        Writer writer = resp.getWriter();
+        int[] failed = {0};
+        batchExtractor.extract(filenames, mode, result -> {
+            if (!"success".equals(result.get("status"))) {
+                failed[0]++;
+            }
+            JsonResponseWriter.write(writer, result);
+            writer.write('\n');
+            resp.flushBuffer();
+        });
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("status", "done");
+        summary.put("count", filenames.size());
+        summary.put("failed", failed[0]);
+        JsonResponseWriter.write(writer, summary);
+        writer.write('\n');
+    }
+
+    private void handleExtractPages(HttpServletRequest req, HttpServletResponse resp) throws Exception {
         Map<String, Object> requestBody = parseRequestBody(req);
         String filename = (String) requestBody.get("filename");
 
@@ -99,15 +497,30 @@ public class TestServlet extends HttpServlet {
             resp.getWriter().write("{\"status\": \"error\", \"message\": \"Filename is required\"}");
             return;
         }
+        if (!(requestBody.get("startPage") instanceof Number startPage)) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"status\": \"error\", \"message\": \"startPage is required\"}");
+            return;
+        }
+        int endPage = requestBody.get("endPage") instanceof Number end ? end.intValue() : startPage.intValue();
+        boolean html = "html".equalsIgnoreCase((String) requestBody.get("format"));
 
-        Map<String, Object> result = extractorService.extractText(filename);
+        Map<String, Object> result = extractorService.extractPages(filename, startPage.intValue(), endPage, html);
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().write(mapper.writeValueAsString(result));
+        JsonResponseWriter.write(resp.getWriter(), result);
     }
 
     // New handler for raw HTML output
     private void handleRawHtml(HttpServletRequest req, HttpServletResponse resp) throws Exception {
-        Map<String, Object> requestBody = parseRequestBody(req);
+        if (isUpload(req)) {
+            try (UploadedDocument document = readUpload(req)) {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                extractorService.extractUpload(document, true, resp.getWriter());
+            }
+            return;
+        }
+
+        Map<String, Object> requestBody = requestArguments(req);
         String filename = (String) requestBody.get("filename");
 
         if (filename == null || filename.trim().isEmpty()) {
@@ -116,18 +529,194 @@ public class TestServlet extends HttpServlet {
             return;
         }
 
-        Map<String, Object> result = extractorService.extractToHtml(filename);
-        String html = (String) result.get("html");
+        if (notModified(req, resp, filename, "html")) {
+            return;
+        }
+        String key = storeKey(filename, "html");
+        if (serveStored(req, resp, key)) {
+            return;
+        }
+        // Stream the HTML straight into the response (no JSON); once it outgrows the
+        // response buffer Jetty switches to chunked transfer encoding
+        resp.setStatus(HttpServletResponse.SC_OK);
+        writeStoring(resp, key, writer -> extractorService.streamHtml(filename, writer));
+    }
 
-        if (html == null) {
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            resp.getWriter().write("<html><body><h1>Error: Failed to extract HTML</h1></body></html>");
+    /**
+     * Set the ETag of a rendering of the file, made of its content hash and size, and answer
+     * 304 Not Modified when a GET or HEAD names it in If-None-Match
+     */
+    private boolean notModified(HttpServletRequest req, HttpServletResponse resp, String filename, String rendering)
+            throws IOException {
+        String key = extractorService.resultKey(filename, rendering);
+        // JSON renderings echo the requested name, so two names of the same content differ
+        return notModified(req, resp, "\"" + (rendering.endsWith(".json")
+                ? key + "-" + Integer.toHexString(filename.hashCode()) : key) + "\"");
+    }
+
+    private static boolean notModified(HttpServletRequest req, HttpServletResponse resp, String etag) {
+        resp.setHeader("ETag", etag);
+        // Clients may keep the body but should revalidate it before use
+        resp.setHeader("Cache-Control", "no-cache");
+        if (!"GET".equals(req.getMethod()) && !"HEAD".equals(req.getMethod())) {
+            return false;
+        }
+        for (Enumeration<String> values = req.getHeaders("If-None-Match"); values.hasMoreElements(); ) {
+            for (String candidate : values.nextElement().split(",")) {
+                String tag = candidate.trim();
+                // If-None-Match compares weakly
+                if ("*".equals(tag) || opaqueTag(tag).equals(opaqueTag(etag))) {
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Store key of a rendering of the file: the extraction mode, plus the requested name for renderings
+     * that echo it. Null when the store is disabled.
+     */
+    private String storeKey(String filename, String rendering) throws IOException {
+        if (store == null) {
+            return null;
+        }
+        String key = extractorService.resultKey(filename, rendering);
+        return rendering.endsWith(".json") ? key + "/" + filename : key;
+    }
+
+    /**
+     * Answer from the result store when it holds the rendering. Clients accepting gzip get the stored gzip
+     * member as-is, copied from the segment with FileChannel.transferTo; others get it inflated.
+     */
+    private boolean serveStored(HttpServletRequest req, HttpServletResponse resp, String key) throws IOException {
+        if (key == null) {
+            return false;
+        }
+        try (ResultStore.Stored stored = store.open(key)) {
+            if (stored == null) {
+                return false;
+            }
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.addHeader("Vary", "Accept-Encoding");
+            OutputStream out = resp.getOutputStream();
+            if (acceptsGzip(req)) {
+                resp.setHeader("Content-Encoding", "gzip");
+                resp.setContentLengthLong(stored.getCompressedLength());
+                stored.transferCompressed(out);
+            } else {
+                resp.setContentLengthLong(stored.getLength());
+                try (InputStream in = stored.openInflated()) {
+                    in.transferTo(out);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        for (var values = req.getHeaders("Accept-Encoding"); values.hasMoreElements(); ) {
+            for (String coding : values.nextElement().split(",")) {
+                String[] parts = coding.trim().split(";");
+                if ("gzip".equalsIgnoreCase(parts[0].trim())
+                        && !(parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write a response through body, recording it in the result store under key (when not null) if it completes
+     */
+    private void writeStoring(HttpServletResponse resp, String key, ResponseBody body) throws Exception {
+        if (key == null) {
+            body.write(resp.getWriter());
             return;
         }
+        try (ResultStore.Recording recording = store.record(key)) {
+            body.write(recording.tee(resp.getWriter()));
+            recording.commit();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseBody {
+        void write(Writer writer) throws Exception;
+    }
+
+    /**
+     * Write a JSON object whose content field is streamed from the extractor as it parses,
+     * followed by the metadata fields that are only known once parsing is done
+     */
+    private void writeStreamedJson(Writer writer, String filename, String contentField,
+                                   StreamingExtraction extraction) throws Exception {
+        JsonGenerator generator = JsonResponseWriter.createGenerator(writer);
+        generator.writeStartObject();
+        generator.writeStringField("filename", filename);
+        generator.writeFieldName(contentField);
+        generator.writeRawValue("\"");
+        generator.flush();
+
+        Map<String, Object> result = extraction.extract(new JsonEscapingWriter(writer));
+        writer.write('"');
+
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (!"filename".equals(entry.getKey())) {
+                generator.writeObjectField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    @FunctionalInterface
+    private interface StreamingExtraction {
+        Map<String, Object> extract(Writer out) throws Exception;
+    }
+
+    /**
+     * Arguments of an extraction request: the JSON body of a POST, or the filename, offset and limit
+     * query parameters of a GET
+     */
+    private Map<String, Object> requestArguments(HttpServletRequest req) throws IOException {
+        if ("POST".equals(req.getMethod())) {
+            return parseRequestBody(req);
+        }
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("filename", req.getParameter("filename"));
+        if (req.getParameter("offset") != null) {
+            arguments.put("offset", longParameter(req, "offset"));
+        }
+        if (req.getParameter("limit") != null) {
+            arguments.put("limit", intParameter(req, "limit"));
+        }
+        if (req.getParameter("maxTokens") != null) {
+            arguments.put("maxTokens", intParameter(req, "maxTokens"));
+        }
+        if (req.getParameter("maxChars") != null) {
+            arguments.put("maxChars", intParameter(req, "maxChars"));
+        }
+        arguments.put("cursor", req.getParameter("cursor"));
+        return arguments;
+    }
 
-        // Directly write the HTML (no JSON)
+    /**
+     * Compact rendering within the request's maxTokens / maxChars budget, resuming at its cursor
+     */
+    private void writeCompact(HttpServletResponse resp, String filename, Map<String, Object> arguments, boolean html)
+            throws Exception {
+        Map<String, Object> result = extractorService.extractCompact(filename, html,
+                CompactContentHandler.budget((Number) arguments.get("maxTokens"), (Number) arguments.get("maxChars")),
+                arguments.get("cursor") instanceof String cursor ? cursor : null);
         resp.setStatus(HttpServletResponse.SC_OK);
-        resp.getWriter().write(html);
+        JsonResponseWriter.write(resp.getWriter(), result);
     }
 
     private Map<String, Object> parseRequestBody(HttpServletRequest req) throws IOException {
@@ -143,19 +732,9 @@ public class TestServlet extends HttpServlet {
 
     private void addCorsHeaders(HttpServletResponse resp) {
         resp.setHeader("Access-Control-Allow-Origin", "*");
-        resp.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        resp.setHeader("Access-Control-Allow-Headers", "Content-Type");
-    }
-
-    private String escapeJson(String input) {
-        if (input == null) return "";
-        return input.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t")
-                .replace("\b", "\\b")
-                .replace("\f", "\\f");
+        resp.setHeader("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        resp.setHeader("Access-Control-Expose-Headers", "ETag, Location");
     }
 
     @Override
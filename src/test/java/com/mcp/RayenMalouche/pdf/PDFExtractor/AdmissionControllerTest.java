@@ -0,0 +1,74 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.AdmissionController;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionRejectedException;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+class AdmissionControllerTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testRejectsWhenSlotsAndQueueAreFull() throws Exception {
+        File file = file("a.txt", 10);
+        AdmissionController admission = new AdmissionController(1, 0, 0, 0, 0, 0);
+
+        AdmissionController.Permit permit = admission.admit(file);
+        try {
+            ExtractionRejectedException e = assertThrows(ExtractionRejectedException.class, () -> admission.admit(file));
+            assertEquals(ExtractionRejectedException.Reason.OVERLOADED, e.getReason());
+        } finally {
+            permit.close();
+        }
+
+        // The slot is free again once the permit is closed
+        admission.admit(file).close();
+        assertEquals(1L, admission.getStats().get("rejected"));
+    }
+
+    @Test
+    void testEnforcesFileSizeAndOutputLimits() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 0, 0, 0, 100, 5);
+
+        ExtractionRejectedException tooLarge = assertThrows(ExtractionRejectedException.class,
+                () -> admission.admit(file("big.txt", 101)));
+        assertEquals(ExtractionRejectedException.Reason.FILE_TOO_LARGE, tooLarge.getReason());
+
+        try (AdmissionController.Permit permit = admission.admit(file("small.txt", 100))) {
+            StringWriter out = new StringWriter();
+            Writer guarded = permit.guard(out);
+            guarded.write("12345");
+            ExtractionRejectedException tooMuch = assertThrows(ExtractionRejectedException.class, () -> guarded.write("6"));
+            assertEquals(ExtractionRejectedException.Reason.OUTPUT_TOO_LARGE, tooMuch.getReason());
+            assertEquals("12345", out.toString());
+        }
+    }
+
+    @Test
+    void testTimeoutAbortsWritesAndInterruptsParser() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 0, 0, 50, 0, 0);
+
+        try (AdmissionController.Permit permit = admission.admit(file("slow.txt", 10))) {
+            assertThrows(InterruptedException.class, () -> Thread.sleep(5_000));
+            assertTrue(permit.isExpired());
+            ExtractionRejectedException e = assertThrows(ExtractionRejectedException.class,
+                    () -> permit.guard(new StringWriter()).write("x"));
+            assertEquals(ExtractionRejectedException.Reason.TIMEOUT, e.getReason());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(1L, admission.getStats().get("timedOut"));
+    }
+
+    private File file(String name, int size) throws Exception {
+        File file = new File(tempDir, name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+}
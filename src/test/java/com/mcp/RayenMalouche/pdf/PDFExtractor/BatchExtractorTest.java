@@ -0,0 +1,112 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.BatchExtractor;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class BatchExtractorTest {
+
+    private final File directory = new File("files-to-extract", "batch-test");
+    private final TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+    private final BatchExtractor batch = new BatchExtractor(service);
+
+    private void createFiles() throws Exception {
+        new File(directory, "nested").mkdirs();
+        SyntheticDocuments.rtf(new File(directory, "b.rtf"), 2);
+        SyntheticDocuments.rtf(new File(directory, "a.rtf"), 2);
+        SyntheticDocuments.rtf(new File(directory, "nested/c.rtf"), 2);
+        Files.writeString(new File(directory, "notes.txt").toPath(), "not an rtf");
+    }
+
+    private void deleteFiles() {
+        new File(directory, "nested/c.rtf").delete();
+        new File(directory, "nested").delete();
+        for (String name : new String[]{"a.rtf", "b.rtf", "notes.txt"}) {
+            new File(directory, name).delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    void testGlobResolvesSortedRelativePaths() throws Exception {
+        createFiles();
+        try {
+            // The shared file index picks the new files up in the background
+            List<String> all = List.of();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (all.size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                all = batch.resolve(null, "batch-test/**.rtf");
+            }
+            assertEquals(List.of("batch-test/a.rtf", "batch-test/b.rtf", "batch-test/nested/c.rtf"), all);
+            assertEquals(List.of("batch-test/a.rtf", "batch-test/b.rtf"), batch.resolve(null, "batch-test/*.rtf"));
+
+            // Explicit names win over the glob, and one of the two is required
+            assertEquals(List.of("x.pdf"), batch.resolve(List.of("x.pdf"), "batch-test/*.rtf"));
+            assertThrows(IllegalArgumentException.class, () -> batch.resolve(List.of(), " "));
+        } finally {
+            deleteFiles();
+        }
+    }
+
+    @Test
+    void testEachFileReportsItsOwnOutcomeOnTheCallingThread() throws Exception {
+        List<String> names = List.of("batch-test/a.rtf", "batch-test/missing.rtf", "batch-test/nested/c.rtf");
+        List<Map<String, Object>> results = Collections.synchronizedList(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+        createFiles();
+        try {
+            batch.extract(names, "text", result -> {
+                assertSame(caller, Thread.currentThread());
+                results.add(result);
+            });
+        } finally {
+            deleteFiles();
+        }
+
+        // Delivered in completion order: one result per file, whatever the order
+        assertEquals(names.size(), results.size());
+        Set<Object> delivered = new HashSet<>();
+        for (Map<String, Object> result : results) {
+            assertTrue(delivered.add(result.get("filename")));
+            assertNotNull(result.get("elapsedMs"));
+            if ("batch-test/missing.rtf".equals(result.get("filename"))) {
+                assertEquals("error", result.get("status"));
+                assertTrue(((String) result.get("message")).contains("not found"));
+            } else {
+                assertEquals("success", result.get("status"));
+                assertTrue(((String) result.get("text")).contains("quick brown fox"));
+            }
+        }
+        assertEquals(Set.copyOf(names), delivered);
+    }
+
+    @Test
+    void testBatchLimitIsCheckedBeforeExtracting() {
+        List<String> names = Collections.nCopies(BatchExtractor.getMaxFiles() + 1, "batch-test/a.rtf");
+        assertThrows(IllegalArgumentException.class, () -> batch.extract(names, "text", result -> fail("extracted")));
+    }
+
+    @Test
+    void testConsumerFailureEndsTheBatch() {
+        List<String> names = List.of("batch-test/a.rtf", "batch-test/b.rtf", "batch-test/nested/c.rtf");
+        List<Object> delivered = new ArrayList<>();
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> batch.extract(names, "metadata", result -> {
+            delivered.add(result.get("filename"));
+            throw new IllegalStateException("client gone");
+        }));
+        assertEquals("client gone", failure.getMessage());
+        assertEquals(1, delivered.size());
+    }
+}
@@ -0,0 +1,91 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.CompactContentHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+class CompactContentHandlerTest {
+
+    private static final String PAGED = "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head>"
+            + "<meta name=\"author\" content=\"x\"/><title>Report</title><style>body { color: red; }</style></head><body>"
+            + page(1, "<h1>Results</h1><p>Revenue   grew\n  in every\tregion.</p>")
+            + page(2, "<p>Costs &amp; margins <b>fell</b>.</p><ul><li>One</li><li>Two</li></ul>")
+            + page(3, "<p>Outlook is stable.</p>")
+            + "</body></html>";
+
+    private static String page(int number, String body) {
+        return "<div class=\"page\"><p>ACME Corp Quarterly Report</p>" + body + "<p>Page " + number + " of 3</p></div>";
+    }
+
+    @Test
+    void testCollapsesWhitespaceAndDropsRepeatedHeadersAndFooters() throws Exception {
+        StringWriter out = new StringWriter();
+        CompactContentHandler handler = new CompactContentHandler(out, false, 10_000, null);
+        parse(PAGED, handler);
+
+        assertEquals("ACME Corp Quarterly Report\nResults\nRevenue grew in every region.\nPage 1 of 3\n"
+                + "Costs & margins fell.\nOne\nTwo\nOutlook is stable.\n", out.toString());
+        assertEquals(4, handler.getRemovedLines());
+        assertFalse(handler.isTruncated());
+    }
+
+    @Test
+    void testMinimalHtmlKeepsStructureOnly() throws Exception {
+        StringWriter out = new StringWriter();
+        parse(PAGED, new CompactContentHandler(out, true, 10_000, null));
+
+        String html = out.toString();
+        assertTrue(html.contains("<h1>Results</h1>\n"));
+        assertTrue(html.contains("<p>Costs &amp; margins fell.</p>\n<li>One</li>\n<li>Two</li>\n"));
+        assertFalse(html.contains("color"));
+        assertFalse(html.contains("author"));
+        assertFalse(html.contains("class="));
+    }
+
+    @Test
+    void testBudgetAndCursorResumeWhereTheLastCallStopped() throws Exception {
+        StringWriter full = new StringWriter();
+        parse(PAGED, new CompactContentHandler(full, false, 10_000, null));
+
+        StringBuilder joined = new StringBuilder();
+        String cursor = null;
+        int calls = 0;
+        do {
+            StringWriter out = new StringWriter();
+            CompactContentHandler handler = new CompactContentHandler(out, false, 20, cursor);
+            try {
+                parse(PAGED, handler);
+            } catch (SAXException e) {
+                assertTrue(handler.isTruncated());
+            }
+            assertTrue(out.toString().length() <= 20);
+            joined.append(out);
+            cursor = handler.getNextCursor();
+            calls++;
+        } while (cursor != null && calls < 100);
+
+        assertNull(cursor);
+        // Blocks too long for the budget are cut, and their pieces no longer end in a newline
+        assertEquals(full.toString().replace("\n", ""), joined.toString().replace("\n", ""));
+    }
+
+    @Test
+    void testBudgetInTokensAndCharacters() {
+        assertEquals(400, CompactContentHandler.budget(100, null));
+        assertEquals(250, CompactContentHandler.budget(100, 250));
+        assertEquals(Integer.MAX_VALUE, CompactContentHandler.budget(null, null));
+        assertThrows(IllegalArgumentException.class, () -> new CompactContentHandler(new StringWriter(), false, 10, "x"));
+    }
+
+    private static void parse(String xhtml, CompactContentHandler handler) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newSAXParser().parse(new InputSource(new StringReader(xhtml)), handler);
+    }
+}
@@ -0,0 +1,113 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.AdmissionController;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the extraction service on generated PDF, DOCX and RTF documents.
+ * The cache is disabled so every invocation parses; run with the benchmarks profile
+ * (see the README) to get throughput, latency and allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    /**
+     * One generated document per format and size, written to files-to-extract for the trial
+     */
+    @State(Scope.Benchmark)
+    public static class Document {
+        @Param({"pdf", "docx", "rtf"})
+        public String format;
+
+        @Param({"small", "large"})
+        public String size;
+
+        TikaExtractorService service;
+        File file;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            File directory = new File("files-to-extract");
+            directory.mkdirs();
+            boolean large = "large".equals(size);
+            File target = new File(directory, "jmh-" + size + "." + format);
+            file = switch (format) {
+                case "pdf" -> SyntheticDocuments.pdf(target, large ? 300 : 10);
+                case "docx" -> SyntheticDocuments.docx(target, large ? 20_000 : 200);
+                default -> SyntheticDocuments.rtf(target, large ? 20_000 : 200);
+            };
+            service = uncachedService();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            file.delete();
+        }
+    }
+
+    /**
+     * The files directory as it is, for the listing benchmark
+     */
+    @State(Scope.Benchmark)
+    public static class Directory {
+        TikaExtractorService service;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            service = uncachedService();
+        }
+    }
+
+    static TikaExtractorService uncachedService() {
+        return new TikaExtractorService(
+                new ExtractionCache(false, 0, null, 0),
+                new AdmissionController(0, Integer.MAX_VALUE, Long.MAX_VALUE, 0, 0, 0));
+    }
+
+    @Benchmark
+    public Map<String, Object> extractToHtml(Document document) throws Exception {
+        return document.service.extractToHtml(document.file.getName());
+    }
+
+    @Benchmark
+    public Map<String, Object> extractText(Document document) throws Exception {
+        return document.service.extractText(document.file.getName());
+    }
+
+    @Benchmark
+    public Map<String, Object> getFileMetadata(Document document) throws Exception {
+        return document.service.getFileMetadata(document.file.getName());
+    }
+
+    @Benchmark
+    public Map<String, Object> getFileMetadataFullParse(Document document) throws Exception {
+        return document.service.getFileMetadata(document.file.getName(), true);
+    }
+
+    @Benchmark
+    public Map<String, Object> listAvailableFiles(Directory directory) throws Exception {
+        return directory.service.listAvailableFiles();
+    }
+}
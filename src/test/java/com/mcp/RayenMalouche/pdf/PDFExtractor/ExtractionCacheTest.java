@@ -0,0 +1,73 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+class ExtractionCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSameContentSharesKey() throws Exception {
+        ExtractionCache cache = new ExtractionCache(true, 1024 * 1024, null, 0);
+        File a = Files.writeString(tempDir.resolve("a.txt"), "hello").toFile();
+        File b = Files.writeString(tempDir.resolve("b.txt"), "hello").toFile();
+        b.setLastModified(a.lastModified() - 60_000);
+
+        assertEquals(cache.keyFor(a, "text"), cache.keyFor(b, "text"));
+        assertNotEquals(cache.keyFor(a, "text"), cache.keyFor(a, "html"));
+    }
+
+    @Test
+    void testLruEviction() {
+        ExtractionCache cache = new ExtractionCache(true, 5000, null, 0);
+        cache.put("first", Map.of("text", "x".repeat(1000)));
+        cache.put("second", Map.of("text", "y".repeat(1000)));
+        cache.get("first");
+        cache.put("third", Map.of("text", "z".repeat(1000)));
+
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    void testDiskTierSurvivesNewInstance() {
+        File dir = tempDir.resolve("cache").toFile();
+        Map<String, Object> result = new HashMap<>();
+        result.put("text", "cached text");
+        new ExtractionCache(true, 1024 * 1024, dir, 1024 * 1024).put("key", result);
+
+        ExtractionCache reopened = new ExtractionCache(true, 1024 * 1024, dir, 1024 * 1024);
+        assertEquals("cached text", reopened.get("key").get("text"));
+        assertEquals(1L, reopened.getStats().get("diskHits"));
+    }
+
+    @Test
+    void testDiskTierEvictsLeastRecentlyRead() {
+        File dir = tempDir.resolve("lru").toFile();
+        ExtractionCache writer = new ExtractionCache(true, 1024 * 1024, dir, 1024 * 1024);
+        writer.put("first", Map.of("text", "x".repeat(1000)));
+        writer.put("second", Map.of("text", "y".repeat(1000)));
+        long now = System.currentTimeMillis();
+        new File(dir, "first.json").setLastModified(now - 20_000);
+        new File(dir, "second.json").setLastModified(now - 10_000);
+
+        // Room for two entries; reading the older one keeps it over the newer one
+        ExtractionCache reopened = new ExtractionCache(true, 1024 * 1024, dir, 2500);
+        assertNotNull(reopened.get("first"));
+        reopened.put("third", Map.of("text", "z".repeat(1000)));
+
+        assertTrue(new File(dir, "first.json").isFile());
+        assertFalse(new File(dir, "second.json").isFile());
+        assertEquals(1L, reopened.getStats().get("diskEvictions"));
+    }
+}
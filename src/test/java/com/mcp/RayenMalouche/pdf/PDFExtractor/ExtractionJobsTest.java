@@ -0,0 +1,118 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionJobs;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionRejectedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class ExtractionJobsTest {
+
+    @Test
+    void testRunsByPriorityAndReturnsResultWindows() throws Exception {
+        ExtractionJobs jobs = new ExtractionJobs(null, 1, 10, 1 << 20, 60_000);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        // Occupy the only worker so the next jobs queue up
+        jobs.submit("blocker", "text", ExtractionJobs.Priority.NORMAL, () -> {
+            release.await();
+            return Map.of("text", "");
+        });
+        String low = id(jobs.submit("low", "text", ExtractionJobs.Priority.LOW, () -> {
+            order.add("low");
+            return Map.of("text", "low");
+        }));
+        String high = id(jobs.submit("high", "text", ExtractionJobs.Priority.HIGH, () -> {
+            order.add("high");
+            return Map.of("text", "0123456789");
+        }));
+        release.countDown();
+
+        awaitState(jobs, low, "SUCCEEDED");
+        awaitState(jobs, high, "SUCCEEDED");
+        assertEquals(List.of("high", "low"), order);
+
+        Map<String, Object> window = jobs.getResult(high, 2, 3);
+        assertEquals("234", window.get("text"));
+        assertEquals(true, window.get("hasMore"));
+        assertEquals(5L, window.get("nextOffset"));
+    }
+
+    @Test
+    void testCancelInterruptsARunningJob() throws Exception {
+        ExtractionJobs jobs = new ExtractionJobs(null, 1, 10, 1 << 20, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        String id = id(jobs.submit("slow", "text", ExtractionJobs.Priority.NORMAL, () -> {
+            started.countDown();
+            Thread.sleep(60_000);
+            return Map.of("text", "never");
+        }));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("CANCELLED", jobs.cancel(id).get("state"));
+        awaitFinished(jobs, id);
+        assertEquals("CANCELLED", jobs.getStatus(id).get("state"));
+        assertThrows(IllegalStateException.class, () -> jobs.getResult(id, 0, 10));
+        assertNull(jobs.getStatus("no-such-job"));
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFullAndEvictsOldResults() throws Exception {
+        ExtractionJobs jobs = new ExtractionJobs(null, 1, 1, 400, 60_000);
+        CountDownLatch release = new CountDownLatch(1);
+        jobs.submit("blocker", "text", ExtractionJobs.Priority.NORMAL, () -> {
+            release.await();
+            return Map.of();
+        });
+        awaitRunning(jobs);
+        jobs.submit("first", "text", ExtractionJobs.Priority.NORMAL, () -> Map.of("text", "a".repeat(30)));
+
+        ExtractionRejectedException e = assertThrows(ExtractionRejectedException.class,
+                () -> jobs.submit("second", "text", ExtractionJobs.Priority.NORMAL, Map::of));
+        assertEquals(ExtractionRejectedException.Reason.OVERLOADED, e.getReason());
+        release.countDown();
+
+        String second = null;
+        for (int i = 0; i < 100 && second == null; i++) {
+            try {
+                second = id(jobs.submit("second", "text", ExtractionJobs.Priority.NORMAL, () -> Map.of("text", "b".repeat(30))));
+            } catch (ExtractionRejectedException full) {
+                Thread.sleep(20);
+            }
+        }
+        awaitState(jobs, second, "SUCCEEDED");
+        assertEquals("b".repeat(30), jobs.getResult(second, 0, 100).get("text"));
+        assertTrue(((Number) jobs.getStats().get("evictedResults")).longValue() >= 1);
+    }
+
+    private static String id(Map<String, Object> status) {
+        return (String) status.get("jobId");
+    }
+
+    private static void awaitRunning(ExtractionJobs jobs) throws InterruptedException {
+        for (int i = 0; i < 250 && ((Number) jobs.getStats().get("running")).intValue() == 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static void awaitFinished(ExtractionJobs jobs, String id) throws InterruptedException {
+        for (int i = 0; i < 250 && !jobs.getStatus(id).containsKey("finishedAt"); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(jobs.getStatus(id).containsKey("finishedAt"));
+    }
+
+    private static void awaitState(ExtractionJobs jobs, String id, String state) throws InterruptedException {
+        for (int i = 0; i < 250 && !state.equals(jobs.getStatus(id).get("state")); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(state, jobs.getStatus(id).get("state"));
+    }
+}
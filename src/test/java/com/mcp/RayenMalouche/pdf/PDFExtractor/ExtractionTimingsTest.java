@@ -0,0 +1,84 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionTimings;
+
+import java.io.IOException;
+import java.util.Map;
+
+class ExtractionTimingsTest {
+
+    @Test
+    void testNestedPhasesRecordTheirOwnTime() throws Exception {
+        ExtractionTimings timings = ExtractionTimings.start("extract-text");
+        try {
+            ExtractionTimings.Phase parsePhase = ExtractionTimings.phase("parse");
+            try {
+                ExtractionTimings.Phase admissionPhase = ExtractionTimings.phase("admission");
+                try {
+                    Thread.sleep(50);
+                } finally {
+                    admissionPhase.close();
+                }
+                Thread.sleep(20);
+            } finally {
+                parsePhase.close();
+            }
+
+            Map<String, Object> snapshot = timings.snapshot();
+            Map<?, ?> phases = (Map<?, ?>) snapshot.get("phasesMs");
+            double admission = ((Number) phases.get("admission")).doubleValue();
+            double parse = ((Number) phases.get("parse")).doubleValue();
+            assertTrue(admission >= 50, "admission " + admission);
+            // The parse phase is charged without the admission wait nested in it
+            assertTrue(parse >= 20 && parse < 50, "parse " + parse);
+            assertTrue(((Number) snapshot.get("totalMs")).doubleValue() >= admission + parse - 1);
+        } finally {
+            timings.finish("success");
+        }
+        assertNull(ExtractionTimings.current());
+    }
+
+    @Test
+    void testOpenPhasesAreCountedUpToNow() throws Exception {
+        ExtractionTimings timings = ExtractionTimings.start("extract-to-html");
+        ExtractionTimings.Phase serialize = ExtractionTimings.phase("serialize");
+        try {
+            Thread.sleep(10);
+            Map<?, ?> phases = (Map<?, ?>) timings.snapshot().get("phasesMs");
+            assertTrue(((Number) phases.get("serialize")).doubleValue() >= 10);
+        } finally {
+            serialize.close();
+            timings.finish("success");
+        }
+    }
+
+    @Test
+    void testTimedBodyIsChargedToItsPhaseEvenWhenItThrows() throws Exception {
+        ExtractionTimings timings = ExtractionTimings.start("extract-text");
+        try {
+            assertEquals("done", ExtractionTimings.time("io", () -> {
+                Thread.sleep(10);
+                return "done";
+            }));
+            assertThrows(IOException.class, () -> ExtractionTimings.time("detect", () -> {
+                throw new IOException("unreadable");
+            }));
+            Map<?, ?> phases = (Map<?, ?>) timings.snapshot().get("phasesMs");
+            assertTrue(((Number) phases.get("io")).doubleValue() >= 10);
+            assertTrue(phases.containsKey("detect"));
+        } finally {
+            timings.finish("success");
+        }
+    }
+
+    @Test
+    void testPhasesWithoutARecorderAreIgnored() {
+        assertNull(ExtractionTimings.current());
+        ExtractionTimings.Phase phase = ExtractionTimings.phase("parse");
+        ExtractionTimings.target("ignored.pdf");
+        phase.close();
+        assertNull(ExtractionTimings.current());
+    }
+}
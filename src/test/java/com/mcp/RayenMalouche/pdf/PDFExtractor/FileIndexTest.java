@@ -0,0 +1,129 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.FileIndex;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class FileIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testQueryFiltersSortsAndTracksChanges() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "hello");
+        Files.writeString(tempDir.resolve("b.txt"), "hello world");
+        Files.writeString(tempDir.resolve("report.html"), "<html><body>x</body></html>");
+        FileIndex index = new FileIndex(tempDir.toFile(), null, true, false, 0);
+        index.start();
+
+        assertEquals(List.of("a.txt", "b.txt", "report.html"), names(index.query(null, null, null, false)));
+        assertEquals(List.of("report.html"), names(index.query("rep", null, null, false)));
+        assertEquals(List.of("a.txt", "b.txt"), names(index.query(null, "text/plain", null, false)));
+        assertEquals("report.html", index.query(null, null, "size", true).get(0).name());
+        assertNotNull(index.query("a", null, null, false).get(0).sha256());
+        long version = index.getVersion();
+        index.query(null, null, null, false);
+        assertEquals(version, index.getVersion());
+
+        Files.delete(tempDir.resolve("b.txt"));
+        Files.writeString(tempDir.resolve("a.txt"), "changed content");
+        List<FileIndex.Entry> entries = index.query(null, "text/plain", null, false);
+        assertEquals(List.of("a.txt"), names(entries));
+        assertEquals(15, entries.get(0).size());
+        assertTrue(index.getVersion() > version);
+    }
+
+    @Test
+    void testVersionTagsDifferBetweenIndexes() throws Exception {
+        // Same number of files, different files: as if c.pdf was replaced by d.pdf during a restart
+        Files.createDirectories(tempDir.resolve("before"));
+        Files.createDirectories(tempDir.resolve("after"));
+        Files.writeString(tempDir.resolve("before/c.txt"), "c");
+        Files.writeString(tempDir.resolve("after/d.txt"), "d");
+        FileIndex before = new FileIndex(tempDir.resolve("before").toFile(), null, false, false, 0);
+        FileIndex after = new FileIndex(tempDir.resolve("after").toFile(), null, false, false, 0);
+        before.start();
+        after.start();
+
+        assertEquals(before.getVersion(), after.getVersion());
+        assertNotEquals(before.getVersionTag(), after.getVersionTag());
+        assertEquals(before.getVersionTag(), before.getVersionTag());
+    }
+
+    @Test
+    void testIndexesSubdirectoriesByRelativePath() throws Exception {
+        Files.createDirectories(tempDir.resolve("reports/2024"));
+        Files.createDirectories(tempDir.resolve("scans"));
+        Files.writeString(tempDir.resolve("top.txt"), "top");
+        Files.writeString(tempDir.resolve("reports/2024/q1.txt"), "first quarter");
+        Files.writeString(tempDir.resolve("scans/page.txt"), "scan");
+        FileIndex index = new FileIndex(tempDir.toFile(), null, false, false, 0);
+        index.start();
+
+        assertEquals(List.of("reports/2024/q1.txt", "scans/page.txt", "top.txt"), names(index.query(null, null, null, false)));
+        assertEquals(List.of("reports/2024/q1.txt"), names(index.query("reports/", null, null, false)));
+
+        // Deleting a directory drops everything below it
+        Files.delete(tempDir.resolve("scans/page.txt"));
+        Files.delete(tempDir.resolve("scans"));
+        assertEquals(List.of("reports/2024/q1.txt", "top.txt"), names(index.query(null, null, null, false)));
+    }
+
+    @Test
+    void testSnapshotSkipsReindexingUnchangedFiles() throws Exception {
+        File directory = Files.createDirectories(tempDir.resolve("files")).toFile();
+        Files.writeString(directory.toPath().resolve("a.txt"), "hello");
+        File snapshot = tempDir.resolve("index.json").toFile();
+
+        FileIndex first = new FileIndex(directory, snapshot, true, false, 0);
+        first.start();
+        first.close();
+        assertTrue(snapshot.isFile());
+
+        FileIndex reopened = new FileIndex(directory, snapshot, true, false, 0);
+        reopened.start();
+        assertEquals(List.of("a.txt"), names(reopened.query(null, null, null, false)));
+        assertEquals(0L, reopened.getStats().get("indexed"));
+    }
+
+    @Test
+    void testWatchPicksUpNewFiles() throws Exception {
+        FileIndex index = new FileIndex(tempDir.toFile(), null, false, true, 0);
+        index.start();
+        try {
+            assertEquals(true, index.getStats().get("watching"));
+            Files.writeString(tempDir.resolve("new.txt"), "hello");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (index.query(null, null, null, false).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(List.of("new.txt"), names(index.query(null, null, null, false)));
+
+            // A new subdirectory is walked and watched as well
+            Files.createDirectories(tempDir.resolve("drop/nested"));
+            Thread.sleep(200);
+            Files.writeString(tempDir.resolve("drop/nested/late.txt"), "hello");
+            deadline = System.currentTimeMillis() + 10_000;
+            while (index.query("drop/", null, null, false).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(List.of("drop/nested/late.txt"), names(index.query("drop/", null, null, false)));
+
+            // Served from the watch: the only rescan is the initial walk
+            assertEquals(1L, index.getStats().get("rescans"));
+        } finally {
+            index.close();
+        }
+    }
+
+    private static List<String> names(List<FileIndex.Entry> entries) {
+        return entries.stream().map(FileIndex.Entry::name).toList();
+    }
+}
@@ -0,0 +1,34 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ForkedParserPool;
+
+import java.io.File;
+import java.util.Map;
+
+class ForkedParserPoolTest {
+    @Test
+    void testWorkerExtractsAndIsRecycled() throws Exception {
+        File document = new File("files-to-extract", "forked-pool-test.pdf");
+        document.getParentFile().mkdirs();
+        SyntheticDocuments.pdf(document, 3);
+
+        ForkedParserPool pool = new ForkedParserPool(1, 1, "256m");
+        try {
+            Map<String, Object> result = pool.execute(Map.of("op", "text", "filename", document.getName()));
+            assertTrue(((String) result.get("text")).contains("Page 3"));
+
+            // Errors cross the process boundary with their type
+            assertThrows(IllegalArgumentException.class, () -> pool.execute(Map.of(
+                    "op", "pages", "filename", document.getName(), "startPage", 9, "endPage", 9, "html", false)));
+
+            Map<String, Object> stats = pool.getStats();
+            assertEquals(2L, stats.get("recycled"));
+            assertEquals(3L, stats.get("started"));
+        } finally {
+            pool.close();
+            document.delete();
+        }
+    }
+}
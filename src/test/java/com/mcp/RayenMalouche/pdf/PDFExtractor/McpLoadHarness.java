@@ -0,0 +1,128 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load harness for the HTTP/SSE MCP server: concurrent clients call extract-pages while a probe
+ * measures /api/health latency, to compare sync mode with async mode (mcp.async.enabled or --async).
+ * Start the server from the project root, then run the main method from the same directory:
+ * McpLoadHarness [baseUrl] [clients] [callsPerClient]
+ */
+public class McpLoadHarness {
+
+    private static final String FILENAME = "load-test.pdf";
+    private static final int PAGES = 50;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:45451";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int callsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        File document = new File("files-to-extract", FILENAME);
+        document.getParentFile().mkdirs();
+        SyntheticDocuments.pdf(document, PAGES);
+
+        List<Long> callLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> healthLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<?> probe = workers.submit(() -> probeHealth(baseUrl, running, healthLatencies));
+
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                futures.add(workers.submit(() -> runClient(baseUrl, callsPerClient, callLatencies, errors)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            probe.get();
+
+            System.out.printf("clients=%d calls=%d errors=%d elapsed=%.2fs throughput=%.1f calls/s%n",
+                    clients, callLatencies.size(), errors.get(), seconds, callLatencies.size() / seconds);
+            report("extract-pages", callLatencies);
+            report("/api/health", healthLatencies);
+        } finally {
+            workers.shutdownNow();
+            document.delete();
+        }
+    }
+
+    private static void runClient(String baseUrl, int calls, List<Long> latencies, AtomicInteger errors) {
+        HttpClientSseClientTransport transport = HttpClientSseClientTransport.builder(baseUrl).build();
+        McpSyncClient client = McpClient.sync(transport).requestTimeout(Duration.ofMinutes(5)).build();
+        try {
+            client.initialize();
+            for (int i = 0; i < calls; i++) {
+                // extract-pages bypasses the result cache, so every call does a real parse
+                long start = System.nanoTime();
+                McpSchema.CallToolResult result = client.callTool(new McpSchema.CallToolRequest("extract-pages",
+                        Map.of("filename", FILENAME, "startPage", 1, "endPage", PAGES)));
+                latencies.add(System.nanoTime() - start);
+                if (Boolean.TRUE.equals(result.isError())) {
+                    errors.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            System.err.println("Client failed: " + e.getMessage());
+        } finally {
+            client.closeGracefully();
+        }
+    }
+
+    private static void probeHealth(String baseUrl, AtomicBoolean running, List<Long> latencies) {
+        HttpClient http = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/health")).build();
+        while (running.get()) {
+            try {
+                long start = System.nanoTime();
+                http.send(request, HttpResponse.BodyHandlers.discarding());
+                latencies.add(System.nanoTime() - start);
+                Thread.sleep(50);
+            } catch (Exception e) {
+                return;
+            }
+        }
+    }
+
+    private static void report(String name, List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        if (sorted.isEmpty()) {
+            System.out.printf("%-14s no samples%n", name);
+            return;
+        }
+        Collections.sort(sorted);
+        System.out.printf("%-14s n=%d p50=%.1fms p99=%.1fms max=%.1fms%n", name, sorted.size(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+}
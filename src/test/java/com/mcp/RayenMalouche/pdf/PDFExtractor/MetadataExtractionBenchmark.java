@@ -0,0 +1,52 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Compares get-file-metadata latency between the metadata-only path and the full parse.
+ * Run the main method from the project root; the synthetic documents are written to
+ * files-to-extract and removed afterwards.
+ */
+public class MetadataExtractionBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+
+        List<File> documents = List.of(
+                SyntheticDocuments.pdf(new File(directory, "bench-metadata.pdf"), 500),
+                SyntheticDocuments.docx(new File(directory, "bench-metadata.docx"), 20_000),
+                SyntheticDocuments.rtf(new File(directory, "bench-metadata.rtf"), 20_000));
+
+        // Uncached, so every iteration parses
+        TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+        try {
+            System.out.printf("%-22s %12s %12s %8s%n", "document", "full (ms)", "fast (ms)", "speedup");
+            for (File document : documents) {
+                double full = time(service, document.getName(), true);
+                double fast = time(service, document.getName(), false);
+                System.out.printf("%-22s %12.2f %12.2f %7.1fx%n", document.getName(), full, fast, full / fast);
+            }
+        } finally {
+            documents.forEach(File::delete);
+        }
+    }
+
+    private static double time(TikaExtractorService service, String filename, boolean fullParse) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            service.getFileMetadata(filename, fullParse);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            service.getFileMetadata(filename, fullParse);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+    }
+}
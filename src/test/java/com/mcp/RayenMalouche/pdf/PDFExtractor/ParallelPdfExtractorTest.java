@@ -0,0 +1,103 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ParallelPdfExtractor;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class ParallelPdfExtractorTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testParallelOutputMatchesSerialOutput() throws Exception {
+        File pdf = SyntheticDocuments.pdf(tempDir.resolve("long.pdf").toFile(), 23);
+
+        ToXMLContentHandler serial = new ToXMLContentHandler();
+        new ParallelPdfExtractor(1, 1, 1000).extract(pdf, 1, 23, serial, new Metadata());
+        ToXMLContentHandler parallel = new ToXMLContentHandler();
+        new ParallelPdfExtractor(4, 1, 3).extract(pdf, 1, 23, parallel, new Metadata());
+
+        assertEquals(serial.toString(), parallel.toString());
+        assertEquals(23, parallel.toString().split("<div class=\"page\">", -1).length - 1);
+
+        // A sub-range keeps its pages in order
+        ToXMLContentHandler range = new ToXMLContentHandler();
+        new ParallelPdfExtractor(4, 1, 2).extract(pdf, 5, 11, range, new Metadata());
+        assertEquals(7, range.toString().split("<div class=\"page\">", -1).length - 1);
+    }
+
+    @Test
+    void testSlowConsumerDoesNotHoldUpOtherExtractions() throws Exception {
+        File pdf = SyntheticDocuments.pdf(tempDir.resolve("long.pdf").toFile(), 40);
+        ParallelPdfExtractor extractor = new ParallelPdfExtractor(2, 1, 1);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        ToXMLContentHandler slow = new ToXMLContentHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, org.xml.sax.Attributes atts) throws SAXException {
+                if ("div".equals(localName) && stalled.getCount() > 0) {
+                    stalled.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        throw new SAXException(e);
+                    }
+                }
+                super.startElement(uri, localName, qName, atts);
+            }
+        };
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                extractor.extract(pdf, 1, 40, slow, new Metadata());
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertTrue(stalled.await(30, TimeUnit.SECONDS));
+
+        // The first extraction's window is full and its consumer is stuck: the second still gets the pool
+        ToXMLContentHandler second = new ToXMLContentHandler();
+        CompletableFuture.runAsync(() -> {
+            try {
+                extractor.extract(pdf, 1, 40, second, new Metadata());
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }).get(30, TimeUnit.SECONDS);
+        assertEquals(40, second.toString().split("<div class=\"page\">", -1).length - 1);
+
+        resume.countDown();
+        first.get(30, TimeUnit.SECONDS);
+        assertEquals(40, slow.toString().split("<div class=\"page\">", -1).length - 1);
+    }
+
+    @Test
+    void testHandlerFailureStopsExtraction() throws Exception {
+        File pdf = SyntheticDocuments.pdf(tempDir.resolve("long.pdf").toFile(), 40);
+        ToXMLContentHandler failing = new ToXMLContentHandler() {
+            private int pages;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, org.xml.sax.Attributes atts) throws SAXException {
+                if ("div".equals(localName) && ++pages > 5) {
+                    throw new SAXException("client went away");
+                }
+                super.startElement(uri, localName, qName, atts);
+            }
+        };
+        SAXException e = assertThrows(SAXException.class,
+                () -> new ParallelPdfExtractor(4, 1, 2).extract(pdf, 1, 40, failing, new Metadata()));
+        assertEquals("client went away", e.getMessage());
+    }
+}
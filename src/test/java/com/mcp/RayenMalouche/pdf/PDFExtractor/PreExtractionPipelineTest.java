@@ -0,0 +1,89 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.AdmissionController;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.FileIndex;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.PreExtractionPipeline;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class PreExtractionPipelineTest {
+    @TempDir
+    Path tempDir;
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    // Records what the pipeline asks for instead of parsing
+    private final TikaExtractorService service = new TikaExtractorService(
+            new ExtractionCache(false, 0, null, 0), new AdmissionController(1, 0, 0, 0, 0, 0)) {
+        @Override
+        public Map<String, Object> extractText(String filename) {
+            calls.add("text:" + filename);
+            return Map.of();
+        }
+
+        @Override
+        public Map<String, Object> getFileMetadata(String filename) {
+            calls.add("metadata:" + filename);
+            return Map.of();
+        }
+    };
+
+    @Test
+    void testExtractsExistingNewAndChangedFilesOnce() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "hello");
+        FileIndex files = new FileIndex(tempDir.toFile(), null, false, false, 0);
+        files.start();
+        PreExtractionPipeline pipeline = new PreExtractionPipeline(service, files, new AdmissionController(1, 0, 0, 0, 0, 0),
+                List.of("text", "metadata"), 1, 10, 10, 50);
+        pipeline.start();
+        try {
+            awaitExtracted(pipeline, 1);
+            assertEquals(List.of("text:a.txt", "metadata:a.txt"), calls);
+
+            Files.writeString(tempDir.resolve("b.txt"), "world");
+            Files.writeString(tempDir.resolve("a.txt"), "hello again");
+            awaitExtracted(pipeline, 3);
+            // Rescans of unchanged files extract nothing more
+            Thread.sleep(200);
+            assertEquals(3L, pipeline.getStats().get("extracted"));
+            assertEquals(6, calls.size());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    void testRefillsTheQueueAfterDroppingNotifications() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(tempDir.resolve("file" + i + ".txt"), "content " + i);
+        }
+        FileIndex files = new FileIndex(tempDir.toFile(), null, false, false, 0);
+        files.start();
+        PreExtractionPipeline pipeline = new PreExtractionPipeline(service, files, new AdmissionController(1, 0, 0, 0, 0, 0),
+                List.of("text"), 1, 2, 10, 60_000);
+        pipeline.start();
+        try {
+            awaitExtracted(pipeline, 5);
+            assertTrue(((Number) pipeline.getStats().get("dropped")).longValue() > 0);
+            assertEquals(5L, calls.stream().distinct().count());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    private static void awaitExtracted(PreExtractionPipeline pipeline, long count) throws InterruptedException {
+        for (int i = 0; i < 250 && ((Number) pipeline.getStats().get("extracted")).longValue() < count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, pipeline.getStats().get("extracted"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ResultStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+class ResultStoreTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsCompressAndSurviveARestart() throws Exception {
+        String html = "<div class=\"page\"><p>Footer \u00e9</p></div>".repeat(1000);
+        ResultStore store = new ResultStore(tempDir.toFile(), 1 << 20, 10 << 20);
+
+        StringWriter response = new StringWriter();
+        try (ResultStore.Recording recording = store.record("key-html")) {
+            Writer tee = recording.tee(response);
+            tee.write(html);
+            assertTrue(recording.commit());
+        }
+        assertEquals(html, response.toString());
+        try (ResultStore.Recording recording = store.record("failed")) {
+            recording.writer().write("partial");
+        }
+        assertNull(store.open("failed"));
+
+        ResultStore reopened = new ResultStore(tempDir.toFile(), 1 << 20, 10 << 20);
+        try (ResultStore.Stored stored = reopened.open("key-html")) {
+            assertEquals(html.getBytes(StandardCharsets.UTF_8).length, stored.getLength());
+            assertTrue(stored.getCompressedLength() < stored.getLength() / 10);
+
+            // The compressed bytes are a gzip stream of their own
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            stored.transferCompressed(compressed);
+            assertEquals(stored.getCompressedLength(), compressed.size());
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+                assertEquals(html, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            try (InputStream in = stored.openInflated()) {
+                assertEquals(html, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void testLengthIsTheNumberOfBytesInflated() throws Exception {
+        ResultStore store = new ResultStore(tempDir.toFile(), 1 << 20, 10 << 20);
+        try (ResultStore.Recording recording = store.record("key-surrogates")) {
+            Writer writer = recording.writer();
+            // A pair split across writes, then lone halves, which the encoder replaces with '?'
+            writer.write("pair \ud83d");
+            writer.write("\ude00 lone \ud800 and \udc00");
+            writer.write('\ud800');
+            writer.write(" end");
+            assertTrue(recording.commit());
+        }
+
+        try (ResultStore.Stored stored = store.open("key-surrogates")) {
+            try (InputStream in = stored.openInflated()) {
+                byte[] inflated = in.readAllBytes();
+                assertEquals(inflated.length, stored.getLength());
+                assertEquals("pair \ud83d\ude00 lone ? and ?? end", new String(inflated, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void testDropsOldestSegmentAndTruncatesIncompleteRecords() throws Exception {
+        ResultStore store = new ResultStore(tempDir.toFile(), 600, 1500);
+        for (int i = 0; i < 10; i++) {
+            try (ResultStore.Recording recording = store.record("key-" + i)) {
+                // Random digits compress poorly, so each record takes a segment of its own
+                recording.writer().write(new Random(i).ints(100, 0, 1_000_000)
+                        .mapToObj(Integer::toString).collect(Collectors.joining(" ")));
+                recording.commit();
+            }
+        }
+        assertNull(store.open("key-0"));
+        try (ResultStore.Stored stored = store.open("key-9")) {
+            assertNotNull(stored);
+        }
+        assertTrue(((Number) store.getStats().get("evictedSegments")).longValue() > 0);
+
+        // A crash in the middle of an append leaves a partial record at the end of the last segment
+        File[] segments = tempDir.toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+        Arrays.sort(segments);
+        File last = segments[segments.length - 1];
+        long length = last.length();
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.setLength(length - 5);
+        }
+        ResultStore reopened = new ResultStore(tempDir.toFile(), 600, 1500);
+        assertEquals(store.size() - 1, reopened.size());
+        try (ResultStore.Recording recording = reopened.record("after")) {
+            recording.writer().write("appended after recovery");
+            recording.commit();
+        }
+        try (ResultStore.Stored stored = reopened.open("after");
+             InputStream in = stored.openInflated()) {
+            assertEquals("appended after recovery", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.SearchIndex;
+
+import java.util.List;
+import java.util.Map;
+
+class SearchIndexTest {
+
+    @Test
+    void testRanksDocumentsAndReturnsSnippetsWithPages() {
+        SearchIndex index = new SearchIndex(null, null);
+        String report = "Quarterly revenue grew in every region. " + "Filler text about nothing. ".repeat(20)
+                + "Revenue forecasts for the next quarterly period are on this page.";
+        index.add("reports/q3.pdf", 100, 1, report, new int[]{0, 200});
+        index.add("notes.txt", 50, 1, "A note that mentions revenue once.", new int[0]);
+        index.add("other.txt", 50, 1, "Nothing relevant here.", new int[0]);
+
+        Map<String, Object> result = index.search("quarterly revenue", 10, null, 3);
+        assertEquals(2, result.get("total"));
+        List<?> hits = (List<?>) result.get("hits");
+        Map<?, ?> best = (Map<?, ?>) hits.get(0);
+        assertEquals("reports/q3.pdf", best.get("filename"));
+        assertEquals(4L, best.get("matches"));
+
+        List<?> snippets = (List<?>) best.get("snippets");
+        assertEquals(2, snippets.size());
+        Map<?, ?> first = (Map<?, ?>) snippets.get(0);
+        Map<?, ?> last = (Map<?, ?>) snippets.get(1);
+        assertEquals(1, first.get("page"));
+        assertEquals(2, last.get("page"));
+        assertTrue(((String) first.get("text")).startsWith("Quarterly revenue grew"));
+        assertTrue(((String) last.get("text")).contains("Revenue forecasts"));
+    }
+
+    @Test
+    void testReindexingAndRemovalReplacePostings() {
+        SearchIndex index = new SearchIndex(null, null);
+        index.add("a.txt", 10, 1, "alpha beta", new int[0]);
+        index.add("dir/b.txt", 10, 1, "alpha gamma", new int[0]);
+        assertTrue(index.isCurrent("a.txt", 10, 1));
+        assertFalse(index.isCurrent("a.txt", 10, 2));
+
+        index.add("a.txt", 12, 2, "delta", new int[0]);
+        assertEquals(1, index.search("alpha", 10, null, 1).get("total"));
+        assertEquals(1, index.search("DELTA", 10, null, 1).get("total"));
+        assertEquals(0, index.search("alpha", 10, "other/", 1).get("total"));
+
+        index.remove("dir/b.txt");
+        assertEquals(0, index.search("alpha gamma", 10, null, 1).get("total"));
+        assertEquals(1, index.size());
+        assertThrows(IllegalArgumentException.class, () -> index.search(" ", 10, null, 1));
+    }
+
+    @Test
+    void testDocumentAndCharacterLimits() {
+        SearchIndex index = new SearchIndex(null, null, null, 2, 25, 1);
+        assertTrue(index.add("a.txt", 10, 1, "alpha beta", new int[0]));
+        assertFalse(index.add("big.txt", 30, 1, "gamma delta epsilon zeta", new int[0]));
+        assertTrue(index.add("b.txt", 5, 1, "gamma", new int[0]));
+        assertFalse(index.add("c.txt", 5, 1, "delta", new int[0]));
+        assertEquals(2, index.size());
+
+        // Replacing a document frees its own room first
+        assertTrue(index.add("a.txt", 15, 2, "alpha beta gamma", new int[0]));
+        assertEquals(2, index.search("gamma", 10, null, 1).get("total"));
+    }
+}
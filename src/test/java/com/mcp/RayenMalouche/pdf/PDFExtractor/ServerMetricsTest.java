@@ -0,0 +1,45 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.AdmissionController;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ServerMetrics;
+
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+class ServerMetricsTest {
+
+    @Test
+    void testScrapeReportsToolCallsParsesAndLoad() {
+        AdmissionController admission = new AdmissionController(2, 0, 0, 0, 0, 0);
+        ServerMetrics metrics = new ServerMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), admission);
+
+        metrics.recordToolCall("extract-text", "success", TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordParse("text", "application/pdf; charset=UTF-8", TimeUnit.MILLISECONDS.toNanos(20), 4096, 1000);
+        metrics.sseStreamOpened();
+
+        String scrape = metrics.scrape();
+        assertTrue(metrics.isEnabled());
+        assertTrue(scrape.contains("mcp_tool_calls_seconds_count{outcome=\"success\",tool=\"extract-text\"} 1"));
+        assertTrue(scrape.contains("mimeType=\"application/pdf\""), "The charset is not part of the MIME type tag");
+        assertTrue(scrape.contains("extraction_input_bytes_total{mimeType=\"application/pdf\"} 4096"));
+        assertTrue(scrape.contains("mcp_sse_streams 1"));
+        assertTrue(scrape.contains("extraction_parses_running 0"));
+        assertTrue(scrape.contains("jvm_memory_used_bytes"));
+    }
+
+    @Test
+    void testDisabledMetricsRecordNothing() {
+        ServerMetrics metrics = new ServerMetrics(new CompositeMeterRegistry(), null);
+
+        metrics.recordToolCall("extract-text", "error", 1000);
+        metrics.recordParse("html", null, 1000, 10, 10);
+
+        assertFalse(metrics.isEnabled());
+        assertEquals("", metrics.scrape());
+    }
+}
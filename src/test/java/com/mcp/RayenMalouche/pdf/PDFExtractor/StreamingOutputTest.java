@@ -0,0 +1,75 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.StreamingHtmlContentHandler;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.JsonEscapingWriter;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.JsonResponseWriter;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+
+class StreamingOutputTest {
+    @Test
+    void testHtmlHandlerInjectsHeadContent() throws Exception {
+        StringWriter out = new StringWriter();
+        StreamingHtmlContentHandler handler = new StreamingHtmlContentHandler(out, "<style></style>");
+        AttributesImpl none = new AttributesImpl();
+        AttributesImpl meta = new AttributesImpl();
+        meta.addAttribute("", "content", "content", "CDATA", "a \"b\"");
+
+        handler.startDocument();
+        handler.startElement("", "html", "html", none);
+        handler.startElement("", "head", "head", none);
+        handler.startElement("", "meta", "meta", meta);
+        handler.endElement("", "meta", "meta");
+        handler.endElement("", "head", "head");
+        handler.startElement("", "body", "body", none);
+        handler.characters("1 < 2 & 3".toCharArray(), 0, 9);
+        handler.endElement("", "body", "body");
+        handler.endElement("", "html", "html");
+        handler.endDocument();
+
+        assertEquals("<html><head><style></style><meta content=\"a &quot;b&quot;\"></head>"
+                + "<body>1 &lt; 2 &amp; 3</body></html>", out.toString());
+    }
+
+    @Test
+    void testJsonEscapingWriterProducesValidJson() throws Exception {
+        String raw = "quote \" slash \\ tab \t nul \u0000 form \f";
+        StringWriter out = new StringWriter();
+        out.write('"');
+        try (Writer escaper = new JsonEscapingWriter(out)) {
+            escaper.write(raw);
+        }
+        out.write('"');
+
+        assertEquals(raw, new ObjectMapper().readValue(out.toString(), String.class));
+    }
+
+    @Test
+    void testJsonResponseWriterEscapesAndReusesBuffer() throws Exception {
+        String raw = "quote \" slash \\ control \u0001 \u001f";
+        String nested = JsonResponseWriter.object(json -> {
+            json.writeStringField("text", raw);
+            json.writeStringField("inner", JsonResponseWriter.object(inner -> inner.writeNumberField("n", 1)));
+        });
+        String next = JsonResponseWriter.object(json -> json.writeStringField("text", "second"));
+
+        Map<?, ?> parsed = new ObjectMapper().readValue(nested, Map.class);
+        assertEquals(raw, parsed.get("text"));
+        assertEquals("{\"n\":1}", parsed.get("inner"));
+        assertEquals("{\"text\":\"second\"}", next);
+
+        // A failed render leaves nothing behind for the next one
+        assertThrows(IOException.class, () -> JsonResponseWriter.object(json -> {
+            json.writeStringField("text", "partial");
+            throw new IOException("client gone");
+        }));
+        assertEquals("{\"text\":\"third\"}", JsonResponseWriter.object(json -> json.writeStringField("text", "third")));
+    }
+}
@@ -0,0 +1,76 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generates large synthetic PDF, DOCX and RTF documents for tests and benchmarks
+ */
+public final class SyntheticDocuments {
+
+    private static final String LINE = "The quick brown fox jumps over the lazy dog while the extractor keeps counting pages";
+
+    private SyntheticDocuments() {
+    }
+
+    public static File pdf(File target, int pages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDDocumentInformation info = document.getDocumentInformation();
+            info.setTitle("Synthetic PDF");
+            info.setAuthor("Benchmark");
+            for (int p = 1; p <= pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.newLineAtOffset(50, 740);
+                    content.showText("Page " + p);
+                    for (int i = 0; i < 40; i++) {
+                        content.newLineAtOffset(0, -16);
+                        content.showText(LINE);
+                    }
+                    content.endText();
+                }
+            }
+            document.save(target);
+        }
+        return target;
+    }
+
+    public static File docx(File target, int paragraphs) throws IOException {
+        try (XWPFDocument document = new XWPFDocument();
+             OutputStream out = new FileOutputStream(target)) {
+            document.getProperties().getCoreProperties().setTitle("Synthetic DOCX");
+            document.getProperties().getCoreProperties().setCreator("Benchmark");
+            for (int i = 0; i < paragraphs; i++) {
+                document.createParagraph().createRun().setText(i + " " + LINE);
+            }
+            document.write(out);
+        }
+        return target;
+    }
+
+    public static File rtf(File target, int paragraphs) throws IOException {
+        StringBuilder rtf = new StringBuilder();
+        rtf.append("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0 Arial;}}");
+        rtf.append("{\\info{\\title Synthetic RTF}{\\author Benchmark}}\n");
+        for (int i = 0; i < paragraphs; i++) {
+            rtf.append("\\pard ").append(i).append(' ').append(LINE).append("\\par\n");
+        }
+        rtf.append('}');
+        Files.writeString(target.toPath(), rtf, StandardCharsets.US_ASCII);
+        return target;
+    }
+}
@@ -2,8 +2,13 @@ package com.mcp.RayenMalouche.pdf.PDFExtractor;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
 import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.Map;
 
 class TikaExtractorServiceTest {
@@ -15,4 +20,260 @@ class TikaExtractorServiceTest {
         assertEquals("application/pdf", result.get("contentType"));
         assertTrue(((String) result.get("html")).contains("<style>"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPathsOutsideFilesDirectoryAreRejected() {
+        TikaExtractorService service = new TikaExtractorService();
+        assertThrows(IllegalArgumentException.class, () -> service.extractText("../pom.xml"));
+        assertThrows(IllegalArgumentException.class, () -> service.extractText("sub/../../pom.xml"));
+        assertThrows(IllegalArgumentException.class, () -> service.getFileMetadata(new java.io.File("pom.xml").getAbsolutePath()));
+    }
+
+    @Test
+    void testWarmUpParsesBundledSamples() {
+        TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+        assertFalse(service.isWarmedUp());
+        assertTrue(service.warmUp() >= 0);
+        assertTrue(service.isWarmedUp());
+    }
+
+    @Test
+    void testKnownTypesAreRoutedPastAutoDetection() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File pdf = SyntheticDocuments.pdf(new File(directory, "routing-test.pdf"), 2);
+        File docx = SyntheticDocuments.docx(new File(directory, "routing-test.docx"), 3);
+        File mislabeled = new File(directory, "routing-mislabeled.pdf");
+        Files.writeString(mislabeled.toPath(), "plain text behind a pdf extension");
+        try {
+            TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+            assertEquals("application/pdf", service.extractText(pdf.getName()).get("contentType"));
+            assertTrue(((String) service.extractText(docx.getName()).get("contentType")).contains("wordprocessingml"));
+
+            // Name and content disagree: detected from the content instead
+            Map<String, Object> result = service.extractText(mislabeled.getName());
+            assertTrue(((String) result.get("contentType")).startsWith("text/plain"));
+            assertTrue(((String) result.get("text")).contains("plain text"));
+
+            assertEquals(2L, service.getParserStats().get("routed"));
+            assertEquals(1L, service.getParserStats().get("autoDetected"));
+        } finally {
+            pdf.delete();
+            docx.delete();
+            mislabeled.delete();
+        }
+    }
+
+    @Test
+    void testStreamedExtractionsFillTheCache() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File rtf = SyntheticDocuments.rtf(new File(directory, "stream-cache-test.rtf"), 20);
+        try {
+            ExtractionCache cache = new ExtractionCache(true, 16 * 1024 * 1024, null, 0);
+            TikaExtractorService service = new TikaExtractorService(cache);
+            StringWriter streamed = new StringWriter();
+            service.streamText(rtf.getName(), streamed);
+            assertEquals(0L, cache.getStats().get("hits"));
+
+            StringWriter again = new StringWriter();
+            Map<String, Object> result = service.streamText(rtf.getName(), again);
+            assertEquals(1L, cache.getStats().get("hits"));
+            assertEquals(streamed.toString(), again.toString());
+            assertEquals(streamed.toString(), service.extractText(rtf.getName()).get("text"));
+            assertFalse(result.containsKey("text"));
+
+            // Too large for an entry: streamed, but not kept
+            ExtractionCache tiny = new ExtractionCache(true, 64, null, 0);
+            TikaExtractorService uncached = new TikaExtractorService(tiny);
+            uncached.streamHtml(rtf.getName(), new StringWriter());
+            uncached.streamHtml(rtf.getName(), new StringWriter());
+            assertEquals(0L, tiny.getStats().get("hits"));
+        } finally {
+            rtf.delete();
+        }
+    }
+
+    @Test
+    void testIdenticalFilesReportTheirOwnPathFromTheCache() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File original = SyntheticDocuments.rtf(new File(directory, "cache-original-test.rtf"), 2);
+        File copy = new File(directory, "cache-copy-test.rtf");
+        Files.copy(original.toPath(), copy.toPath());
+        try {
+            ExtractionCache cache = new ExtractionCache(true, 16 * 1024 * 1024, null, 0);
+            TikaExtractorService service = new TikaExtractorService(cache);
+            for (boolean fullParse : new boolean[]{false, true}) {
+                service.getFileMetadata(original.getName(), fullParse);
+                Map<String, Object> metadata = service.getFileMetadata(copy.getName(), fullParse);
+                assertEquals(copy.getAbsolutePath(), metadata.get("path"));
+                assertEquals(copy.length(), metadata.get("fileSize"));
+                assertEquals(copy.getName(), ((Map<?, ?>) metadata.get("metadata")).get("resourceName"));
+            }
+
+            service.extractToHtml(original.getName());
+            Map<String, Object> html = service.extractToHtml(copy.getName());
+            assertEquals(copy.getName(), html.get("filename"));
+            assertEquals(copy.getName(), ((Map<?, ?>) html.get("metadata")).get("resourceName"));
+            assertEquals(3L, cache.getStats().get("hits"));
+
+            // The first file's entry is unchanged by the second file's request
+            Map<String, Object> again = service.extractToHtml(original.getName());
+            assertEquals(original.getName(), ((Map<?, ?>) again.get("metadata")).get("resourceName"));
+        } finally {
+            original.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    void testTextWindowBoundsAndContinuation() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File rtf = SyntheticDocuments.rtf(new File(directory, "window-test.rtf"), 20);
+        try {
+            // Parsed up to the window without the cache, sliced from the cached text with it
+            for (ExtractionCache cache : new ExtractionCache[]{
+                    new ExtractionCache(false, 0, null, 0), new ExtractionCache(true, 16 * 1024 * 1024, null, 0)}) {
+                TikaExtractorService service = new TikaExtractorService(cache);
+                String full = (String) service.extractText(rtf.getName()).get("text");
+                assertTrue(full.length() > 300);
+
+                Map<String, Object> first = service.extractText(rtf.getName(), 0, 100);
+                assertEquals(full.substring(0, 100), first.get("text"));
+                assertEquals(true, first.get("hasMore"));
+                assertEquals(100L, ((Number) first.get("nextOffset")).longValue());
+
+                Map<String, Object> second = service.extractText(rtf.getName(), 100, 100);
+                assertEquals(full.substring(100, 200), second.get("text"));
+                assertEquals(100L, ((Number) second.get("offset")).longValue());
+
+                Map<String, Object> last = service.extractText(rtf.getName(), full.length() - 10, 100);
+                assertEquals(full.substring(full.length() - 10), last.get("text"));
+                assertEquals(false, last.get("hasMore"));
+                assertFalse(last.containsKey("nextOffset"));
+
+                Map<String, Object> past = service.extractText(rtf.getName(), full.length() + 5, 100);
+                assertEquals("", past.get("text"));
+                assertEquals(false, past.get("hasMore"));
+
+                assertThrows(IllegalArgumentException.class, () -> service.extractText(rtf.getName(), -1, 100));
+                assertThrows(IllegalArgumentException.class, () -> service.extractText(rtf.getName(), 0, 0));
+            }
+        } finally {
+            rtf.delete();
+        }
+    }
+
+    @Test
+    void testTextWindowEndingAtOrJustBeforeTheEndOfTheDocument() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File txt = new File(directory, "window-boundary-test.txt");
+        Files.writeString(txt.toPath(), "abcdefghijklmnopqrstuvwxyz");
+        try {
+            for (ExtractionCache cache : new ExtractionCache[]{
+                    new ExtractionCache(false, 0, null, 0), new ExtractionCache(true, 16 * 1024 * 1024, null, 0)}) {
+                TikaExtractorService service = new TikaExtractorService(cache);
+                String full = (String) service.extractText(txt.getName()).get("text");
+                int offset = 3;
+                // The document is offset + limit, offset + limit + 1 and offset + limit + 2 characters long
+                for (int extra = 0; extra <= 2; extra++) {
+                    int limit = full.length() - offset - extra;
+                    Map<String, Object> window = service.extractText(txt.getName(), offset, limit);
+                    assertEquals(full.substring(offset, offset + limit), window.get("text"));
+                    assertEquals(extra > 0, window.get("hasMore"), "extra " + extra);
+                    if (extra > 0) {
+                        long next = ((Number) window.get("nextOffset")).longValue();
+                        assertEquals(offset + limit, next);
+                        assertEquals(full.substring((int) next),
+                                service.extractText(txt.getName(), next, 100).get("text"));
+                    } else {
+                        assertFalse(window.containsKey("nextOffset"));
+                    }
+                }
+            }
+        } finally {
+            txt.delete();
+        }
+    }
+
+    @Test
+    void testPageRangesOfPdfs() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File pdf = SyntheticDocuments.pdf(new File(directory, "pages-test.pdf"), 5);
+        File rtf = SyntheticDocuments.rtf(new File(directory, "pages-test.rtf"), 3);
+        try {
+            TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+
+            Map<String, Object> text = service.extractPages(pdf.getName(), 2, 3, false);
+            String content = (String) text.get("text");
+            assertTrue(content.contains("Page 2") && content.contains("Page 3"));
+            assertFalse(content.contains("Page 1") || content.contains("Page 4"));
+            assertEquals(2, text.get("startPage"));
+            assertEquals(3, text.get("endPage"));
+            assertEquals(5, text.get("totalPages"));
+
+            // The end of the range is capped at the last page
+            assertEquals(5, service.extractPages(pdf.getName(), 4, 99, false).get("endPage"));
+            assertThrows(IllegalArgumentException.class, () -> service.extractPages(pdf.getName(), 0, 1, false));
+            assertThrows(IllegalArgumentException.class, () -> service.extractPages(pdf.getName(), 6, 6, false));
+            assertThrows(IllegalArgumentException.class, () -> service.extractPages(pdf.getName(), 3, 2, false));
+
+            // One div per page, as Tika renders whole documents
+            String html = (String) service.extractPages(pdf.getName(), 2, 4, true).get("html");
+            assertEquals(3, html.split("<div class=\"page\">", -1).length - 1);
+            assertTrue(html.contains("Page 4") && !html.contains("Page 5"));
+
+            IOException notPdf = assertThrows(IOException.class, () -> service.extractPages(rtf.getName(), 1, 1, false));
+            assertTrue(notPdf.getMessage().contains("only supported for PDF"));
+        } finally {
+            pdf.delete();
+            rtf.delete();
+        }
+    }
+
+    @Test
+    void testCompactCursorsResumeFromCachedBlocksAndGoStale() throws Exception {
+        File directory = new File("files-to-extract");
+        directory.mkdirs();
+        File pdf = SyntheticDocuments.pdf(new File(directory, "compact-cursor-test.pdf"), 6);
+        try {
+            ExtractionCache cache = new ExtractionCache(true, 16 * 1024 * 1024, null, 0);
+            TikaExtractorService service = new TikaExtractorService(cache);
+            TikaExtractorService uncached = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+            String full = (String) service.extractCompact(pdf.getName(), false, Integer.MAX_VALUE, null).get("text");
+
+            assertEquals(full.replace("\n", ""), compactInWindows(service, pdf.getName()).replace("\n", ""));
+            assertEquals(full.replace("\n", ""), compactInWindows(uncached, pdf.getName()).replace("\n", ""));
+            // One recording parse, then every further window is served from the cache
+            assertTrue((Long) cache.getStats().get("hits") > 0);
+
+            String cursor = (String) service.extractCompact(pdf.getName(), false, 40, null).get("nextCursor");
+            assertNotNull(cursor);
+            assertThrows(IllegalArgumentException.class, () -> service.extractCompact(pdf.getName(), false, 40, "1:0"));
+            SyntheticDocuments.pdf(pdf, 3);
+            assertThrows(IllegalArgumentException.class, () -> service.extractCompact(pdf.getName(), false, 40, cursor));
+        } finally {
+            pdf.delete();
+        }
+    }
+
+    private static String compactInWindows(TikaExtractorService service, String filename) throws Exception {
+        StringBuilder joined = new StringBuilder();
+        String cursor = null;
+        int calls = 0;
+        do {
+            Map<String, Object> result = service.extractCompact(filename, false, 400, cursor);
+            assertTrue(((String) result.get("text")).length() <= 400);
+            joined.append(result.get("text"));
+            cursor = (String) result.get("nextCursor");
+            calls++;
+        } while (cursor != null && calls < 1000);
+        assertNull(cursor);
+        assertTrue(calls > 1);
+        return joined.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionCache;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.ExtractionRejectedException;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.TikaExtractorService;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.Service.UploadedDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+class UploadedDocumentTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLargeUploadsSpillToTemporaryFile() throws Exception {
+        byte[] bytes = new byte[10_000];
+        try (UploadedDocument small = UploadedDocument.read("../small.bin", new ByteArrayInputStream(bytes), 10_000, 0)) {
+            assertNull(small.getFile());
+            assertEquals("small.bin", small.getName());
+            assertEquals(10_000, small.getSize());
+        }
+
+        File spilled;
+        try (UploadedDocument large = UploadedDocument.read("large.pdf", new ByteArrayInputStream(bytes), 4_096, 0)) {
+            spilled = large.getFile();
+            assertNotNull(spilled);
+            assertTrue(spilled.getName().endsWith(".pdf"));
+            assertEquals(10_000, large.getSize());
+            try (var in = large.openStream()) {
+                assertEquals(10_000, in.readAllBytes().length);
+            }
+        }
+        assertFalse(spilled.exists());
+    }
+
+    @Test
+    void testUploadsOverTheSizeLimitAreRejected() {
+        byte[] bytes = new byte[200_000];
+        ExtractionRejectedException e = assertThrows(ExtractionRejectedException.class,
+                () -> UploadedDocument.read("big.pdf", new ByteArrayInputStream(bytes), 4_096, 100_000));
+        assertEquals(ExtractionRejectedException.Reason.FILE_TOO_LARGE, e.getReason());
+    }
+
+    @Test
+    void testUploadIsExtractedWithoutTheFilesDirectory() throws Exception {
+        byte[] pdf = Files.readAllBytes(SyntheticDocuments.pdf(tempDir.resolve("upload.pdf").toFile(), 3).toPath());
+        TikaExtractorService service = new TikaExtractorService(new ExtractionCache(false, 0, null, 0));
+
+        StringWriter inMemory = new StringWriter();
+        try (UploadedDocument document = UploadedDocument.of("upload.pdf", pdf)) {
+            Map<String, Object> result = service.extractUpload(document, false, inMemory);
+            assertEquals("application/pdf", result.get("contentType"));
+        }
+
+        StringWriter spilled = new StringWriter();
+        try (UploadedDocument document = UploadedDocument.read("upload.pdf", new ByteArrayInputStream(pdf), 1_024, 0)) {
+            assertNotNull(document.getFile());
+            service.extractUpload(document, false, spilled);
+        }
+        assertFalse(inMemory.toString().isBlank());
+        assertEquals(inMemory.toString(), spilled.toString());
+    }
+}
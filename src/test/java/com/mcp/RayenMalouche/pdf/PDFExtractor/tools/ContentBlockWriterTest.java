@@ -0,0 +1,28 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.tools;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentBlockWriterTest {
+
+    @Test
+    void testSurrogatePairsAreNotSplitAcrossBlocks() {
+        ContentBlockWriter writer = new ContentBlockWriter(4, count -> { });
+        // "abc" followed by an emoji: its high surrogate would be the fourth character of the first block
+        String content = "abc\uD83D\uDE00def\uD83D\uDE00";
+        writer.write(content, 0, content.length());
+        writer.close();
+
+        StringBuilder joined = new StringBuilder();
+        for (McpSchema.Content block : writer.getBlocks()) {
+            String text = ((McpSchema.TextContent) block).text();
+            assertTrue(text.length() <= 4);
+            assertFalse(Character.isHighSurrogate(text.charAt(text.length() - 1)));
+            assertFalse(Character.isLowSurrogate(text.charAt(0)));
+            joined.append(text);
+        }
+        assertEquals(content, joined.toString());
+        assertEquals(content.length(), writer.getLength());
+    }
+}
@@ -0,0 +1,132 @@
+package com.mcp.RayenMalouche.pdf.PDFExtractor.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.SyntheticDocuments;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.JsonEscapingWriter;
+import com.mcp.RayenMalouche.pdf.PDFExtractor.web.JsonResponseWriter;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the serialization and response-building paths, without parsing:
+ * JSON escaping of the HTML in result-examples, and MCP tool responses served from the result cache.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBuildingBenchmark {
+
+    /**
+     * Extracted HTML from result-examples, repeated to model larger documents
+     */
+    @State(Scope.Benchmark)
+    public static class Html {
+        @Param({"sample.pdf.html", "sample.docx.html", "sample.rtf.html"})
+        public String example;
+
+        @Param({"1", "100"})
+        public int copies;
+
+        String html;
+        final ObjectMapper mapper = new ObjectMapper();
+
+        @Setup(Level.Trial)
+        public void load() throws Exception {
+            html = Files.readString(Path.of("result-examples", example)).repeat(copies);
+        }
+    }
+
+    /**
+     * A generated PDF whose extraction is in the shared result cache, so tool calls only build responses
+     */
+    @State(Scope.Benchmark)
+    public static class CachedDocument {
+        @Param({"10", "300"})
+        public int pages;
+
+        File file;
+        McpServerFeatures.SyncToolSpecification extractToHtml;
+        McpServerFeatures.SyncToolSpecification extractText;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            File directory = new File("files-to-extract");
+            directory.mkdirs();
+            file = SyntheticDocuments.pdf(new File(directory, "jmh-response-" + pages + ".pdf"), pages);
+
+            for (McpServerFeatures.SyncToolSpecification tool : new McpToolsProvider().getAllTools()) {
+                switch (tool.tool().name()) {
+                    case "extract-to-html" -> extractToHtml = tool;
+                    case "extract-text" -> extractText = tool;
+                    default -> {
+                    }
+                }
+            }
+            // Fill the cache
+            call(extractToHtml);
+            call(extractText);
+        }
+
+        McpSchema.CallToolResult call(McpServerFeatures.SyncToolSpecification tool) {
+            McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(tool.tool().name(), Map.of("filename", file.getName()));
+            return tool.callHandler().apply(null, request);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public String jsonResponseWriter(Html html) throws Exception {
+        return JsonResponseWriter.object(json -> json.writeStringField("html", html.html));
+    }
+
+    @Benchmark
+    public StringWriter jsonEscapingWriter(Html html) throws Exception {
+        StringWriter out = new StringWriter(html.html.length() + 16);
+        try (Writer escaper = new JsonEscapingWriter(out)) {
+            escaper.write(html.html);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public String jacksonSerialization(Html html) throws Exception {
+        return html.mapper.writeValueAsString(Map.of("html", html.html));
+    }
+
+    @Benchmark
+    public McpSchema.CallToolResult extractToHtmlToolResponse(CachedDocument document) {
+        return document.call(document.extractToHtml);
+    }
+
+    @Benchmark
+    public McpSchema.CallToolResult extractTextToolResponse(CachedDocument document) {
+        return document.call(document.extractText);
+    }
+}